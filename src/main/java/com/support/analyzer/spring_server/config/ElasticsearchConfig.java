@@ -1,5 +1,6 @@
 package com.support.analyzer.spring_server.config;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
@@ -21,19 +22,29 @@ public class ElasticsearchConfig {
     @Value("${elasticsearch.apiKey}")
     private String apiKey;
 
+    // Shared by both clients, so they use one connection pool
     @Bean
-    public ElasticsearchClient elasticsearchClient() {
+    public RestClientTransport elasticsearchTransport() {
         RestClient restClient = RestClient.builder(HttpHost.create(esHost))
                 .setDefaultHeaders(new Header[]{
                         new BasicHeader("Authorization", "ApiKey " + apiKey)
                 })
                 .build();
 
-        RestClientTransport transport = new RestClientTransport(
+        return new RestClientTransport(
                 restClient,
                 new JacksonJsonpMapper()
         );
+    }
 
+    @Bean
+    public ElasticsearchClient elasticsearchClient(RestClientTransport transport) {
         return new ElasticsearchClient(transport);
     }
+
+    // For the non-blocking inference path; completes on the transport's I/O threads
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(RestClientTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
 }
@@ -0,0 +1,41 @@
+package com.support.analyzer.spring_server.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the executors of the ingest phases. Their tasks spend nearly all of their time
+ * blocked on HTTP calls, so with ingest.executor.virtualThreads=true every task gets its own
+ * virtual thread. Throughput is then bounded by the per-downstream concurrency limits instead
+ * of a platform thread count.
+ */
+@Component
+public class IngestExecutorFactory {
+    private static final Logger log = LoggerFactory.getLogger(IngestExecutorFactory.class);
+
+    @Value("${ingest.executor.virtualThreads}")
+    private boolean virtualThreads;
+
+    /**
+     * @param platformThreads pool size when running on platform threads; ignored in virtual-thread mode
+     */
+    public ExecutorService newExecutor(String name, int platformThreads) {
+        if (virtualThreads) {
+            log.info("Using virtual threads for {}", name);
+            ThreadFactory factory = Thread.ofVirtual().name(name + "-", 0).factory();
+            return Executors.newThreadPerTaskExecutor(factory);
+        }
+        ThreadFactory factory = Thread.ofPlatform().name(name + "-", 0).factory();
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), factory);
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+}
@@ -1,6 +1,7 @@
 package com.support.analyzer.spring_server.controller;
 
 
+import com.support.analyzer.spring_server.dto.Embedding;
 import com.support.analyzer.spring_server.service.ElasticsearchService;
 import com.support.analyzer.spring_server.service.EmbeddingService;
 import com.support.analyzer.spring_server.service.MaskingService;
@@ -66,7 +67,7 @@ public class HealthCheck {
     public String testEmbeddingStorage(@RequestBody EmbeddingRequest request) {
         try {
             // Step 1: Call Flask server for embedding
-            List<Double> embedding = embeddingService.getEmbedding(request.ticketId(), request.message());
+            Embedding embedding = embeddingService.getEmbedding(request.ticketId(), request.message());
 
             if (embedding == null || embedding.isEmpty()) {
                 return "Failed to get embedding from Flask.";
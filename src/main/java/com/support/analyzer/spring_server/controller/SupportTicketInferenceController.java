@@ -13,6 +13,9 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @RestController
 public class SupportTicketInferenceController {
     private static final Logger log = LoggerFactory.getLogger(SupportTicketInferenceController.class);
@@ -20,12 +23,22 @@ public class SupportTicketInferenceController {
     @Autowired
     private SupportTicketInference supportTicketInference;
 
+    // Returns the request thread to Tomcat at once; the response is written when the pipeline completes
     @PostMapping("/generate/{ticketId}")
-    public ResponseEntity<InferenceResponse> generateInference(@PathVariable String ticketId) {
-        try {
-            log.info("Generating inference for ticket: {}", ticketId);
+    public CompletableFuture<ResponseEntity<InferenceResponse>> generateInference(@PathVariable String ticketId) {
+        log.info("Generating inference for ticket: {}", ticketId);
 
-            TicketTripletWithDetails enhancedInference = supportTicketInference.inferSupportTicket(ticketId);
+        return supportTicketInference.inferSupportTicketAsync(ticketId).handle((enhancedInference, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.error("Error generating inference for ticket {}: {}", ticketId, cause.getMessage());
+                return ResponseEntity.status(500).body(new InferenceResponse(
+                        "error",
+                        "Internal error: " + cause,
+                        ticketId,
+                        null
+                ));
+            }
 
             if (enhancedInference == null) {
                 log.warn("Failed to generate inference for ticket: {}", ticketId);
@@ -44,24 +57,7 @@ public class SupportTicketInferenceController {
                     ticketId,
                     enhancedInference
             ));
-
-        } catch (RuntimeException e) {
-            log.error("Runtime error generating inference for ticket {}: {}", ticketId, e.getMessage());
-            return ResponseEntity.status(500).body(new InferenceResponse(
-                    "error",
-                    "Internal error: " + e,
-                    ticketId,
-                    null
-            ));
-        } catch (Exception e) {
-            log.error("Unexpected error generating inference for ticket {}: {}", ticketId, e, e);
-            return ResponseEntity.status(500).body(new InferenceResponse(
-                    "error",
-                    "Unexpected error occurred: " + e,
-                    ticketId,
-                    null
-            ));
-        }
+        });
     }
 
     @Data
@@ -1,36 +1,58 @@
 package com.support.analyzer.spring_server.controller;
 
+import com.support.analyzer.spring_server.service.BatchSizeController;
+import com.support.analyzer.spring_server.service.IngestJob;
+import com.support.analyzer.spring_server.service.IngestJobService;
 import com.support.analyzer.spring_server.service.SupportTicketIngestService;
+import com.support.analyzer.spring_server.util.AdaptiveBatchSizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 public class SupportTicketIngestController {
     private static final Logger log = LoggerFactory.getLogger(SupportTicketIngestController.class);
 
     @Autowired
-    private SupportTicketIngestService supportTicketIngestService;
+    private IngestJobService ingestJobService;
+
+    @Autowired
+    private BatchSizeController batchSizeController;
 
 
     @PostMapping("/ingest")
-    public ResponseEntity<Map<String, String>> processAllTickets2() {
+    public ResponseEntity<Map<String, Object>> startIngest(@RequestParam(defaultValue = "full") String mode) {
+        SupportTicketIngestService.IngestMode ingestMode;
+        try {
+            ingestMode = SupportTicketIngestService.IngestMode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "Unknown ingest mode: " + mode + ". Use full or delta."
+            ));
+        }
+
         try {
-            log.info("Starting bulk ticket processing...");
-
-                try {
-                    supportTicketIngestService.processAllTickets();
-                    log.info("Tickets processing completed successfully");
-                } catch (Exception e) {
-                    log.error("Error during bulk ticket processing: {}", e, e);
-                }
-            return ResponseEntity.ok(Map.of(
+            log.info("Starting {} ticket processing...", ingestMode);
+            Optional<IngestJob> job = ingestJobService.submit(ingestMode);
+            if (job.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                        "status", "error",
+                        "message", "An ingest job is already running"
+                ));
+            }
+            return ResponseEntity.accepted().body(Map.of(
                     "status", "processing_started",
-                    "message", "Ticket processing has been initiated. Check logs for progress."
+                    "jobId", job.get().getJobId(),
+                    "mode", job.get().getMode(),
+                    "message", "Ticket processing has been initiated. Poll GET /ingest/" + job.get().getJobId() + " for progress."
             ));
 
         } catch (Exception e) {
@@ -41,4 +63,44 @@ public class SupportTicketIngestController {
             ));
         }
     }
-}
\ No newline at end of file
+
+    // Live batch sizes chosen by the adaptive controller, per stage
+    @GetMapping("/ingest/batch-sizes")
+    public ResponseEntity<List<Map<String, Object>>> getBatchSizes() {
+        return ResponseEntity.ok(batchSizeController.getSizers().stream()
+                .map(AdaptiveBatchSizer::toMap)
+                .toList());
+    }
+
+    @GetMapping("/ingest/{jobId}")
+    public ResponseEntity<Map<String, Object>> getIngestStatus(@PathVariable String jobId) {
+        return ingestJobService.get(jobId)
+                .map(job -> ResponseEntity.ok(job.toStatusMap()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "status", "error",
+                        "message", "Unknown ingest job: " + jobId
+                )));
+    }
+
+    @DeleteMapping("/ingest/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelIngest(@PathVariable String jobId) {
+        Optional<IngestJob> job = ingestJobService.get(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                    "status", "error",
+                    "message", "Unknown ingest job: " + jobId
+            ));
+        }
+        if (!ingestJobService.cancel(job.get())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "status", "error",
+                    "message", "Ingest job " + jobId + " already finished as " + job.get().getState()
+            ));
+        }
+        return ResponseEntity.accepted().body(Map.of(
+                "status", "cancelling",
+                "jobId", jobId,
+                "message", "Cancellation requested. The job stops after its in-flight batches and flushes buffered writes."
+        ));
+    }
+}
@@ -0,0 +1,111 @@
+package com.support.analyzer.spring_server.controller;
+
+import com.support.analyzer.spring_server.service.ElasticsearchBulkIndexer;
+import com.support.analyzer.spring_server.service.ElasticsearchIndexBootstrap;
+import com.support.analyzer.spring_server.service.ElasticsearchService;
+import com.support.analyzer.spring_server.service.HnswVectorStore;
+import com.support.analyzer.spring_server.service.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+public class VectorStoreController {
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private ElasticsearchBulkIndexer bulkIndexer;
+
+    @Autowired
+    private ElasticsearchIndexBootstrap indexBootstrap;
+
+    @Autowired
+    private ElasticsearchService elasticsearchService;
+
+    @GetMapping("/vector-store")
+    public ResponseEntity<Map<String, Object>> getVectorStore() {
+        if (vectorStore instanceof HnswVectorStore hnsw) {
+            return ResponseEntity.ok(hnsw.getStats());
+        }
+        return ResponseEntity.ok(Map.of("backend", "elasticsearch"));
+    }
+
+    // Rebuild the in-memory HNSW graphs from the Elasticsearch indices, in the background
+    @PostMapping("/vector-store/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        if (!(vectorStore instanceof HnswVectorStore hnsw)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "Rebuild only applies to vectorstore.backend=hnsw"
+            ));
+        }
+        if (!hnsw.startRebuild()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "status", "error",
+                    "message", "A rebuild is already running"
+            ));
+        }
+        return ResponseEntity.accepted().body(Map.of(
+                "status", "rebuild_started",
+                "message", "Poll GET /vector-store for progress."
+        ));
+    }
+
+    // Hit ratio and latency saved by the findSimilarTriplets result cache
+    @GetMapping("/vector-store/similarity-cache")
+    public ResponseEntity<Map<String, Object>> getSimilarityCache() {
+        return ResponseEntity.ok(Map.of("similarityCache", elasticsearchService.getSimilarityCacheStats()));
+    }
+
+    @DeleteMapping("/vector-store/similarity-cache")
+    public ResponseEntity<Map<String, Object>> clearSimilarityCache() {
+        elasticsearchService.invalidateSimilarityCache();
+        return ResponseEntity.ok(Map.of("status", "cleared"));
+    }
+
+    // Create the Elasticsearch indices with explicit vector mappings if they do not exist
+    @PostMapping("/vector-store/indices/bootstrap")
+    public ResponseEntity<Map<String, Object>> bootstrapIndices() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "status", "ok",
+                    "indices", indexBootstrap.bootstrap()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "status", "error",
+                    "message", "Index bootstrap failed: " + e.getMessage()
+            ));
+        }
+    }
+
+    @GetMapping("/vector-store/dead-letters")
+    public ResponseEntity<Map<String, Object>> getDeadLetters() {
+        return ResponseEntity.ok(Map.of(
+                "deadLetters", bulkIndexer.deadLetterCount(),
+                "bulk", bulkIndexer.getStats()
+        ));
+    }
+
+    // Index the oldest dead-lettered documents again and wait for the outcome
+    @PostMapping("/vector-store/dead-letters/replay")
+    public ResponseEntity<Map<String, Object>> replayDeadLetters(@RequestParam(defaultValue = "1000") int limit) {
+        ElasticsearchBulkIndexer.Replay replay = bulkIndexer.replayDeadLetters(limit);
+        if (replay == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "status", "error",
+                    "message", "A replay is already running"
+            ));
+        }
+        return ResponseEntity.ok(Map.of(
+                "status", "replayed",
+                "replay", replay,
+                "remaining", bulkIndexer.deadLetterCount()
+        ));
+    }
+}
@@ -0,0 +1,133 @@
+package com.support.analyzer.spring_server.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An embedding vector backed by a float[]. (De)serialized as a plain JSON number array, so it
+ * can stand in for the List&lt;Double&gt; fields of the Flask and Elasticsearch payloads without
+ * boxing every dimension.
+ */
+@JsonSerialize(using = Embedding.Serializer.class)
+@JsonDeserialize(using = Embedding.Deserializer.class)
+public final class Embedding {
+    private final float[] values;
+
+    private Embedding(float[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Wrap the array without copying; the caller must not modify it afterwards
+     */
+    public static Embedding of(float[] values) {
+        return new Embedding(values);
+    }
+
+    public int dimensions() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    public float get(int index) {
+        return values[index];
+    }
+
+    /**
+     * The backing array, for hot loops. Must not be modified.
+     */
+    public float[] values() {
+        return values;
+    }
+
+    /**
+     * Read-only List view for APIs that insist on List&lt;Float&gt; (e.g. the ES kNN queryVector).
+     * Elements are boxed one at a time as they are read; nothing is copied.
+     */
+    public List<Float> asFloatList() {
+        return new FloatListView(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Embedding other && Arrays.equals(values, other.values));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "Embedding{dimensions=" + values.length + "}";
+    }
+
+    private static final class FloatListView extends AbstractList<Float> implements RandomAccess {
+        private final float[] values;
+
+        private FloatListView(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Float get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    public static class Serializer extends JsonSerializer<Embedding> {
+        @Override
+        public void serialize(Embedding embedding, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            float[] values = embedding.values;
+            gen.writeStartArray(embedding, values.length);
+            for (float value : values) {
+                gen.writeNumber(value);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<Embedding> {
+        @Override
+        public Embedding deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                return (Embedding) context.handleUnexpectedToken(Embedding.class, parser);
+            }
+            float[] values = new float[1024];
+            int size = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                    return (Embedding) context.handleUnexpectedToken(Embedding.class, parser);
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = parser.getFloatValue();
+            }
+            return new Embedding(size == values.length ? values : Arrays.copyOf(values, size));
+        }
+    }
+}
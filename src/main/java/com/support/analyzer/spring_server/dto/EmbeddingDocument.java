@@ -4,12 +4,10 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.List;
-
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class EmbeddingDocument {
     private String ticketId;
-    private List<Double> embedding;
+    private Embedding embedding;
 }
@@ -4,8 +4,6 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.List;
-
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -14,5 +12,5 @@ public class TripletWithEmbedding {
     private String rca;
     private String issue;
     private String solution;
-    private List<Double> issueEmbedding;
+    private Embedding issueEmbedding;
 }
\ No newline at end of file
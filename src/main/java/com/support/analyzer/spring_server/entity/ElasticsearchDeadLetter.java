@@ -0,0 +1,31 @@
+package com.support.analyzer.spring_server.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A bulk index operation Elasticsearch still rejected after all retries, kept so it can be
+ * replayed instead of leaving a hole in the index.
+ */
+@Document(collection = "es_dead_letters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ElasticsearchDeadLetter {
+    @Id
+    private String id;
+    private String index;
+    private String documentId;
+    // The document source as JSON
+    private String document;
+    // HTTP status of the last attempt; 0 if the whole request failed
+    private int status;
+    private String reason;
+    private int attempts;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,35 @@
+package com.support.analyzer.spring_server.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One journal entry: the tickets of a single batch that finished a stage within a run.
+ */
+@Document(collection = "ingest_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestCheckpoint {
+    public enum Stage { MASKED, SUMMARIZED, EMBEDDED, INDEXED, CLUSTERED, TRIPLETS }
+
+    @Id
+    private String id;
+    private String runId;
+    private Stage stage;
+    private List<String> ticketIds;
+    private LocalDateTime createdAt;
+
+    public IngestCheckpoint(String runId, Stage stage, List<String> ticketIds) {
+        this.runId = runId;
+        this.stage = stage;
+        this.ticketIds = ticketIds;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,23 @@
+package com.support.analyzer.spring_server.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "ingest_metadata")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestMetadata {
+    public static final String TICKET_WATERMARK = "support_tickets_watermark";
+
+    @Id
+    private String key;
+    // Highest SupportTicket.updatedAt that has been fully ingested
+    private LocalDateTime watermark;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package com.support.analyzer.spring_server.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "ingest_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestRun {
+    // CANCELLED runs were stopped on request and are never resumed
+    public enum Status { RUNNING, FAILED, COMPLETED, CANCELLED }
+
+    // Phase the run is currently in; a resumed run restarts from here
+    public enum Phase { PHASE1, PHASE2, PHASE3, DONE }
+
+    @Id
+    private String runId;
+    private String mode;
+    private Status status;
+    private Phase phase;
+    // Watermark the run started from (delta mode) and the one it will store when it completes
+    private LocalDateTime previousWatermark;
+    private LocalDateTime nextWatermark;
+    private int resumeCount;
+    private String lastError;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
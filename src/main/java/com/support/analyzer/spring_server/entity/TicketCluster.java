@@ -0,0 +1,24 @@
+package com.support.analyzer.spring_server.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cluster membership of one ticket. A cluster is every ticket sharing a rootId; the root is a
+ * member of its own cluster and is the ticket Phase 3 builds the cluster's triplet from.
+ */
+@Document(collection = "ticket_clusters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TicketCluster {
+    @Id
+    private String ticketId;
+    private String rootId;
+    private LocalDateTime updatedAt;
+}
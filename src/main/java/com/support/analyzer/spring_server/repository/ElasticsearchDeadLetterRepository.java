@@ -0,0 +1,7 @@
+package com.support.analyzer.spring_server.repository;
+
+import com.support.analyzer.spring_server.entity.ElasticsearchDeadLetter;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ElasticsearchDeadLetterRepository extends MongoRepository<ElasticsearchDeadLetter,String> {
+}
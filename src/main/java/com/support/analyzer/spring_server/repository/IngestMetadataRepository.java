@@ -0,0 +1,7 @@
+package com.support.analyzer.spring_server.repository;
+
+import com.support.analyzer.spring_server.entity.IngestMetadata;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface IngestMetadataRepository extends MongoRepository<IngestMetadata,String> {
+}
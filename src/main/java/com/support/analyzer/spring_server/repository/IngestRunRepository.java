@@ -0,0 +1,11 @@
+package com.support.analyzer.spring_server.repository;
+
+import com.support.analyzer.spring_server.entity.IngestRun;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface IngestRunRepository extends MongoRepository<IngestRun,String> {
+    Optional<IngestRun> findFirstByStatusInOrderByStartedAtDesc(Collection<IngestRun.Status> statuses);
+}
@@ -0,0 +1,60 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.util.AdaptiveBatchSizer;
+import com.support.analyzer.spring_server.util.PerfStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Owns one {@link AdaptiveBatchSizer} per ingest stage. Sizes persist across runs, so a new
+ * run starts from what the previous one learned rather than from the configured batchSize.
+ */
+@Service
+public class BatchSizeController {
+    public static final String MASKING = "masking";
+    public static final String SUMMARIZATION = "summarization";
+    public static final String EMBEDDING = "embedding";
+    public static final String TRIPLET = "triplet";
+
+    private final Map<String, AdaptiveBatchSizer> sizers = new LinkedHashMap<>();
+
+    @Autowired
+    public BatchSizeController(Environment env) {
+        boolean enabled = env.getRequiredProperty("ingest.adaptive.enabled", Boolean.class);
+        double failureRateThreshold = env.getRequiredProperty("ingest.adaptive.failureRateThreshold", Double.class);
+        for (String stage : List.of(MASKING, SUMMARIZATION, EMBEDDING, TRIPLET)) {
+            String prefix = "ingest.stage." + stage + ".";
+            sizers.put(stage, new AdaptiveBatchSizer(
+                    stage,
+                    enabled,
+                    env.getRequiredProperty(prefix + "batchSize", Integer.class),
+                    env.getRequiredProperty(prefix + "minBatchSize", Integer.class),
+                    env.getRequiredProperty(prefix + "maxBatchSize", Integer.class),
+                    env.getRequiredProperty(prefix + "targetLatencyMs", Long.class),
+                    failureRateThreshold));
+        }
+    }
+
+    public AdaptiveBatchSizer sizer(String stage) {
+        AdaptiveBatchSizer sizer = sizers.get(stage);
+        if (sizer == null) {
+            throw new IllegalArgumentException("No batch sizer for stage " + stage);
+        }
+        return sizer;
+    }
+
+    /**
+     * Feed a finished batch, taking its latency from the PerfStats timing of the downstream call
+     */
+    public void record(String stage, int batchSize, PerfStats batchStats, String operation, int failedItems, long throttleCount) {
+        long latencyMs = batchStats.getOperationTimes().getOrDefault(operation, 0L);
+        sizer(stage).record(batchSize, latencyMs, failedItems, throttleCount);
+    }
+
+    public List<AdaptiveBatchSizer> getSizers() {
+        return List.copyOf(sizers.values());
+    }
+}
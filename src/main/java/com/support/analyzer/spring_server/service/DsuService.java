@@ -1,6 +1,13 @@
 package com.support.analyzer.spring_server.service;
 
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
 import com.support.analyzer.spring_server.dto.ElasticsearchSimilarTicket;
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.util.ConcurrentUnionFind;
+import com.support.analyzer.spring_server.util.IntUnionFind;
+import com.support.analyzer.spring_server.util.LocalKnnIndex;
+import com.support.analyzer.spring_server.util.RunStore;
+import com.support.analyzer.spring_server.util.SimHashLsh;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +15,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 @Service
 public class DsuService {
@@ -15,148 +31,562 @@ public class DsuService {
     @Value("${dsu.similarity.threshold}")
     private double SIMILARITY_THRESHOLD;
 
-    private final ElasticsearchService elasticsearchService;
+    @Value("${dsu.knn.chunkSize}")
+    private int knnChunkSize;
+
+    @Value("${dsu.knn.maxInFlightChunks}")
+    private int maxInFlightChunks;
+
+    // "elasticsearch", "local" or "lsh"
+    @Value("${dsu.neighbor.strategy}")
+    private String neighborStrategy;
+
+    @Value("${dsu.local.maxTickets}")
+    private int localMaxTickets;
+
+    @Value("${dsu.local.blockSize}")
+    private int localBlockSize;
+
+    @Value("${dsu.local.parallelism}")
+    private int localParallelism;
+
+    @Value("${dsu.local.vectorApi}")
+    private boolean localVectorApi;
+
+    @Value("${dsu.lsh.maxTickets}")
+    private int lshMaxTickets;
+
+    @Value("${dsu.lsh.bands}")
+    private int lshBands;
+
+    @Value("${dsu.lsh.rows}")
+    private int lshRows;
+
+    @Value("${dsu.lsh.seed}")
+    private long lshSeed;
+
+    // Rows scored exactly against all others to estimate the recall LSH gives up; 0 turns it off
+    @Value("${dsu.lsh.recallSampleSize}")
+    private int lshRecallSampleSize;
+
+    private final VectorStore vectorStore;
+    private final IngestExecutorFactory executorFactory;
+    private final TicketClusterService ticketClusterService;
+    private final RepresentativeSelector representativeSelector;
+    private final MongoService mongoService;
 
     @Autowired
-    public DsuService(ElasticsearchService elasticsearchService) {
-        this.elasticsearchService = elasticsearchService;
+    public DsuService(VectorStore vectorStore, IngestExecutorFactory executorFactory,
+                      TicketClusterService ticketClusterService, RepresentativeSelector representativeSelector,
+                      MongoService mongoService) {
+        this.vectorStore = vectorStore;
+        this.executorFactory = executorFactory;
+        this.ticketClusterService = ticketClusterService;
+        this.representativeSelector = representativeSelector;
+        this.mongoService = mongoService;
     }
 
+    /**
+     * Union-find over ticket ids, safe for concurrent unions. Ids are interned to dense ints on
+     * first sight (neighbours may lie outside the initial set) and the sets themselves live in a
+     * {@link ConcurrentUnionFind}, which is sized up front for every id that can show up.
+     */
     private static class DSU {
-        private Map<String, String> parent;
-        private Map<String, Integer> size;
-        private int numComponents;
-
-        public DSU(List<String> tickets) {
-            parent = new HashMap<>();
-            size = new HashMap<>();
-            numComponents = 0;
+        private final Map<String, Integer> ids;
+        private final AtomicReferenceArray<String> ticketIds;
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final ConcurrentUnionFind unionFind;
+
+        /**
+         * @param capacity the initial tickets plus every neighbour id that may be interned later
+         */
+        public DSU(List<String> tickets, int capacity) {
+            ids = new ConcurrentHashMap<>(tickets.size() * 2);
+            ticketIds = new AtomicReferenceArray<>(capacity);
+            unionFind = new ConcurrentUnionFind(capacity);
             for (String ticket : tickets) {
-                makeSet(ticket);
+                idOf(ticket);
             }
         }
 
-        // Dynamically initialize if not present
-        private void makeSet(String ticket) {
-            if (!parent.containsKey(ticket)) {
-                parent.put(ticket, ticket);
-                size.put(ticket, 1);
-                numComponents++;
-            }
+        private int idOf(String ticket) {
+            return ids.computeIfAbsent(ticket, t -> {
+                int id = nextId.getAndIncrement();
+                if (id >= ticketIds.length()) {
+                    throw new IllegalStateException("More than " + ticketIds.length() + " distinct tickets in clustering");
+                }
+                ticketIds.set(id, t);
+                return id;
+            });
+        }
+
+        public boolean union(String x, String y) {
+            return unionFind.union(idOf(x), idOf(y));
         }
 
-        public String find(String x) {
-            makeSet(x);  // Ensure initialization
-            if (!parent.get(x).equals(x)) {
-                parent.put(x, find(parent.get(x))); // Path compression
+        // May miss a union in progress on another thread, but never reports unconnected tickets as connected
+        public boolean connected(String x, String y) {
+            return unionFind.find(idOf(x)) == unionFind.find(idOf(y));
+        }
+
+        // Call once all unions are done
+        public Map<String, List<String>> getClusters() {
+            IntUnionFind.Clusters clusters = unionFind.clusters(nextId.get());
+            Map<String, List<String>> byRoot = new HashMap<>(clusters.count() * 2);
+            for (int c = 0; c < clusters.count(); c++) {
+                List<String> members = new ArrayList<>(clusters.size(c));
+                for (int i = 0; i < clusters.size(c); i++) {
+                    members.add(ticketIds.get(clusters.member(c, i)));
+                }
+                byRoot.put(ticketIds.get(clusters.root(c)), members);
             }
-            return parent.get(x);
+            return byRoot;
         }
+    }
 
-        public boolean union(String x, String y) {
-            makeSet(x);
-            makeSet(y);
+    /**
+     * Cluster the given tickets by kNN similarity and return one representative per cluster.
+     * Neighbours come from the VectorStore's kNN search or, with dsu.neighbor.strategy=local, from
+     * an exact in-memory search among the given tickets only. With dsu.neighbor.strategy=lsh the
+     * given tickets are instead joined among themselves by similarity threshold, scoring only the
+     * pairs an LSH stage puts in a common bucket. Incremental runs always use the VectorStore, since
+     * the in-memory strategies cannot reach the stored tickets the changes may belong with.
+     * Reports progress to the job and returns an empty list if the job is cancelled.
+     * Failures propagate, so the run is recorded as failed and can be resumed.
+     * <p>
+     * The clusters are persisted by {@link TicketClusterService}. A full run replaces them and
+     * every cluster needs a representative. An incremental run re-clusters only the given tickets
+     * and the stored clusters they belonged to, merges the result into the stored clusters, and
+     * only clusters whose root has no triplet yet or changed need one. Representatives are chosen
+     * and budgeted by the {@link RepresentativeSelector}. A selected one becomes its cluster's
+     * stored root, and the cluster's other triplets are deleted; a cluster the budget defers keeps
+     * its root and triplets. The result is ordered by descending cluster size.
+     *
+     * @param embeddingStore embeddings from Phase 1; missing ones are fetched from the VectorStore
+     * @param incremental    whether allTicketIds are the changes since the last run rather than every ticket
+     */
+    public List<String> buildClustersAndGetRepresentatives(List<String> allTicketIds, int k, IngestJob job,
+                                                           RunStore<Embedding> embeddingStore, boolean incremental) {
+        try {
+            log.info("Starting clustering process with k={} and similarity threshold={}", k, SIMILARITY_THRESHOLD);
 
-            String rootX = find(x);
-            String rootY = find(y);
+            if (allTicketIds.isEmpty()) {
+                log.warn("No tickets found in Elasticsearch");
+                return Collections.emptyList();
+            }
 
-            if (rootX.equals(rootY)) {
-                return false;
+            ticketClusterService.ensureRootIdIndex();
+            List<String> changedTicketIds = allTicketIds;
+            Set<String> dissolvedRoots = Set.of();
+            if (incremental) {
+                TicketClusterService.Dissolved dissolved = ticketClusterService.dissolve(changedTicketIds);
+                dissolvedRoots = dissolved.roots();
+                if (!dissolved.members().isEmpty()) {
+                    Set<String> seeds = new LinkedHashSet<>(changedTicketIds);
+                    seeds.addAll(dissolved.members());
+                    allTicketIds = new ArrayList<>(seeds);
+                }
+            }
+
+            job.setClusteringTotal(allTicketIds.size());
+
+            int unionsPerformed;
+            String strategy = neighborStrategy.toLowerCase(Locale.ROOT);
+            if (incremental && (strategy.equals("local") || strategy.equals("lsh"))) {
+                log.info("Incremental run; clustering with VectorStore kNN instead of {} so changed tickets can join stored clusters",
+                        strategy);
+                strategy = "elasticsearch";
+            } else if (strategy.equals("local") && allTicketIds.size() > localMaxTickets) {
+                log.warn("{} tickets exceed dsu.local.maxTickets={}; clustering with VectorStore kNN instead",
+                        allTicketIds.size(), localMaxTickets);
+                strategy = "elasticsearch";
+            } else if (strategy.equals("lsh") && allTicketIds.size() > lshMaxTickets) {
+                log.warn("{} tickets exceed dsu.lsh.maxTickets={}; clustering with VectorStore kNN instead",
+                        allTicketIds.size(), lshMaxTickets);
+                strategy = "elasticsearch";
+            }
+            boolean inMemory = strategy.equals("local") || strategy.equals("lsh");
+            // kNN search may return up to k tickets per query from outside the set; in-memory search cannot
+            DSU dsu = new DSU(allTicketIds, inMemory ? allTicketIds.size() : allTicketIds.size() * (k + 1));
+            unionsPerformed = switch (strategy) {
+                case "local" -> clusterLocally(dsu, allTicketIds, k, job, embeddingStore);
+                case "lsh" -> clusterWithLsh(dsu, allTicketIds, job, embeddingStore);
+                default -> clusterWithVectorStore(dsu, allTicketIds, k, job, embeddingStore);
+            };
+            if (job.isCancelled()) {
+                log.warn("Clustering cancelled");
+                return Collections.emptyList();
             }
 
-            int sizeX = size.get(rootX);
-            int sizeY = size.get(rootY);
+            Map<String, List<String>> clusters = dsu.getClusters();
+            log.info("Created {} unique clusters from {} unions", clusters.size(), unionsPerformed);
 
-            if (sizeX < sizeY) {
-                parent.put(rootX, rootY);
-                size.put(rootY, sizeX + sizeY);
-                size.remove(rootX);
+            Map<String, List<String>> needRepresentative;
+            Map<String, List<String>> merged = Map.of();
+            // Stored roots that stop being roots
+            Set<String> supersededRoots = Set.of();
+            if (incremental) {
+                TicketClusterService.Merged mergeResult = ticketClusterService.merge(clusters, dissolvedRoots);
+                merged = mergeResult.clusters();
+                supersededRoots = mergeResult.supersededRoots();
+                Set<String> changed = new HashSet<>(changedTicketIds);
+                Set<String> withTriplet = mongoService.getTicketTripletIds(merged.keySet());
+                needRepresentative = new HashMap<>();
+                for (Map.Entry<String, List<String>> cluster : merged.entrySet()) {
+                    if (!withTriplet.contains(cluster.getKey()) || changed.contains(cluster.getKey())) {
+                        needRepresentative.put(cluster.getKey(), cluster.getValue());
+                    }
+                }
+                log.info("{} of {} touched clusters need a new triplet", needRepresentative.size(), merged.size());
             } else {
-                parent.put(rootY, rootX);
-                size.put(rootX, sizeX + sizeY);
-                size.remove(rootY);
+                needRepresentative = clusters;
             }
 
-            numComponents--;
-            return true;
+            Map<String, String> representativeOf = representativeSelector.chooseRepresentatives(needRepresentative, embeddingStore);
+            Map<String, List<String>> byRepresentative = new HashMap<>(needRepresentative.size() * 2);
+            for (Map.Entry<String, List<String>> cluster : needRepresentative.entrySet()) {
+                byRepresentative.put(representativeOf.get(cluster.getKey()), cluster.getValue());
+            }
+            if (!incremental) {
+                ticketClusterService.replaceAll(byRepresentative);
+            }
+
+            RepresentativeSelector.Budgeted budgeted = representativeSelector.budget(byRepresentative);
+            List<String> representatives = budgeted.representatives();
+            if (incremental) {
+                settleRoots(merged, representativeOf, new HashSet<>(representatives), supersededRoots);
+            }
+            Map<String, Object> budget = new LinkedHashMap<>();
+            budget.put("policy", representativeSelector.isMedoid() ? "medoid" : "root");
+            budget.put("selected", representatives.size());
+            budget.put("coveredTickets", budgeted.coveredTickets());
+            budget.put("deferredClusters", budgeted.deferredClusters());
+            budget.put("deferredTickets", budgeted.deferredTickets());
+            job.setRepresentativeBudget(budget);
+            log.info("Selected {} cluster representatives", representatives.size());
+
+            return representatives;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Clustering interrupted", e);
+        } catch (RuntimeException e) {
+            log.error("Error in clustering process: {}", e.getMessage(), e);
+            throw e;
+        } catch (Exception e) {
+            log.error("Error in clustering process: {}", e.getMessage(), e);
+            throw new IllegalStateException("Clustering failed: " + e.getMessage(), e);
         }
+    }
 
-        public Map<String, List<String>> getClusters() {
-            Map<String, List<String>> clusters = new HashMap<>();
-            for (String ticket : parent.keySet()) {
-                String root = find(ticket);
-                clusters.computeIfAbsent(root, k -> new ArrayList<>()).add(ticket);
+    /**
+     * Reroot the merged clusters whose representative the budget selected, and delete the triplets
+     * their members hold besides it. Clusters that keep their root's triplet lose only those of the
+     * roots merged into them. Deferred clusters are left alone, roots and old triplets included,
+     * so inference keeps what it has until a later run gives them a triplet.
+     */
+    private void settleRoots(Map<String, List<String>> merged, Map<String, String> representativeOf,
+                             Set<String> selected, Set<String> supersededRoots) {
+        Set<String> candidates = new HashSet<>();
+        int deferred = 0;
+        for (Map.Entry<String, List<String>> cluster : merged.entrySet()) {
+            String root = cluster.getKey();
+            String representative = representativeOf.get(root);
+            if (representative == null) {
+                for (String member : cluster.getValue()) {
+                    if (supersededRoots.contains(member)) {
+                        candidates.add(member);
+                    }
+                }
+            } else if (selected.contains(representative)) {
+                if (!representative.equals(root)) {
+                    ticketClusterService.reroot(root, representative);
+                }
+                // Also catches triplets left behind by clusters deferred in earlier runs
+                candidates.addAll(cluster.getValue());
+                candidates.remove(representative);
+            } else {
+                deferred++;
             }
-            return clusters;
         }
+        if (deferred > 0) {
+            log.info("{} deferred clusters keep their roots and triplets until they are selected", deferred);
+        }
+        retireTriplets(mongoService.getTicketTripletIds(candidates));
+    }
+
+    /**
+     * Delete the triplets of tickets that are no longer cluster roots, from the triplet index and
+     * from Mongo, so inference stops serving triplets of clusters that were merged away. The new
+     * roots get their triplets in Phase 3.
+     */
+    private void retireTriplets(Set<String> formerRoots) {
+        if (formerRoots.isEmpty()) return;
+        vectorStore.deleteTriplets(formerRoots);
+        mongoService.deleteTicketTriplets(formerRoots);
+        log.info("Deleted the triplets of {} former cluster roots", formerRoots.size());
+    }
+
+    /**
+     * Tickets are searched in chunks of one batched kNN call each (one _msearch on Elasticsearch),
+     * with up to maxInFlightChunks chunks in flight. Each worker unions its own chunk's results
+     * into the shared DSU, so lookups and unions both run in parallel; this thread only tracks
+     * progress. Stops early if the job is cancelled.
+     *
+     * @return unions performed
+     */
+    private int clusterWithVectorStore(DSU dsu, List<String> allTicketIds, int k, IngestJob job,
+                                       RunStore<Embedding> embeddingStore) throws Exception {
+        int chunkSize = Math.max(1, knnChunkSize);
+        int maxInFlight = Math.max(1, maxInFlightChunks);
+        int processedCount = 0;
+        int unionsPerformed = 0;
+        int withoutEmbedding = 0;
+
+        ExecutorService executor = executorFactory.newExecutor("dsu-knn", maxInFlight);
+        CompletionService<KnnChunk> completion = new ExecutorCompletionService<>(executor);
+        try {
+            int next = 0;
+            int inFlight = 0;
+            while (next < allTicketIds.size() || inFlight > 0) {
+                while (inFlight < maxInFlight && next < allTicketIds.size()) {
+                    List<String> chunk = allTicketIds.subList(next, Math.min(allTicketIds.size(), next + chunkSize));
+                    completion.submit(() -> clusterChunk(dsu, chunk, k, embeddingStore));
+                    next += chunk.size();
+                    inFlight++;
+                }
+
+                KnnChunk result;
+                try {
+                    result = completion.take().get();
+                } finally {
+                    inFlight--;
+                }
+
+                processedCount += result.tickets();
+                unionsPerformed += result.unions();
+                withoutEmbedding += result.withoutEmbedding();
+                job.ticketsClustered(result.tickets());
+                log.info("Processed {}/{} tickets, performed {} unions", processedCount, allTicketIds.size(), unionsPerformed);
 
-        public Map<String, Integer> getClusterSizes() {
-            Map<String, Integer> clusterSizes = new HashMap<>();
-            for (String ticket : parent.keySet()) {
-                String root = find(ticket);
-                clusterSizes.put(root, size.get(root));
+                if (job.isCancelled()) {
+                    log.warn("Clustering cancelled after {}/{} tickets", processedCount, allTicketIds.size());
+                    return unionsPerformed;
+                }
             }
-            return clusterSizes;
+        } finally {
+            executor.shutdownNow();
         }
 
-        public int getClusterSize(String ticket) {
-            String root = find(ticket);
-            return size.get(root);
+        if (withoutEmbedding > 0) {
+            log.warn("{} tickets had no embedding and stay in singleton clusters", withoutEmbedding);
         }
+        return unionsPerformed;
     }
 
-    public List<String> buildClustersAndGetRepresentatives(List<String> allTicketIds, int k) {
-        try {
-            log.info("Starting clustering process with k={} and similarity threshold={}", k, SIMILARITY_THRESHOLD);
+    /**
+     * Exact top-k search among the given tickets in a {@link LocalKnnIndex}, in parallel on a
+     * fork/join pool. Neighbours already in the index but outside this set are not found, so this is
+     * only used for full runs. Stops early if the job is cancelled.
+     *
+     * @return unions performed
+     */
+    private int clusterLocally(DSU dsu, List<String> allTicketIds, int k, IngestJob job,
+                               RunStore<Embedding> embeddingStore) throws Exception {
+        long startTime = System.currentTimeMillis();
+        int chunkSize = Math.max(1, knnChunkSize);
 
-            if (allTicketIds.isEmpty()) {
-                log.warn("No tickets found in Elasticsearch");
-                return Collections.emptyList();
+        LocalKnnIndex index = null;
+        List<String> rowTicketIds = new ArrayList<>(allTicketIds.size());
+        int withoutEmbedding = 0;
+        for (int from = 0; from < allTicketIds.size(); from += chunkSize) {
+            if (job.isCancelled()) return 0;
+            List<String> chunk = allTicketIds.subList(from, Math.min(allTicketIds.size(), from + chunkSize));
+            Map<String, Embedding> embeddings = embeddingStore.resolve(chunk, vectorStore::getEmbeddingsByTicketIds);
+            withoutEmbedding += chunk.size() - embeddings.size();
+            for (Map.Entry<String, Embedding> entry : embeddings.entrySet()) {
+                if (index == null) {
+                    index = new LocalKnnIndex(entry.getValue().dimensions(), allTicketIds.size(), localVectorApi);
+                }
+                if (entry.getValue().dimensions() != index.dimensions()) {
+                    log.warn("Skipping ticket {}: embedding has {} dimensions, expected {}",
+                            entry.getKey(), entry.getValue().dimensions(), index.dimensions());
+                    withoutEmbedding++;
+                    continue;
+                }
+                index.add(entry.getValue());
+                rowTicketIds.add(entry.getKey());
             }
+        }
+        job.ticketsClustered(withoutEmbedding);
+        if (withoutEmbedding > 0) {
+            log.warn("{} tickets had no usable embedding and stay in singleton clusters", withoutEmbedding);
+        }
+        if (index == null) return 0;
 
-            DSU dsu = new DSU(allTicketIds);
+        int parallelism = localParallelism > 0 ? localParallelism : Runtime.getRuntime().availableProcessors();
+        log.info("Loaded {} embeddings of {} dimensions in {} ms; searching with parallelism {}, Vector API {}",
+                index.size(), index.dimensions(), System.currentTimeMillis() - startTime, parallelism,
+                index.isVectorized() ? "on" : "off");
 
-            int processedCount = 0;
-            int unionsPerformed = 0;
+        // Unions run on the same pool: the DSU takes concurrent unions
+        int rows = index.size();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        LocalKnnIndex.Neighbors neighbors;
+        try {
+            neighbors = index.nearestNeighbors(k, localBlockSize, pool, job::isCancelled, job::ticketsClustered);
+        } catch (RuntimeException e) {
+            pool.shutdownNow();
+            throw e;
+        }
+        if (job.isCancelled()) {
+            pool.shutdownNow();
+            return 0;
+        }
 
-            for (String ticketId : allTicketIds) {
-                try {
-                    List<ElasticsearchSimilarTicket> neighbors = elasticsearchService.findKNearestNeighbors(ticketId, k);
-
-                    for (ElasticsearchSimilarTicket neighbor : neighbors) {
-                        if (neighbor.getSimilarity() >= SIMILARITY_THRESHOLD) {
-                            if (dsu.union(ticketId, neighbor.getTicketId())) {
-                                unionsPerformed++;
-                                log.info("United {} and {} with cosine similarity {}", ticketId, neighbor.getTicketId(), neighbor.getSimilarity());
-                            }
-                        }
+        LongAdder unionsPerformed = new LongAdder();
+        try {
+            pool.submit(() -> IntStream.range(0, rows).parallel().forEach(row -> {
+                for (int rank = 0; rank < neighbors.k(); rank++) {
+                    int neighbor = neighbors.neighbor(row, rank);
+                    // Sorted by descending score, so nothing after this passes either
+                    if (neighbor < 0 || neighbors.score(row, rank) < SIMILARITY_THRESHOLD) break;
+                    if (dsu.union(rowTicketIds.get(row), rowTicketIds.get(neighbor))) {
+                        unionsPerformed.increment();
+                        log.info("United {} and {} with cosine similarity {}",
+                                rowTicketIds.get(row), rowTicketIds.get(neighbor), neighbors.score(row, rank));
                     }
+                }
+            })).get();
+        } finally {
+            pool.shutdownNow();
+        }
+        log.info("Local kNN clustering of {} tickets took {} ms", rows, System.currentTimeMillis() - startTime);
+        return unionsPerformed.intValue();
+    }
 
-                    processedCount++;
-                    if (processedCount % 100 == 0) {
-                        log.info("Processed {}/{} tickets, performed {} unions", processedCount, allTicketIds.size(), unionsPerformed);
-                    }
+    /**
+     * Threshold join among the given tickets: SimHash signatures of dsu.lsh.bands x dsu.lsh.rows
+     * bits are bucketed per band and only pairs sharing a bucket are scored, in parallel on a
+     * fork/join pool. Unlike kNN there is no k: every pair at or above the threshold is found, as
+     * long as it shares a band. Candidate reduction and, if dsu.lsh.recallSampleSize is set, a
+     * sampled estimate of the pairs missed are logged and reported on the job.
+     * Stops early if the job is cancelled.
+     *
+     * @return unions performed
+     */
+    private int clusterWithLsh(DSU dsu, List<String> allTicketIds, IngestJob job,
+                               RunStore<Embedding> embeddingStore) throws Exception {
+        long startTime = System.currentTimeMillis();
+        int chunkSize = Math.max(1, knnChunkSize);
 
-                } catch (Exception e) {
-                    log.error("Error processing ticket {}: {}", ticketId, e.getMessage(), e);
+        SimHashLsh lsh = null;
+        List<String> rowTicketIds = new ArrayList<>(allTicketIds.size());
+        int withoutEmbedding = 0;
+        for (int from = 0; from < allTicketIds.size(); from += chunkSize) {
+            if (job.isCancelled()) return 0;
+            List<String> chunk = allTicketIds.subList(from, Math.min(allTicketIds.size(), from + chunkSize));
+            Map<String, Embedding> embeddings = embeddingStore.resolve(chunk, vectorStore::getEmbeddingsByTicketIds);
+            withoutEmbedding += chunk.size() - embeddings.size();
+            for (Map.Entry<String, Embedding> entry : embeddings.entrySet()) {
+                if (lsh == null) {
+                    lsh = new SimHashLsh(entry.getValue().dimensions(), lshBands, lshRows, lshSeed,
+                            allTicketIds.size(), localVectorApi);
+                }
+                if (entry.getValue().dimensions() != lsh.dimensions()) {
+                    log.warn("Skipping ticket {}: embedding has {} dimensions, expected {}",
+                            entry.getKey(), entry.getValue().dimensions(), lsh.dimensions());
+                    withoutEmbedding++;
+                    continue;
                 }
+                lsh.add(entry.getValue());
+                rowTicketIds.add(entry.getKey());
             }
+        }
+        job.ticketsClustered(withoutEmbedding);
+        if (withoutEmbedding > 0) {
+            log.warn("{} tickets had no usable embedding and stay in singleton clusters", withoutEmbedding);
+        }
+        if (lsh == null) return 0;
 
-            Map<String, List<String>> clusters = dsu.getClusters();
-            log.info("Created {} unique clusters from {} unions", clusters.size(), unionsPerformed);
+        int parallelism = localParallelism > 0 ? localParallelism : Runtime.getRuntime().availableProcessors();
+        log.info("Signed {} embeddings with {} bands of {} bits in {} ms; joining with parallelism {}, Vector API {}",
+                lsh.size(), lshBands, lshRows, System.currentTimeMillis() - startTime, parallelism,
+                lsh.isVectorized() ? "on" : "off");
 
-            List<String> representatives = selectClusterRepresentatives(clusters);
-            log.info("Selected {} cluster representatives", representatives.size());
+        LongAdder unionsPerformed = new LongAdder();
+        SimHashLsh.JoinStats stats;
+        SimHashLsh.Recall recall = null;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            stats = lsh.join(SIMILARITY_THRESHOLD, pool, new SimHashLsh.Pairs() {
+                @Override
+                public boolean linked(int rowA, int rowB) {
+                    return dsu.connected(rowTicketIds.get(rowA), rowTicketIds.get(rowB));
+                }
 
-            return representatives;
+                @Override
+                public void link(int rowA, int rowB, double score) {
+                    if (dsu.union(rowTicketIds.get(rowA), rowTicketIds.get(rowB))) {
+                        unionsPerformed.increment();
+                        log.info("United {} and {} with cosine similarity {}",
+                                rowTicketIds.get(rowA), rowTicketIds.get(rowB), score);
+                    }
+                }
+            }, job::isCancelled, job::ticketsClustered);
+            if (job.isCancelled()) return 0;
+            if (lshRecallSampleSize > 0) {
+                recall = lsh.estimateRecall(SIMILARITY_THRESHOLD, lshRecallSampleSize, lshSeed, pool);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
 
-        } catch (Exception e) {
-            log.error("Error in clustering process: {}", e.getMessage(), e);
-            return Collections.emptyList();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("strategy", "lsh");
+        metrics.put("bands", lshBands);
+        metrics.put("rows", lshRows);
+        metrics.put("allPairs", stats.allPairs());
+        metrics.put("candidatePairs", stats.candidates());
+        metrics.put("scoredPairs", stats.scored());
+        metrics.put("similarPairs", stats.similar());
+        metrics.put("largestBucket", stats.largestBucket());
+        metrics.put("candidateReduction", Math.round(stats.reduction() * 10000) / 10000.0);
+        log.info("LSH join of {} tickets took {} ms: scored {} of {} pairs ({} candidates, largest bucket {}), {} similar",
+                stats.rows(), System.currentTimeMillis() - startTime, stats.scored(), stats.allPairs(),
+                stats.candidates(), stats.largestBucket(), stats.similar());
+        if (recall != null) {
+            metrics.put("recallSampledRows", recall.sampledRows());
+            metrics.put("estimatedPairRecall", Math.round(recall.recall() * 10000) / 10000.0);
+            log.info("LSH recall estimate from {} sampled tickets: {} of {} similar pairs share a band ({})",
+                    recall.sampledRows(), recall.foundPairs(), recall.similarPairs(), recall.recall());
         }
+        job.setClusteringMetrics(metrics);
+        return unionsPerformed.intValue();
     }
 
-    private List<String> selectClusterRepresentatives(Map<String, List<String>> clusters) {
-        return new ArrayList<>(clusters.keySet());
+    /**
+     * Resolve the chunk's embeddings, run its kNN searches and union the results. A failure
+     * fails the whole clustering: clusters missing the chunk's unions must not be persisted.
+     */
+    private KnnChunk clusterChunk(DSU dsu, List<String> chunk, int k, RunStore<Embedding> embeddingStore) {
+        Map<String, Embedding> embeddings = embeddingStore.resolve(chunk, vectorStore::getEmbeddingsByTicketIds);
+        Map<String, List<ElasticsearchSimilarTicket>> neighbors = vectorStore.findKNearestNeighborsBatch(embeddings, k);
+
+        int unions = 0;
+        for (Map.Entry<String, List<ElasticsearchSimilarTicket>> entry : neighbors.entrySet()) {
+            String ticketId = entry.getKey();
+            for (ElasticsearchSimilarTicket neighbor : entry.getValue()) {
+                if (neighbor.getSimilarity() >= SIMILARITY_THRESHOLD) {
+                    if (dsu.union(ticketId, neighbor.getTicketId())) {
+                        unions++;
+                        log.info("United {} and {} with cosine similarity {}", ticketId, neighbor.getTicketId(), neighbor.getSimilarity());
+                    }
+                }
+            }
+        }
+        return new KnnChunk(chunk.size(), chunk.size() - embeddings.size(), unions);
     }
+
+    private record KnnChunk(int tickets, int withoutEmbedding, int unions) {}
 }
@@ -0,0 +1,369 @@
+package com.support.analyzer.spring_server.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.support.analyzer.spring_server.entity.ElasticsearchDeadLetter;
+import com.support.analyzer.spring_server.repository.ElasticsearchDeadLetterRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background bulk indexing on the client's {@link BulkIngester}. Operations are buffered until
+ * maxOperations, maxSizeMb or flushIntervalMs is reached and then sent without blocking the
+ * producer, with up to maxConcurrentRequests bulk requests in flight. Once that many are in
+ * flight and the buffer is full, add() blocks, so memory stays bounded by about
+ * (maxConcurrentRequests + 1) x maxSizeMb however fast producers are.
+ * <p>
+ * Items rejected with a retryable status (elasticsearch.bulk.retryStatuses, 429 and 503 by
+ * default), and every item of a request that failed outright, are re-queued with exponential
+ * backoff and jitter, so throttling slows indexing down instead of dropping documents. Items
+ * that fail for any other reason or run out of retries go to the es_dead_letters collection,
+ * from where {@link #replayDeadLetters(int)} can index them again.
+ * <p>
+ * Each operation carries a future that completes once it is indexed or dead-lettered, which is
+ * what lets {@link #flush()} wait for the writes a checkpoint is about to claim.
+ */
+@Service
+public class ElasticsearchBulkIndexer {
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchBulkIndexer.class);
+    private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE = new TypeReference<>() {};
+
+    @Value("${elasticsearch.bulk.maxOperations}")
+    private int maxOperations;
+
+    @Value("${elasticsearch.bulk.maxSizeMb}")
+    private int maxSizeMb;
+
+    @Value("${elasticsearch.bulk.flushIntervalMs}")
+    private long flushIntervalMs;
+
+    @Value("${elasticsearch.bulk.maxConcurrentRequests}")
+    private int maxConcurrentRequests;
+
+    @Value("${elasticsearch.bulk.flushTimeoutSeconds}")
+    private long flushTimeoutSeconds;
+
+    @Value("${elasticsearch.bulk.maxRetries}")
+    private int maxRetries;
+
+    @Value("${elasticsearch.bulk.initialBackoffMs}")
+    private long initialBackoffMs;
+
+    @Value("${elasticsearch.bulk.maxBackoffMs}")
+    private long maxBackoffMs;
+
+    @Value("${elasticsearch.bulk.retryStatuses}")
+    private Set<Integer> retryStatuses;
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchDeadLetterRepository deadLetterRepository;
+    private final ObjectMapper objectMapper;
+    private BulkIngester<PendingOperation> ingester;
+    // Re-queues retries after their backoff and writes dead letters, off the client's response threads
+    private ScheduledExecutorService retryScheduler;
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+
+    // Operations added and not yet indexed or dead-lettered
+    private final Set<CompletableFuture<Boolean>> pending = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> requestStartNanos = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder indexedOperations = new LongAdder();
+    private final LongAdder failedOperations = new LongAdder();
+    private final LongAdder retriedOperations = new LongAdder();
+    private final LongAdder deadLetteredOperations = new LongAdder();
+    private final LongAdder totalLatencyMs = new LongAdder();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final AtomicLong inFlightRequests = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    @Autowired
+    public ElasticsearchBulkIndexer(ElasticsearchClient client, ElasticsearchDeadLetterRepository deadLetterRepository,
+                                    ObjectMapper objectMapper) {
+        this.client = client;
+        this.deadLetterRepository = deadLetterRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("es-bulk-retry").daemon().factory());
+        this.ingester = BulkIngester.of(b -> b
+                .client(client)
+                .maxOperations(Math.max(1, maxOperations))
+                .maxSize(Math.max(1, maxSizeMb) * 1024L * 1024L)
+                .maxConcurrentRequests(Math.max(1, maxConcurrentRequests))
+                .flushInterval(Math.max(1, flushIntervalMs), TimeUnit.MILLISECONDS)
+                .listener(new Listener()));
+        log.info("Bulk indexing with up to {} operations or {} MB per request, every {} ms at the latest, {} requests in flight",
+                maxOperations, maxSizeMb, flushIntervalMs, maxConcurrentRequests);
+    }
+
+    /**
+     * Queue an operation. Blocks while the buffer is full and maxConcurrentRequests are in flight.
+     *
+     * @return completes with true once indexed, false once dead-lettered
+     */
+    public CompletableFuture<Boolean> add(BulkOperation operation) {
+        return track(operation);
+    }
+
+    private CompletableFuture<Boolean> track(BulkOperation operation) {
+        PendingOperation op = new PendingOperation(operation);
+        pending.add(op.done);
+        op.done.whenComplete((result, error) -> pending.remove(op.done));
+        ingester.add(operation, op);
+        return op.done;
+    }
+
+    /**
+     * Send whatever is buffered and wait until every operation added before this call has been
+     * answered for, or until elasticsearch.bulk.flushTimeoutSeconds pass. Returning says nothing
+     * about whether a given operation was indexed; that is what the future from {@link #add} is for.
+     */
+    public void flush() {
+        CompletableFuture<?>[] waitFor = pending.toArray(new CompletableFuture<?>[0]);
+        if (waitFor.length == 0) return;
+        long startTime = System.currentTimeMillis();
+        ingester.flush();
+        try {
+            CompletableFuture.allOf(waitFor).get(flushTimeoutSeconds, TimeUnit.SECONDS);
+            log.debug("Flushed {} pending bulk operations in {} ms", waitFor.length, System.currentTimeMillis() - startTime);
+        } catch (TimeoutException e) {
+            log.warn("Bulk flush gave up after {} s with operations still in flight", flushTimeoutSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for bulk operations to be indexed");
+        } catch (Exception e) {
+            log.error("Error waiting for bulk operations: {}", e.getMessage(), e);
+        }
+    }
+
+    public int pendingOperations() {
+        return pending.size();
+    }
+
+    /**
+     * Index up to limit dead letters again, oldest first, and wait for the outcome. A letter is
+     * removed once its operation is indexed or dead-lettered anew, so nothing is lost if the
+     * replay is interrupted.
+     *
+     * @return null if a replay is already running
+     */
+    public Replay replayDeadLetters(int limit) {
+        if (!replaying.compareAndSet(false, true)) return null;
+        try {
+            List<ElasticsearchDeadLetter> letters = deadLetterRepository.findAll(
+                    PageRequest.of(0, Math.max(1, limit), Sort.by(Sort.Direction.ASC, "createdAt"))).getContent();
+            Map<ElasticsearchDeadLetter, CompletableFuture<Boolean>> results = new LinkedHashMap<>();
+            int unreadable = 0;
+            for (ElasticsearchDeadLetter letter : letters) {
+                try {
+                    Map<String, Object> document = objectMapper.readValue(letter.getDocument(), DOCUMENT_TYPE);
+                    results.put(letter, track(BulkOperation.of(b -> b
+                            .index(i -> i
+                                    .index(letter.getIndex())
+                                    .id(letter.getDocumentId())
+                                    .document(document)))));
+                } catch (Exception e) {
+                    unreadable++;
+                    log.error("Cannot replay dead letter {} for document {}: {}", letter.getId(), letter.getDocumentId(), e.getMessage());
+                }
+            }
+            flush();
+
+            int indexed = 0;
+            int failedAgain = unreadable;
+            int stillPending = 0;
+            for (Map.Entry<ElasticsearchDeadLetter, CompletableFuture<Boolean>> result : results.entrySet()) {
+                if (!result.getValue().isDone()) {
+                    stillPending++;
+                    continue;
+                }
+                if (result.getValue().join()) {
+                    indexed++;
+                } else {
+                    failedAgain++;
+                }
+                deadLetterRepository.deleteById(result.getKey().getId());
+            }
+            log.info("Replayed {} dead letters: {} indexed, {} failed again, {} still pending",
+                    letters.size(), indexed, failedAgain, stillPending);
+            return new Replay(letters.size(), indexed, failedAgain, stillPending);
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    public long deadLetterCount() {
+        return deadLetterRepository.count();
+    }
+
+    @PreDestroy
+    public void close() {
+        log.info("Closing bulk indexer with {} pending operations", pending.size());
+        // Flushes the buffer and waits for requests in flight; retries still waiting out their
+        // backoff are dropped with the scheduler
+        ingester.close();
+        retryScheduler.shutdownNow();
+    }
+
+    private void retryOrDeadLetter(PendingOperation op, int status, String reason, boolean retryable) {
+        if (retryable && op.attempts < maxRetries) {
+            op.attempts++;
+            retriedOperations.increment();
+            long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(op.attempts - 1, 30));
+            // Full jitter on the upper half, so throttled items do not all come back at once
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            retryScheduler.schedule(() -> ingester.add(op.operation, op), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        retryScheduler.execute(() -> deadLetter(op, status, reason));
+    }
+
+    private void deadLetter(PendingOperation op, int status, String reason) {
+        deadLetteredOperations.increment();
+        String documentId = op.operation.isIndex() ? op.operation.index().id() : null;
+        try {
+            if (!op.operation.isIndex()) {
+                throw new IllegalStateException("Only index operations can be dead-lettered, got " + op.operation._kind());
+            }
+            deadLetterRepository.save(new ElasticsearchDeadLetter(null, op.operation.index().index(), documentId,
+                    objectMapper.writeValueAsString(op.operation.index().document()), status, reason,
+                    op.attempts + 1, LocalDateTime.now()));
+            log.warn("Dead-lettered document {} after {} attempts: {} {}", documentId, op.attempts + 1, status, reason);
+        } catch (Exception e) {
+            log.error("Could not dead-letter document {} ({} {}); it is lost: {}", documentId, status, reason, e.getMessage(), e);
+        } finally {
+            op.done.complete(false);
+        }
+    }
+
+    public BulkStats getStats() {
+        long requestCount = requests.sum();
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - startedAt) / 1000.0);
+        return new BulkStats(pending.size(), inFlightRequests.get(), requestCount, failedRequests.sum(),
+                indexedOperations.sum(), failedOperations.sum(), retriedOperations.sum(), deadLetteredOperations.sum(),
+                requestCount == 0 ? 0 : totalLatencyMs.sum() / requestCount, maxLatencyMs.get(),
+                indexedOperations.sum() / seconds);
+    }
+
+    private static final class PendingOperation {
+        private final BulkOperation operation;
+        private final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        // Retries so far; only touched by whoever holds the operation at the time
+        private int attempts;
+
+        private PendingOperation(BulkOperation operation) {
+            this.operation = operation;
+        }
+    }
+
+    private final class Listener implements BulkListener<PendingOperation> {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<PendingOperation> contexts) {
+            requestStartNanos.put(executionId, System.nanoTime());
+            inFlightRequests.incrementAndGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<PendingOperation> contexts,
+                              BulkResponse response) {
+            long latencyMs = finished(executionId);
+            // Items come back in request order
+            List<BulkResponseItem> items = response.items();
+            int failed = 0;
+            int retried = 0;
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                PendingOperation op = contexts.get(i);
+                if (item.error() == null) {
+                    op.done.complete(true);
+                    continue;
+                }
+                failed++;
+                boolean retryable = retryStatuses.contains(item.status());
+                if (retryable && op.attempts < maxRetries) {
+                    retried++;
+                } else {
+                    log.error("Bulk operation failed for document {} ({}): {}", item.id(), item.status(), item.error().reason());
+                }
+                retryOrDeadLetter(op, item.status(), item.error().reason(), retryable);
+            }
+            indexedOperations.add(items.size() - failed);
+            failedOperations.add(failed);
+            if (failed > 0) {
+                log.warn("Bulk request {}: {}/{} operations failed in {} ms, {} will be retried",
+                        executionId, failed, items.size(), latencyMs, retried);
+            } else {
+                log.info("Bulk request {}: indexed {} documents in {} ms", executionId, items.size(), latencyMs);
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<PendingOperation> contexts,
+                              Throwable failure) {
+            long latencyMs = finished(executionId);
+            failedRequests.increment();
+            failedOperations.add(contexts.size());
+            log.error("Bulk request {} of {} operations failed after {} ms, retrying them: {}",
+                    executionId, contexts.size(), latencyMs, failure.toString());
+            // A request that failed as a whole (connection error, 429 on the request) is always worth retrying
+            contexts.forEach(op -> retryOrDeadLetter(op, 0, failure.toString(), true));
+        }
+
+        private long finished(long executionId) {
+            Long start = requestStartNanos.remove(executionId);
+            long latencyMs = start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            inFlightRequests.decrementAndGet();
+            requests.increment();
+            totalLatencyMs.add(latencyMs);
+            maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+            return latencyMs;
+        }
+    }
+
+    /**
+     * Bulk indexing counters since startup
+     */
+    public record BulkStats(int pendingOperations, long inFlightRequests, long requests, long failedRequests,
+                            long indexedOperations, long failedOperations, long retriedOperations,
+                            long deadLetteredOperations, long averageLatencyMs, long maxLatencyMs,
+                            double operationsPerSecond) {
+        @Override
+        public String toString() {
+            return String.format(
+                    "ElasticsearchBulkStats{pending=%d, inFlight=%d, requests=%d (failed %d), operations=%d (failed %d, retried %d, dead-lettered %d), latency avg=%dms max=%dms, %.1f ops/s}",
+                    pendingOperations, inFlightRequests, requests, failedRequests, indexedOperations, failedOperations,
+                    retriedOperations, deadLetteredOperations, averageLatencyMs, maxLatencyMs, operationsPerSecond);
+        }
+    }
+
+    /**
+     * Outcome of a dead-letter replay; stillPending letters are kept for the next one
+     */
+    public record Replay(int replayed, int indexed, int failedAgain, int stillPending) {}
+}
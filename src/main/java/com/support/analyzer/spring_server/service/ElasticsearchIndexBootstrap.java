@@ -0,0 +1,244 @@
+package com.support.analyzer.spring_server.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorProperty;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.elasticsearch.indices.get_mapping.IndexMappingRecord;
+import com.support.analyzer.spring_server.util.VectorEncoding;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the ticket embedding and triplet indices with explicit mappings instead of leaving
+ * them to dynamic mapping, which stores vectors as plain float dense_vectors with default HNSW
+ * settings. The vector field's element_type, index_options type (int8_hnsw by default, which
+ * keeps an int8-quantized copy of each vector for the graph) and HNSW m / ef_construction come
+ * from elasticsearch.index.*; see {@link VectorEncoding} for how vectors are prepared on our side.
+ * <p>
+ * Indices that already exist are left as they are: changing a dense_vector mapping needs a
+ * reindex. Their vectors keep being written in whatever element_type they were mapped with.
+ * <p>
+ * The triplet index name is an alias over a versioned index, support-ticket-triplets-&lt;time&gt;-&lt;tag&gt;,
+ * so full runs can rebuild into a fresh one and swap it in (see {@link TripletIndexManager}).
+ */
+@Service
+public class ElasticsearchIndexBootstrap {
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchIndexBootstrap.class);
+
+    static final String EMBEDDING_FIELD = "embedding";
+    static final String TRIPLET_EMBEDDING_FIELD = "issueEmbedding";
+    // Sorts versioned triplet indices chronologically by name
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${elasticsearch.deduplication.index}")
+    private String indexName;
+
+    @Value("${elasticsearch.search.index}")
+    private String tripletIndexName;
+
+    @Value("${elasticsearch.index.bootstrapOnStartup}")
+    private boolean bootstrapOnStartup;
+
+    @Value("${elasticsearch.index.dimensions}")
+    private int dimensions;
+
+    // float or byte
+    @Value("${elasticsearch.index.elementType}")
+    private String elementType;
+
+    // hnsw, int8_hnsw, flat or int8_flat; the int8 ones only apply to float vectors
+    @Value("${elasticsearch.index.type}")
+    private String indexType;
+
+    @Value("${elasticsearch.index.hnsw.m}")
+    private int m;
+
+    @Value("${elasticsearch.index.hnsw.efConstruction}")
+    private int efConstruction;
+
+    private final ElasticsearchClient client;
+    private VectorEncoding configuredEncoding;
+    // Encoding of each index's vector field as actually mapped, once known
+    private final Map<String, VectorEncoding> encodings = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ElasticsearchIndexBootstrap(ElasticsearchClient client) {
+        this.client = client;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.configuredEncoding = VectorEncoding.of(elementType);
+        if (configuredEncoding == VectorEncoding.BYTE && indexType.startsWith("int8_")) {
+            String fallback = indexType.substring("int8_".length());
+            log.warn("elasticsearch.index.type={} only applies to float vectors; byte vectors use {}", indexType, fallback);
+            indexType = fallback;
+        }
+        if (!bootstrapOnStartup) return;
+        try {
+            bootstrap();
+        } catch (Exception e) {
+            log.error("Could not bootstrap Elasticsearch indices; writes use elementType={} until POST /vector-store/indices/bootstrap: {}",
+                    elementType, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create whichever of the two indices does not exist yet and record how each one's vectors
+     * must be encoded.
+     *
+     * @return what was done per index
+     */
+    public Map<String, String> bootstrap() throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put(indexName, ensureIndex(indexName, EMBEDDING_FIELD, Map.of("ticketId", keyword())));
+        if (client.indices().exists(e -> e.index(tripletIndexName)).value()) {
+            result.put(tripletIndexName, inspect(tripletIndexName, TRIPLET_EMBEDDING_FIELD));
+        } else {
+            String index = versionedTripletIndex(LocalDateTime.now(), "bootstrap");
+            createTripletIndex(index, tripletIndexName, null, null);
+            result.put(tripletIndexName, "created as alias of " + index);
+        }
+        return result;
+    }
+
+    /**
+     * Name of a versioned triplet index; names sort by the given time
+     *
+     * @param tag lowercase letters, digits and dashes
+     */
+    public String versionedTripletIndex(LocalDateTime time, String tag) {
+        return tripletIndexName + "-" + VERSION_FORMAT.format(time) + "-" + tag;
+    }
+
+    /**
+     * Prefix shared by every versioned triplet index name
+     */
+    public String versionedTripletIndexPrefix() {
+        return tripletIndexName + "-";
+    }
+
+    /**
+     * Create a triplet index with the configured mapping.
+     *
+     * @param alias           alias to create along with it, or null
+     * @param refreshInterval refresh_interval to create it with, or null for the default
+     * @param replicas        number_of_replicas to create it with, or null for the default
+     */
+    public void createTripletIndex(String index, String alias, String refreshInterval, String replicas) throws IOException {
+        createIndex(index, TRIPLET_EMBEDDING_FIELD, Map.of(
+                "ticketId", keyword(),
+                "issue", text(),
+                "rca", text(),
+                "solution", text()), alias, refreshInterval, replicas);
+    }
+
+    /**
+     * How vectors of the given index are written and queried: as mapped if the index has been
+     * inspected, else as configured.
+     */
+    public VectorEncoding encoding(String index) {
+        return encodings.getOrDefault(index, configuredEncoding);
+    }
+
+    /**
+     * Record that the alias now points at the index, so it is encoded like it
+     */
+    public void aliasMoved(String alias, String index) {
+        encodings.put(alias, encoding(index));
+    }
+
+    private String ensureIndex(String index, String vectorField, Map<String, Property> properties) throws IOException {
+        if (client.indices().exists(e -> e.index(index)).value()) {
+            return inspect(index, vectorField);
+        }
+        createIndex(index, vectorField, properties, null, null, null);
+        return "created";
+    }
+
+    private void createIndex(String index, String vectorField, Map<String, Property> properties, String alias,
+                             String refreshInterval, String replicas) throws IOException {
+        long startTime = System.currentTimeMillis();
+        client.indices().create(c -> {
+            c.index(index)
+                    .mappings(mappings -> mappings
+                            .properties(properties)
+                            .properties(vectorField, p -> p.denseVector(this::vectorMapping)));
+            if (refreshInterval != null || replicas != null) {
+                c.settings(settings -> {
+                    if (refreshInterval != null) settings.refreshInterval(t -> t.time(refreshInterval));
+                    if (replicas != null) settings.numberOfReplicas(replicas);
+                    return settings;
+                });
+            }
+            if (alias != null) {
+                c.aliases(alias, a -> a);
+            }
+            return c;
+        });
+        encodings.put(index, configuredEncoding);
+        if (alias != null) {
+            encodings.put(alias, configuredEncoding);
+        }
+        log.info("Created index {}{} with {} {} vectors of {} dimensions ({}, m={}, ef_construction={}) in {} ms",
+                index, alias != null ? " behind alias " + alias : "", configuredEncoding.elementType(),
+                configuredEncoding.similarity(), dimensions, indexType, m, efConstruction,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private DenseVectorProperty.Builder vectorMapping(DenseVectorProperty.Builder vector) {
+        return vector
+                .dims(dimensions)
+                .elementType(configuredEncoding.elementType())
+                .similarity(configuredEncoding.similarity())
+                .index(true)
+                .indexOptions(o -> o
+                        .type(indexType)
+                        .m(m)
+                        .efConstruction(efConstruction));
+    }
+
+    // Adopt the element_type an existing index was mapped with and report how it differs from the configuration
+    private String inspect(String index, String vectorField) throws IOException {
+        for (IndexMappingRecord record : client.indices().getMapping(g -> g.index(index)).result().values()) {
+            TypeMapping mappings = record.mappings();
+            Property property = mappings == null ? null : mappings.properties().get(vectorField);
+            if (property == null || !property.isDenseVector()) continue;
+
+            DenseVectorProperty vector = property.denseVector();
+            VectorEncoding mapped = vector.elementType() == null ? VectorEncoding.FLOAT : VectorEncoding.of(vector.elementType());
+            encodings.put(index, mapped);
+            String mappedType = vector.indexOptions() != null ? vector.indexOptions().type() : "default";
+            if (mapped != configuredEncoding || !indexType.equals(mappedType)
+                    || (vector.dims() != null && vector.dims() != dimensions)) {
+                log.warn("Index {} exists with {} vectors of {} dimensions ({}); configured {} of {} dimensions ({}) needs a reindex",
+                        index, mapped.elementType(), vector.dims(), mappedType,
+                        configuredEncoding.elementType(), dimensions, indexType);
+                return "exists, mapping differs: " + mapped.elementType() + " " + mappedType;
+            }
+            return "exists";
+        }
+        log.warn("Index {} exists without a dense_vector {} field; it will be mapped dynamically", index, vectorField);
+        return "exists, no vector mapping";
+    }
+
+    private static Property keyword() {
+        return Property.of(p -> p.keyword(k -> k));
+    }
+
+    private static Property text() {
+        return Property.of(p -> p.text(t -> t));
+    }
+}
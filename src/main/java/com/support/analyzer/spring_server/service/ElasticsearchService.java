@@ -1,14 +1,28 @@
 package com.support.analyzer.spring_server.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.Time;
 import co.elastic.clients.elasticsearch.core.*;
 import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import com.support.analyzer.spring_server.dto.Embedding;
 import com.support.analyzer.spring_server.dto.EmbeddingDocument;
 import com.support.analyzer.spring_server.dto.ElasticsearchSimilarInference;
 import com.support.analyzer.spring_server.dto.ElasticsearchSimilarTicket;
 import com.support.analyzer.spring_server.dto.TripletWithEmbedding;
 import com.support.analyzer.spring_server.entity.TicketTriplet;
+import com.support.analyzer.spring_server.util.ConcurrencyLimit;
+import com.support.analyzer.spring_server.util.SimilarityQueryCache;
+import com.support.analyzer.spring_server.util.VectorEncoding;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,16 +30,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
-public class ElasticsearchService {
+public class ElasticsearchService implements VectorStore {
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchService.class);
 
     private final ElasticsearchClient client;
-    private final List<BulkOperation> bulkBuffer = Collections.synchronizedList(new ArrayList<>());
-    private final int BULK_THRESHOLD = 100; // flush every 100 documents
+    // Same transport as client; serves findSimilarTripletsAsync without holding a thread per search
+    private final ElasticsearchAsyncClient asyncClient;
+    // Writes go through the background bulk indexer instead of blocking the calling worker
+    private final ElasticsearchBulkIndexer bulkIndexer;
+    // Knows how each index's vectors are mapped, hence how to encode them
+    private final ElasticsearchIndexBootstrap indexBootstrap;
+    private static final String SCROLL_KEEP_ALIVE = "2m";
+    private static final int SCROLL_PAGE_SIZE = 500;
+    private static final int DELETE_CHUNK_SIZE = 1000;
 
     @Value("${elasticsearch.deduplication.index}")
     private String indexName;
@@ -33,122 +59,337 @@ public class ElasticsearchService {
     @Value("${elasticsearch.search.index}")
     private String tripletIndexName;
 
+    @Value("${elasticsearch.concurrent.requests.limit}")
+    private int maxConcurrentRequests;
+
+    @Value("${elasticsearch.request.timeout.seconds}")
+    private int requestTimeoutSeconds;
+
+    @Value("${elasticsearch.bulkLoad.enabled}")
+    private boolean bulkLoadEnabled;
+
+    @Value("${elasticsearch.bulkLoad.replicas}")
+    private int bulkLoadReplicas;
+
+    // Restored where an index had no explicit setting, or was left in the bulk-load profile by a run that died
+    @Value("${elasticsearch.bulkLoad.defaultRefreshInterval}")
+    private String defaultRefreshInterval;
+
+    @Value("${elasticsearch.bulkLoad.defaultReplicas}")
+    private int defaultReplicas;
+
+    @Value("${elasticsearch.similarityCache.maxEntries}")
+    private int similarityCacheMaxEntries;
+
+    @Value("${elasticsearch.similarityCache.ttlSeconds}")
+    private long similarityCacheTtlSeconds;
+
+    @Value("${elasticsearch.similarityCache.minSimilarity}")
+    private double similarityCacheMinSimilarity;
+
+    @Value("${elasticsearch.similarityCache.signatureBits}")
+    private int similarityCacheSignatureBits;
+
+    @Value("${elasticsearch.similarityCache.seed}")
+    private long similarityCacheSeed;
+
+    private ConcurrencyLimit searchLimit;
+    // findSimilarTriplets results by query; cleared whenever what the triplet alias serves may change
+    private SimilarityQueryCache<List<ElasticsearchSimilarInference>> similarityCache;
+    // Where triplets are written: the search alias, or a versioned index while a full run rebuilds it
+    private volatile String tripletWriteIndex;
+    // Settings each index had before the current bulk load
+    private final Map<String, IndexProfile> bulkLoadOriginals = new ConcurrentHashMap<>();
+
     @Autowired
-    public ElasticsearchService(ElasticsearchClient client) {
+    public ElasticsearchService(ElasticsearchClient client, ElasticsearchAsyncClient asyncClient,
+                                ElasticsearchBulkIndexer bulkIndexer, ElasticsearchIndexBootstrap indexBootstrap) {
         this.client = client;
+        this.asyncClient = asyncClient;
+        this.bulkIndexer = bulkIndexer;
+        this.indexBootstrap = indexBootstrap;
+    }
+
+    @PostConstruct
+    public void initLimits() {
+        this.searchLimit = new ConcurrencyLimit("elasticsearch_search", maxConcurrentRequests, requestTimeoutSeconds);
+        this.tripletWriteIndex = tripletIndexName;
+        this.similarityCache = new SimilarityQueryCache<>(similarityCacheMaxEntries,
+                similarityCacheTtlSeconds * 1000L, similarityCacheMinSimilarity,
+                similarityCacheSignatureBits, similarityCacheSeed);
     }
 
-    public void indexEmbedding(String ticketId, List<Double> embedding) {
+    @Override
+    public CompletableFuture<Boolean> indexEmbedding(String ticketId, Embedding embedding) {
         BulkOperation op = BulkOperation.of(b -> b
                 .index(i -> i
                         .index(indexName)
                         .id(ticketId)
-                        .document(Map.of("ticketId", ticketId, "embedding", embedding))
+                        .document(Map.of("ticketId", ticketId, "embedding", indexBootstrap.encoding(indexName).encode(embedding)))
                 )
         );
-        addToBulk(op);
+        return addToBulk(op);
     }
 
-    public void indexTicketTripletWithEmbedding(TicketTriplet triplet, List<Double> issueEmbedding) {
+    @Override
+    public CompletableFuture<Boolean> indexTicketTripletWithEmbedding(TicketTriplet triplet, Embedding issueEmbedding) {
         BulkOperation op = BulkOperation.of(b -> b
                 .index(i -> i
-                        .index(tripletIndexName)
+                        .index(tripletWriteIndex)
                         .id(triplet.getTicketId())
                         .document(Map.of(
                                 "ticketId", triplet.getTicketId(),
                                 "issue", triplet.getIssue(),
                                 "rca", triplet.getRca(),
                                 "solution", triplet.getSolution(),
-                                "issueEmbedding", issueEmbedding
+                                "issueEmbedding", indexBootstrap.encoding(tripletWriteIndex).encode(issueEmbedding)
                         ))
                 )
         );
-        addToBulk(op);
+        CompletableFuture<Boolean> written = addToBulk(op);
+        // Invalidating at enqueue time would let a search before the write lands re-cache results
+        // without it, so this waits for Elasticsearch to accept it. It becomes searchable with the
+        // next refresh; refreshIndices() and endBulkLoad() invalidate again after theirs. A rebuild
+        // writes to an index nothing reads until the swap
+        if (tripletWriteIndex.equals(tripletIndexName)) {
+            written.thenAccept(ok -> {
+                if (Boolean.TRUE.equals(ok)) similarityCache.invalidate();
+            });
+        }
+        return written;
     }
 
-    private void addToBulk(BulkOperation op) {
-        bulkBuffer.add(op);
-        log.debug("Added operation to bulk buffer. Buffer size: {}", bulkBuffer.size());
-
-        if (bulkBuffer.size() >= BULK_THRESHOLD) {
-            flushBulk();
+    /**
+     * Deletes go straight to Elasticsearch rather than through the bulk indexer, whose dead letters
+     * only hold index operations. A triplet that is not there counts as deleted. Each chunk
+     * refreshes the index, so the deletes are searchable before the similarity cache is cleared.
+     */
+    @Override
+    public void deleteTriplets(Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return;
+        String index = tripletWriteIndex;
+        List<String> ids = new ArrayList<>(ticketIds);
+        int failed = 0;
+        try {
+            for (int from = 0; from < ids.size(); from += DELETE_CHUNK_SIZE) {
+                List<BulkOperation> deletes = ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK_SIZE)).stream()
+                        .map(id -> BulkOperation.of(b -> b.delete(d -> d.index(index).id(id))))
+                        .collect(Collectors.toList());
+                BulkResponse response = client.bulk(b -> b.operations(deletes).refresh(Refresh.True));
+                if (response.errors()) {
+                    for (var item : response.items()) {
+                        if (item.error() != null) {
+                            failed++;
+                            log.error("Could not delete triplet {} from {}: {}", item.id(), index, item.error().reason());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error deleting triplets from " + index + ": " + e.getMessage(), e);
+        } finally {
+            if (index.equals(tripletIndexName)) {
+                similarityCache.invalidate();
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + ids.size() + " triplets could not be deleted from " + index);
         }
+        log.info("Deleted triplets of {} tickets from {}", ids.size(), index);
     }
 
-    public synchronized void flushBulk() {
-        if (bulkBuffer.isEmpty()) return;
+    /**
+     * Send triplet writes to the given index instead of the search alias; null to go back to the alias
+     */
+    public void writeTripletsTo(String index) {
+        this.tripletWriteIndex = index != null ? index : tripletIndexName;
+    }
 
-        try {
-            List<BulkOperation> opsToFlush = new ArrayList<>(bulkBuffer);
-            bulkBuffer.clear();
+    /**
+     * Whether triplet writes currently go to a rebuilt index the alias does not point to yet
+     */
+    public boolean isRebuildingTriplets() {
+        return !tripletWriteIndex.equals(tripletIndexName);
+    }
 
-            log.info("Flushing {} operations via bulk request", opsToFlush.size());
+    /**
+     * Forget cached similarity results, e.g. once the triplet alias points at another index
+     */
+    public void invalidateSimilarityCache() {
+        similarityCache.invalidate();
+    }
 
-            BulkRequest bulkRequest = BulkRequest.of(b -> b.operations(opsToFlush));
-            BulkResponse response = client.bulk(bulkRequest);
+    public SimilarityQueryCache.Stats getSimilarityCacheStats() {
+        return similarityCache.stats();
+    }
 
-            if (response.errors()) {
-                log.warn("Bulk indexing had errors. First error: {}",
-                        response.items().get(0).error());
+    private CompletableFuture<Boolean> addToBulk(BulkOperation op) {
+        return bulkIndexer.add(op);
+    }
 
-                // Log error details
-                int errorCount = 0;
-                for (var item : response.items()) {
-                    if (item.error() != null) {
-                        errorCount++;
-                        log.error("Bulk operation failed for document {}: {}",
-                                item.id(), item.error().reason());
-                    }
+    /**
+     * Send buffered writes and wait, up to elasticsearch.bulk.flushTimeoutSeconds, until
+     * Elasticsearch has answered for them
+     */
+    @Override
+    public void flush() {
+        flushBulk();
+    }
+
+    public void flushBulk() {
+        bulkIndexer.flush();
+    }
+
+    @PreDestroy
+    public void onDestroy() {
+        log.info("Application shutdown: performing final bulk flush for Elasticsearch...");
+        finalFlush();
+        endBulkLoad();
+    }
+
+    /**
+     * Put both indices into a bulk-load profile for an ingest run: no periodic refresh and
+     * elasticsearch.bulkLoad.replicas replicas, so the write burst is not slowed by refreshes
+     * and replica copies. Nothing written becomes searchable until {@link #refreshIndices()} or
+     * {@link #endBulkLoad()}. An index whose settings cannot be changed (e.g. on serverless)
+     * keeps its own.
+     *
+     * @param includeTriplets false when the run rebuilds triplets into a new index, which is
+     *                        created in the profile, so the live one is left alone
+     */
+    public synchronized void beginBulkLoad(boolean includeTriplets) {
+        if (!bulkLoadEnabled) return;
+        IndexProfile bulkLoad = bulkLoadProfile();
+        for (String index : includeTriplets ? List.of(indexName, tripletIndexName) : List.of(indexName)) {
+            if (bulkLoadOriginals.containsKey(index)) continue;
+            try {
+                IndexProfile original = currentProfile(index);
+                if (bulkLoad.refreshInterval().equals(original.refreshInterval())) {
+                    original = defaultProfile();
+                    log.warn("Index {} is still in the bulk-load profile, probably from a run that did not finish; it will be restored to {}",
+                            index, original);
                 }
-                log.warn("Total errors in bulk operation: {}/{}", errorCount, opsToFlush.size());
+                applyProfile(index, bulkLoad);
+                bulkLoadOriginals.put(index, original);
+                log.info("Index {} in bulk-load profile {} for the run; was {}", index, bulkLoad, original);
+            } catch (Exception e) {
+                log.warn("Could not put index {} into the bulk-load profile; indexing with its current settings: {}",
+                        index, e.getMessage());
+            }
+        }
+    }
 
-            } else {
-                log.info("Successfully indexed {} documents in bulk.", opsToFlush.size());
+    /**
+     * Refresh and restore the settings {@link #beginBulkLoad(boolean)} replaced. Safe to call when no
+     * bulk load is active.
+     */
+    public synchronized void endBulkLoad() {
+        boolean bulkLoading = !bulkLoadOriginals.isEmpty();
+        Iterator<Map.Entry<String, IndexProfile>> originals = bulkLoadOriginals.entrySet().iterator();
+        while (originals.hasNext()) {
+            Map.Entry<String, IndexProfile> original = originals.next();
+            try {
+                refresh(original.getKey());
+                applyProfile(original.getKey(), original.getValue());
+                originals.remove();
+                log.info("Index {} restored to {}", original.getKey(), original.getValue());
+            } catch (Exception e) {
+                log.error("Could not restore index {} to {}; it stays without refresh until the next run restores it: {}",
+                        original.getKey(), original.getValue(), e.getMessage(), e);
             }
+        }
+        if (bulkLoading) {
+            // Only now are the run's writes searchable
+            similarityCache.invalidate();
+        }
+    }
+
+    /**
+     * Make everything indexed so far searchable, before clustering or inference reads it. Call
+     * after {@link #flush()}.
+     */
+    public void refreshIndices() {
+        long startTime = System.currentTimeMillis();
+        try {
+            refresh(indexName);
+            refresh(tripletIndexName);
+            similarityCache.invalidate();
+            log.info("Refreshed {} and {} in {} ms", indexName, tripletIndexName, System.currentTimeMillis() - startTime);
         } catch (Exception e) {
-            log.error("Bulk indexing failed: {}", e, e);
+            log.error("Error refreshing indices; searches may miss recent writes: {}", e.getMessage(), e);
+        }
+    }
+
+    void refresh(String index) throws IOException {
+        client.indices().refresh(r -> r.index(index).ignoreUnavailable(true));
+    }
+
+    /**
+     * The profile indices are loaded with, or null if bulk-load tuning is off
+     */
+    IndexProfile bulkLoadProfile() {
+        return bulkLoadEnabled ? new IndexProfile("-1", String.valueOf(bulkLoadReplicas)) : null;
+    }
+
+    /**
+     * elasticsearch.bulkLoad.defaultRefreshInterval and defaultReplicas
+     */
+    IndexProfile defaultProfile() {
+        return new IndexProfile(defaultRefreshInterval, String.valueOf(defaultReplicas));
+    }
 
-            // Clear buffer to prevent infinite retry
-            bulkBuffer.clear();
+    IndexProfile currentProfile(String index) throws IOException {
+        IndexState state = client.indices().getSettings(g -> g.index(index)).result().values().stream()
+                .findFirst()
+                .orElseThrow(() -> new IOException("No settings returned for index " + index));
+        IndexSettings settings = state.settings();
+        if (settings != null && settings.index() != null) {
+            settings = settings.index();
         }
+        Time refresh = settings == null ? null : settings.refreshInterval();
+        String replicas = settings == null ? null : settings.numberOfReplicas();
+        String refreshInterval = refresh == null ? defaultRefreshInterval
+                : refresh.isTime() ? refresh.time() : String.valueOf(refresh.offset());
+        return new IndexProfile(refreshInterval, replicas != null ? replicas : String.valueOf(defaultReplicas));
     }
 
-    @PreDestroy
-    public void onDestroy() {
-        log.info("Application shutdown: performing final bulk flush for Elasticsearch...");
-        finalFlush();
+    void applyProfile(String index, IndexProfile profile) throws IOException {
+        client.indices().putSettings(p -> p
+                .index(index)
+                .settings(settings -> settings
+                        .refreshInterval(t -> t.time(profile.refreshInterval()))
+                        .numberOfReplicas(profile.replicas())));
     }
 
     // Manual flush for end of processing
     public void finalFlush() {
         log.info("Performing final Elasticsearch bulk flush...");
         flushBulk();
-        log.info("Final Elasticsearch flush completed");
+        log.info("Final Elasticsearch flush completed: {}", bulkIndexer.getStats());
     }
 
-    // Get current buffer size for monitoring
+    // Operations buffered or in flight, for monitoring
     public int getBulkBufferSize() {
-        return bulkBuffer.size();
+        return bulkIndexer.pendingOperations();
     }
 
-    // Existing search methods remain unchanged
     public List<ElasticsearchSimilarTicket> findKNearestNeighbors(String ticketId, int k) {
+        return searchLimit.execute(() -> searchKNearestNeighbors(ticketId, k), Collections.emptyList());
+    }
+
+    private List<ElasticsearchSimilarTicket> searchKNearestNeighbors(String ticketId, int k) {
         try {
-            List<Double> targetEmbedding = getEmbeddingByTicketId(ticketId);
+            Embedding targetEmbedding = getEmbeddingByTicketId(ticketId);
             if (targetEmbedding == null) {
                 log.warn("No embedding found for ticket: " + ticketId);
                 return Collections.emptyList();
             }
 
-            List<Float> floatEmbedding = targetEmbedding.stream()
-                    .map(Double::floatValue)
-                    .collect(Collectors.toList());
-
             SearchResponse<EmbeddingDocument> response = client.search(s -> s
                             .index(indexName)
                             .knn(knn -> knn
                                     .field("embedding")
-                                    .queryVector(floatEmbedding)
+                                    .queryVector(indexBootstrap.encoding(indexName).queryVector(targetEmbedding))
                                     .k((long) k + 1L)
                                     .numCandidates(Math.max(100L, k * 10L))
                             )
@@ -171,38 +412,141 @@ public class ElasticsearchService {
         }
     }
 
-    public List<ElasticsearchSimilarInference> findSimilarTriplets(List<Double> queryEmbedding, int k) {
+    /**
+     * kNN neighbours of many tickets whose embeddings the caller already holds, as one _msearch
+     * request with a kNN search per ticket. Takes a single permit of the search limit.
+     *
+     * @return neighbours per query ticket, excluding the ticket itself
+     * @throws IllegalStateException if the request or any of its searches fails, or no permit frees up
+     */
+    @Override
+    public Map<String, List<ElasticsearchSimilarTicket>> findKNearestNeighborsBatch(Map<String, Embedding> queries, int k) {
+        if (queries.isEmpty()) return Collections.emptyMap();
+        return searchLimit.executeOrThrow(() -> searchKNearestNeighborsBatch(queries, k));
+    }
+
+    private Map<String, List<ElasticsearchSimilarTicket>> searchKNearestNeighborsBatch(Map<String, Embedding> queries, int k) {
+        MsearchResponse<EmbeddingDocument> response;
+        List<String> queryTicketIds = new ArrayList<>(queries.size());
+        try {
+            VectorEncoding encoding = indexBootstrap.encoding(indexName);
+            List<RequestItem> searches = new ArrayList<>(queries.size());
+            for (Map.Entry<String, Embedding> query : queries.entrySet()) {
+                queryTicketIds.add(query.getKey());
+                searches.add(RequestItem.of(r -> r
+                        .header(h -> h.index(indexName))
+                        .body(b -> b
+                                .knn(knn -> knn
+                                        .field("embedding")
+                                        .queryVector(encoding.queryVector(query.getValue()))
+                                        .k((long) k + 1L)
+                                        .numCandidates(Math.max(100L, k * 10L))
+                                )
+                                .size(k + 1)
+                                .source(source -> source.filter(f -> f.includes("ticketId")))
+                        )));
+            }
+
+            response = client.msearch(m -> m.searches(searches), EmbeddingDocument.class);
+        } catch (IOException | ElasticsearchException e) {
+            throw new IllegalStateException("Batched kNN search for " + queries.size() + " tickets failed: " + e.getMessage(), e);
+        }
+
+        // Responses come back in request order. A failed search would look like a ticket without
+        // neighbours, which clustering cannot tell apart, so it fails the whole batch
+        Map<String, List<ElasticsearchSimilarTicket>> neighbors = new HashMap<>(queries.size() * 2);
+        List<MultiSearchResponseItem<EmbeddingDocument>> items = response.responses();
+        if (items.size() != queryTicketIds.size()) {
+            throw new IllegalStateException("Multi-search returned " + items.size() + " responses for "
+                    + queryTicketIds.size() + " kNN searches");
+        }
+        for (int i = 0; i < items.size(); i++) {
+            String ticketId = queryTicketIds.get(i);
+            MultiSearchResponseItem<EmbeddingDocument> item = items.get(i);
+            if (item.isFailure()) {
+                throw new IllegalStateException("kNN search failed for ticket " + ticketId + ": "
+                        + item.failure().error().reason());
+            }
+            neighbors.put(ticketId, item.result().hits().hits().stream()
+                    .filter(hit -> !hit.id().equals(ticketId))
+                    .limit(k)
+                    .map(hit -> {
+                        String hitTicketId = hit.source() != null ? hit.source().getTicketId() : hit.id();
+                        return new ElasticsearchSimilarTicket(hitTicketId, hit.score());
+                    })
+                    .collect(Collectors.toList()));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Stored embeddings of the given tickets in one _mget round trip. Embedding documents are
+     * indexed under their ticket id. Tickets without a stored embedding are absent from the result.
+     *
+     * @throws IllegalStateException if the request or any of its lookups fails, or no permit frees up
+     */
+    @Override
+    public Map<String, Embedding> getEmbeddingsByTicketIds(Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return Collections.emptyMap();
+        return searchLimit.executeOrThrow(() -> fetchEmbeddingsByTicketIds(ticketIds));
+    }
+
+    private Map<String, Embedding> fetchEmbeddingsByTicketIds(Collection<String> ticketIds) {
+        MgetResponse<EmbeddingDocument> response;
+        try {
+            response = client.mget(m -> m
+                            .index(indexName)
+                            .ids(new ArrayList<>(ticketIds))
+                            .sourceIncludes("embedding")
+                    , EmbeddingDocument.class);
+        } catch (IOException | ElasticsearchException e) {
+            throw new IllegalStateException("Getting embeddings for " + ticketIds.size() + " tickets failed: " + e.getMessage(), e);
+        }
+
+        Map<String, Embedding> embeddings = new LinkedHashMap<>();
+        for (MultiGetResponseItem<EmbeddingDocument> item : response.docs()) {
+            if (item.isFailure()) {
+                throw new IllegalStateException("Getting the embedding of ticket " + item.failure().id() + " failed: "
+                        + item.failure().error().reason());
+            }
+            if (item.result().found() && item.result().source() != null) {
+                Embedding embedding = item.result().source().getEmbedding();
+                if (embedding != null && !embedding.isEmpty()) {
+                    embeddings.put(item.result().id(), embedding);
+                }
+            }
+        }
+        if (embeddings.size() < ticketIds.size()) {
+            log.warn("No embedding found for {}/{} tickets", ticketIds.size() - embeddings.size(), ticketIds.size());
+        }
+        return embeddings;
+    }
+
+    @Override
+    public List<ElasticsearchSimilarInference> findSimilarTriplets(Embedding queryEmbedding, int k) {
+        // Empty results are not cached: they are also what a failed search returns
+        return similarityCache.get(queryEmbedding, k,
+                () -> searchLimit.execute(() -> searchSimilarTriplets(queryEmbedding, k), Collections.emptyList()),
+                results -> !results.isEmpty());
+    }
+
+    @Override
+    public CompletableFuture<List<ElasticsearchSimilarInference>> findSimilarTripletsAsync(Embedding queryEmbedding, int k) {
+        return similarityCache.getAsync(queryEmbedding, k,
+                () -> searchLimit.executeAsync(() -> searchSimilarTripletsAsync(queryEmbedding, k), Collections.emptyList()),
+                results -> !results.isEmpty());
+    }
+
+    private List<ElasticsearchSimilarInference> searchSimilarTriplets(Embedding queryEmbedding, int k) {
         try {
             if (queryEmbedding == null || queryEmbedding.isEmpty()) {
                 log.warn("Query embedding is null or empty");
                 return Collections.emptyList();
             }
 
-            List<Float> floatEmbedding = queryEmbedding.stream()
-                    .map(Double::floatValue)
-                    .collect(Collectors.toList());
-
-            SearchResponse<TripletWithEmbedding> response = client.search(s -> s
-                            .index(tripletIndexName)
-                            .knn(knn -> knn
-                                    .field("issueEmbedding")
-                                    .queryVector(floatEmbedding)
-                                    .k((long) k)
-                                    .numCandidates(Math.max(100L, k * 10L))
-                            )
-                            .size(k)
-                    , TripletWithEmbedding.class);
-
-            return response.hits().hits().stream()
-                    .limit(k)
-                    .map(Hit::source)
-                    .filter(Objects::nonNull)
-                    .map(triplet -> new ElasticsearchSimilarInference(
-                            triplet.getRca(),
-                            triplet.getIssue(),
-                            triplet.getSolution()
-                    ))
-                    .collect(Collectors.toList());
+            SearchResponse<TripletWithEmbedding> response = client.search(similarTripletsRequest(queryEmbedding, k),
+                    TripletWithEmbedding.class);
+            return toSimilarInferences(response, k);
 
         } catch (Exception e) {
             log.error("Error finding similar triplets: {}", e, e);
@@ -210,6 +554,44 @@ public class ElasticsearchService {
         }
     }
 
+    private CompletableFuture<List<ElasticsearchSimilarInference>> searchSimilarTripletsAsync(Embedding queryEmbedding, int k) {
+        if (queryEmbedding == null || queryEmbedding.isEmpty()) {
+            log.warn("Query embedding is null or empty");
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return asyncClient.search(similarTripletsRequest(queryEmbedding, k), TripletWithEmbedding.class)
+                .thenApply(response -> toSimilarInferences(response, k))
+                .exceptionally(e -> {
+                    log.error("Error finding similar triplets: {}", e, e);
+                    return Collections.emptyList();
+                });
+    }
+
+    private SearchRequest similarTripletsRequest(Embedding queryEmbedding, int k) {
+        return SearchRequest.of(s -> s
+                .index(tripletIndexName)
+                .knn(knn -> knn
+                        .field("issueEmbedding")
+                        .queryVector(indexBootstrap.encoding(tripletIndexName).queryVector(queryEmbedding))
+                        .k((long) k)
+                        .numCandidates(Math.max(100L, k * 10L))
+                )
+                .size(k));
+    }
+
+    private static List<ElasticsearchSimilarInference> toSimilarInferences(SearchResponse<TripletWithEmbedding> response, int k) {
+        return response.hits().hits().stream()
+                .limit(k)
+                .map(Hit::source)
+                .filter(Objects::nonNull)
+                .map(triplet -> new ElasticsearchSimilarInference(
+                        triplet.getRca(),
+                        triplet.getIssue(),
+                        triplet.getSolution()
+                ))
+                .collect(Collectors.toList());
+    }
+
     public TripletWithEmbedding getTripletByTicketId(String ticketId) {
         try {
             SearchResponse<TripletWithEmbedding> response = client.search(s -> s
@@ -236,7 +618,7 @@ public class ElasticsearchService {
         }
     }
 
-    private List<Double> getEmbeddingByTicketId(String ticketId) {
+    private Embedding getEmbeddingByTicketId(String ticketId) {
         try {
             SearchResponse<EmbeddingDocument> response = client.search(s -> s
                             .index(indexName)
@@ -263,33 +645,96 @@ public class ElasticsearchService {
         }
     }
 
-    // Buffer statistics for monitoring
-    public BufferStats getBufferStats() {
-        return new BufferStats(
-                bulkBuffer.size(),
-                BULK_THRESHOLD
-        );
+    /**
+     * Stream every stored ticket embedding to the consumer, in pages of a scroll.
+     *
+     * @return documents read
+     * @throws IOException if a page cannot be read; the consumer may have seen part of the index
+     */
+    public long scanEmbeddings(BiConsumer<String, Embedding> consumer) throws IOException {
+        return scroll(indexName, EmbeddingDocument.class, hit -> {
+            EmbeddingDocument doc = hit.source();
+            if (doc != null && doc.getEmbedding() != null && !doc.getEmbedding().isEmpty()) {
+                consumer.accept(doc.getTicketId() != null ? doc.getTicketId() : hit.id(), doc.getEmbedding());
+            }
+        });
+    }
+
+    /**
+     * Stream every stored triplet to the consumer, in pages of a scroll.
+     *
+     * @return documents read
+     * @throws IOException if a page cannot be read; the consumer may have seen part of the index
+     */
+    public long scanTriplets(Consumer<TripletWithEmbedding> consumer) throws IOException {
+        return scroll(tripletIndexName, TripletWithEmbedding.class, hit -> {
+            if (hit.source() != null && hit.source().getIssueEmbedding() != null) {
+                consumer.accept(hit.source());
+            }
+        });
+    }
+
+    /**
+     * Number of stored ticket embeddings, counting the same documents {@link #scanEmbeddings} passes on
+     */
+    public long countEmbeddings() throws IOException {
+        return client.count(c -> c.index(indexName).query(q -> q.exists(e -> e.field("embedding")))).count();
     }
 
-    // Inner class for buffer statistics
-    public static class BufferStats {
-        private final int currentBufferSize;
-        private final int bulkThreshold;
+    /**
+     * Number of triplets behind the alias, counting the same documents {@link #scanTriplets} passes on
+     */
+    public long countTriplets() throws IOException {
+        return client.count(c -> c.index(tripletIndexName).query(q -> q.exists(e -> e.field("issueEmbedding")))).count();
+    }
+
+    private <T> long scroll(String index, Class<T> documentClass, Consumer<Hit<T>> consumer) throws IOException {
+        SearchResponse<T> first = client.search(s -> s
+                        .index(index)
+                        .scroll(t -> t.time(SCROLL_KEEP_ALIVE))
+                        .size(SCROLL_PAGE_SIZE)
+                , documentClass);
 
-        public BufferStats(int currentBufferSize, int bulkThreshold) {
-            this.currentBufferSize = currentBufferSize;
-            this.bulkThreshold = bulkThreshold;
+        String scrollId = first.scrollId();
+        List<Hit<T>> hits = first.hits().hits();
+        long read = 0;
+        try {
+            while (!hits.isEmpty()) {
+                hits.forEach(consumer);
+                read += hits.size();
+                log.debug("Scrolled {} documents of {}", read, index);
+
+                String currentScrollId = scrollId;
+                ScrollResponse<T> page = client.scroll(s -> s
+                                .scrollId(currentScrollId)
+                                .scroll(t -> t.time(SCROLL_KEEP_ALIVE))
+                        , documentClass);
+                scrollId = page.scrollId();
+                hits = page.hits().hits();
+            }
+        } finally {
+            if (scrollId != null) {
+                String finalScrollId = scrollId;
+                try {
+                    client.clearScroll(c -> c.scrollId(finalScrollId));
+                } catch (Exception e) {
+                    log.warn("Could not clear scroll over {}: {}", index, e.getMessage());
+                }
+            }
         }
+        log.info("Scrolled {} documents of {}", read, index);
+        return read;
+    }
 
-        public int getCurrentBufferSize() { return currentBufferSize; }
-        public int getBulkThreshold() { return bulkThreshold; }
+    // Bulk indexing statistics for monitoring
+    public ElasticsearchBulkIndexer.BulkStats getBufferStats() {
+        return bulkIndexer.getStats();
+    }
 
+    record IndexProfile(String refreshInterval, String replicas) {
         @Override
         public String toString() {
-            return String.format(
-                    "ElasticsearchBufferStats{buffer=%d/%d}",
-                    currentBufferSize, bulkThreshold
-            );
+            return "{refresh_interval=" + refreshInterval + ", number_of_replicas=" + replicas + "}";
         }
     }
-}
\ No newline at end of file
+}
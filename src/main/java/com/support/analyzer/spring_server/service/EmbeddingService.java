@@ -1,8 +1,10 @@
 package com.support.analyzer.spring_server.service;
 
 import com.support.analyzer.spring_server.dto.EmbedBatchRequest;
+import com.support.analyzer.spring_server.dto.Embedding;
 import com.support.analyzer.spring_server.dto.FlaskEmbeddingResponse;
 import com.support.analyzer.spring_server.dto.FlaskEmbeddingResponseItem;
+import com.support.analyzer.spring_server.util.ConcurrencyLimit;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +13,7 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 @Service
@@ -20,16 +23,24 @@ public class EmbeddingService {
     @Value("${flask.baseurl}")
     private String flaskBaseUrl;
 
+    @Value("${flask.embed.concurrent.requests.limit}")
+    private int maxConcurrentRequests;
+
+    @Value("${flask.request.timeout.seconds}")
+    private int requestTimeoutSeconds;
+
     private WebClient embeddingClient;
+    private ConcurrencyLimit requestLimit;
 
     @PostConstruct
     public void initClient() {
         this.embeddingClient = WebClient.builder()
                 .baseUrl(flaskBaseUrl)
                 .build();
+        this.requestLimit = new ConcurrencyLimit("flask_embed", maxConcurrentRequests, requestTimeoutSeconds);
     }
 
-    public List<Double> getEmbedding(String ticketId, String message) {
+    public Embedding getEmbedding(String ticketId, String message) {
         try {
             return embeddingClient.post()
                     .uri("/embed")
@@ -45,7 +56,30 @@ public class EmbeddingService {
         }
     }
 
+    /**
+     * {@link #getEmbedding} without blocking, under the embedding concurrency limit;
+     * completes with null on failure
+     */
+    public CompletableFuture<Embedding> getEmbeddingAsync(String ticketId, String message) {
+        return requestLimit.executeAsync(() -> embeddingClient.post()
+                .uri("/embed")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new EmbedRequest(message))
+                .retrieve()
+                .bodyToMono(FlaskEmbeddingResponse.class)
+                .map(FlaskEmbeddingResponse::getEmbedding)
+                .toFuture()
+                .exceptionally(e -> {
+                    log.error("Embedding Error for ticket {}: {}", ticketId, e.getMessage());
+                    return null;
+                }), null);
+    }
+
     public List<FlaskEmbeddingResponseItem> getEmbeddingsBatch(List<EmbedBatchRequest.EmbedItem> batch) {
+        return requestLimit.execute(() -> embedBatch(batch), List.of());
+    }
+
+    private List<FlaskEmbeddingResponseItem> embedBatch(List<EmbedBatchRequest.EmbedItem> batch) {
         try {
             return embeddingClient.post()
                     .uri("/embed_batch")
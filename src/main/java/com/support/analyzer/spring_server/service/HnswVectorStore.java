@@ -0,0 +1,517 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.dto.ElasticsearchSimilarInference;
+import com.support.analyzer.spring_server.dto.ElasticsearchSimilarTicket;
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.entity.TicketTriplet;
+import com.support.analyzer.spring_server.util.HnswIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VectorStore that answers similarity queries from in-memory HNSW graphs of both indices, so
+ * clustering and inference skip the round trip to Elasticsearch. Writes go through to
+ * Elasticsearch, which stays the system of record, and into the graphs.
+ *
+ * The graphs are snapshotted to one local file after each ingest run and on shutdown, and
+ * loaded from it on startup. The snapshot records how many documents each graph holds; if
+ * Elasticsearch counts a different number at startup (another node wrote, or the indices were
+ * restored), the snapshot is discarded and the graphs are rebuilt. Without a usable snapshot they
+ * only hold what this node has written, so queries keep going to Elasticsearch until a rebuild
+ * has read both indices.
+ *
+ * A write reaches the graph only once Elasticsearch has confirmed it, so the graphs never hold
+ * a document the indices lost.
+ *
+ * Triplets a full run writes into a rebuilt index stay out of the graph, which mirrors the index
+ * the alias serves. Once the alias is swapped the triplet graph is rebuilt from the new index, which
+ * also drops the triplets the run did not write again; triplet queries go to Elasticsearch meanwhile.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "vectorstore.backend", havingValue = "hnsw")
+public class HnswVectorStore implements VectorStore {
+    private static final Logger log = LoggerFactory.getLogger(HnswVectorStore.class);
+    private static final Logger perfLog = LoggerFactory.getLogger("PERF_SUMMARY");
+    private static final int SNAPSHOT_VERSION = 2;
+
+    @Value("${vectorstore.hnsw.m}")
+    private int m;
+
+    @Value("${vectorstore.hnsw.efConstruction}")
+    private int efConstruction;
+
+    @Value("${vectorstore.hnsw.efSearch}")
+    private int efSearch;
+
+    @Value("${vectorstore.hnsw.snapshotPath}")
+    private String snapshotPath;
+
+    @Value("${vectorstore.hnsw.vectorApi}")
+    private boolean vectorApi;
+
+    private final ElasticsearchService elasticsearchService;
+
+    // Created on the first embedding seen, which fixes the dimensions
+    private volatile HnswIndex tickets;
+    private volatile HnswIndex triplets;
+    private final Map<String, ElasticsearchSimilarInference> tripletPayloads = new ConcurrentHashMap<>();
+
+    // True once the graphs hold both indices in full (from a snapshot or a rebuild)
+    private volatile boolean ready;
+    // The triplet alias moved to another index and the triplet graph has not been rebuilt from it yet
+    private volatile boolean tripletsStale;
+    private final AtomicBoolean tripletRebuildPending = new AtomicBoolean();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Writes made while a rebuild scans Elasticsearch, replayed onto the rebuilt graphs
+    private final List<Runnable> writesDuringRebuild = new ArrayList<>();
+    private volatile LocalDateTime lastSnapshotAt;
+    private volatile String lastRebuildError;
+
+    private final AtomicLong localQueries = new AtomicLong();
+    private final AtomicLong fallbackQueries = new AtomicLong();
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vector-store-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public HnswVectorStore(ElasticsearchService elasticsearchService) {
+        this.elasticsearchService = elasticsearchService;
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        Path path = Path.of(snapshotPath);
+        if (!Files.exists(path)) {
+            log.warn("No HNSW snapshot at {}; similarity queries go to Elasticsearch until POST /vector-store/rebuild", path);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version");
+            }
+            long ticketDocs = in.readLong();
+            long tripletDocs = in.readLong();
+            long indexedTicketDocs = elasticsearchService.countEmbeddings();
+            long indexedTripletDocs = elasticsearchService.countTriplets();
+            if (ticketDocs != indexedTicketDocs || tripletDocs != indexedTripletDocs) {
+                log.warn("HNSW snapshot {} holds {} ticket embeddings and {} triplets, Elasticsearch has {} and {}; rebuilding",
+                        path, ticketDocs, tripletDocs, indexedTicketDocs, indexedTripletDocs);
+                startRebuild();
+                return;
+            }
+            tickets = in.readBoolean() ? HnswIndex.load(in, vectorApi) : null;
+            triplets = in.readBoolean() ? HnswIndex.load(in, vectorApi) : null;
+            int payloads = in.readInt();
+            for (int i = 0; i < payloads; i++) {
+                String ticketId = readString(in);
+                tripletPayloads.put(ticketId, new ElasticsearchSimilarInference(readString(in), readString(in), readString(in)));
+            }
+            ready = true;
+            log.info("Loaded HNSW snapshot {} in {} ms: {} ticket embeddings, {} triplets",
+                    path, System.currentTimeMillis() - start, sizeOf(tickets), sizeOf(triplets));
+        } catch (Exception e) {
+            log.error("Could not load HNSW snapshot {}; similarity queries go to Elasticsearch: {}", path, e.getMessage(), e);
+            tickets = null;
+            triplets = null;
+            tripletPayloads.clear();
+        }
+    }
+
+    @PreDestroy
+    public void onDestroy() {
+        rebuildExecutor.shutdownNow();
+        checkpoint();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> indexEmbedding(String ticketId, Embedding embedding) {
+        CompletableFuture<Boolean> written = elasticsearchService.indexEmbedding(ticketId, embedding);
+        whenWritten(written, () -> addTicket(ticketId, embedding));
+        return written;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> indexTicketTripletWithEmbedding(TicketTriplet triplet, Embedding issueEmbedding) {
+        CompletableFuture<Boolean> written = elasticsearchService.indexTicketTripletWithEmbedding(triplet, issueEmbedding);
+        // Not served until the swap, and tripletIndexSwapped() reads the whole index then
+        if (elasticsearchService.isRebuildingTriplets()) {
+            return written;
+        }
+        ElasticsearchSimilarInference payload = new ElasticsearchSimilarInference(triplet.getRca(), triplet.getIssue(), triplet.getSolution());
+        whenWritten(written, () -> addTriplet(triplet.getTicketId(), issueEmbedding, payload));
+        return written;
+    }
+
+    @Override
+    public void deleteTriplets(Collection<String> ticketIds) {
+        elasticsearchService.deleteTriplets(ticketIds);
+        List<String> ids = List.copyOf(ticketIds);
+        applyWrite(() -> ids.forEach(this::removeTriplet));
+    }
+
+    // A rejected or failed write stays out of the graph, which would otherwise serve a document
+    // Elasticsearch does not have
+    private void whenWritten(CompletableFuture<Boolean> written, Runnable write) {
+        written.thenAccept(ok -> {
+            if (Boolean.TRUE.equals(ok)) {
+                applyWrite(write);
+            }
+        });
+    }
+
+    private void applyWrite(Runnable write) {
+        synchronized (writesDuringRebuild) {
+            if (rebuilding.get()) {
+                writesDuringRebuild.add(write);
+            }
+        }
+        write.run();
+        dirty.set(true);
+    }
+
+    @Override
+    public void flush() {
+        elasticsearchService.flushBulk();
+    }
+
+    /**
+     * Snapshot the graphs if anything was written since the last one
+     */
+    @Override
+    public void checkpoint() {
+        // The triplet rebuild after a swap writes the snapshot once the graph matches the new index
+        if (tripletsStale) return;
+        if (!dirty.getAndSet(false)) return;
+        try {
+            saveSnapshot();
+        } catch (IOException e) {
+            dirty.set(true);
+            log.error("Could not write HNSW snapshot {}: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Embedding> getEmbeddingsByTicketIds(Collection<String> ticketIds) {
+        HnswIndex index = tickets;
+        if (!ready || index == null) {
+            return elasticsearchService.getEmbeddingsByTicketIds(ticketIds);
+        }
+        Map<String, Embedding> embeddings = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String ticketId : ticketIds) {
+            Embedding embedding = index.get(ticketId);
+            if (embedding != null) {
+                embeddings.put(ticketId, embedding);
+            } else {
+                missing.add(ticketId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            embeddings.putAll(elasticsearchService.getEmbeddingsByTicketIds(missing));
+        }
+        return embeddings;
+    }
+
+    @Override
+    public Map<String, List<ElasticsearchSimilarTicket>> findKNearestNeighborsBatch(Map<String, Embedding> queries, int k) {
+        HnswIndex index = tickets;
+        if (!ready || index == null) {
+            fallbackQueries.addAndGet(queries.size());
+            return elasticsearchService.findKNearestNeighborsBatch(queries, k);
+        }
+        Map<String, List<ElasticsearchSimilarTicket>> neighbors = new HashMap<>(queries.size() * 2);
+        // A ticket the graph does not hold yet (its write is still in flight) or a vector it cannot
+        // search is answered by Elasticsearch, as getEmbeddingsByTicketIds does for missing ids
+        Map<String, Embedding> missing = new HashMap<>();
+        for (Map.Entry<String, Embedding> query : queries.entrySet()) {
+            String ticketId = query.getKey();
+            Embedding embedding = query.getValue();
+            if (embedding == null || embedding.isEmpty()) {
+                log.warn("Query embedding for ticket {} is null or empty", ticketId);
+                neighbors.put(ticketId, List.of());
+                continue;
+            }
+            if (embedding.dimensions() != index.dimensions() || !index.contains(ticketId)) {
+                missing.put(ticketId, embedding);
+                continue;
+            }
+            neighbors.put(ticketId, index.search(embedding, k + 1, efSearch).stream()
+                    .filter(result -> !result.id().equals(ticketId))
+                    .limit(k)
+                    .map(result -> new ElasticsearchSimilarTicket(result.id(), result.score()))
+                    .toList());
+        }
+        localQueries.addAndGet(queries.size() - missing.size());
+        if (!missing.isEmpty()) {
+            fallbackQueries.addAndGet(missing.size());
+            neighbors.putAll(elasticsearchService.findKNearestNeighborsBatch(missing, k));
+        }
+        return neighbors;
+    }
+
+    @Override
+    public List<ElasticsearchSimilarInference> findSimilarTriplets(Embedding queryEmbedding, int k) {
+        HnswIndex index = triplets;
+        if (!ready || tripletsStale || index == null) {
+            fallbackQueries.incrementAndGet();
+            return elasticsearchService.findSimilarTriplets(queryEmbedding, k);
+        }
+        if (queryEmbedding == null || queryEmbedding.isEmpty()) {
+            log.warn("Query embedding is null or empty");
+            return Collections.emptyList();
+        }
+        localQueries.incrementAndGet();
+        return index.search(queryEmbedding, k, efSearch).stream()
+                .map(result -> tripletPayloads.get(result.id()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // The local graph answers in memory; only the fallback needs to wait on Elasticsearch
+    @Override
+    public CompletableFuture<List<ElasticsearchSimilarInference>> findSimilarTripletsAsync(Embedding queryEmbedding, int k) {
+        if (!ready || tripletsStale || triplets == null) {
+            fallbackQueries.incrementAndGet();
+            return elasticsearchService.findSimilarTripletsAsync(queryEmbedding, k);
+        }
+        return CompletableFuture.completedFuture(findSimilarTriplets(queryEmbedding, k));
+    }
+
+    /**
+     * Rebuild both graphs from a full scan of the Elasticsearch indices, in the background.
+     * Queries keep using the current graphs (or Elasticsearch) until the new ones are complete.
+     *
+     * @return false if a rebuild is already running
+     */
+    public boolean startRebuild() {
+        return startRebuild(true);
+    }
+
+    private boolean startRebuild(boolean includeTickets) {
+        if (!rebuilding.compareAndSet(false, true)) return false;
+        rebuildExecutor.submit(() -> rebuild(includeTickets));
+        return true;
+    }
+
+    /**
+     * Rebuild the triplet graph from the index the alias now points to. Triplet queries go to
+     * Elasticsearch until it is done.
+     */
+    @Override
+    public void tripletIndexSwapped() {
+        if (!ready) return;
+        tripletsStale = true;
+        tripletRebuildPending.set(true);
+        if (startRebuild(false)) {
+            tripletRebuildPending.set(false);
+        }
+        log.info("Triplet alias swapped; rebuilding the triplet graph from the new index");
+    }
+
+    private void rebuild(boolean includeTickets) {
+        long start = System.currentTimeMillis();
+        log.info("Rebuilding HNSW {} from Elasticsearch (M={}, efConstruction={})",
+                includeTickets ? "graphs" : "triplet graph", m, efConstruction);
+        try {
+            HnswIndex[] newTickets = new HnswIndex[]{includeTickets ? null : tickets};
+            long ticketDocs = !includeTickets ? sizeOf(tickets) : elasticsearchService.scanEmbeddings((ticketId, embedding) -> {
+                if (newTickets[0] == null) {
+                    newTickets[0] = newIndex(embedding);
+                }
+                addOrWarn(newTickets[0], ticketId, embedding);
+            });
+
+            HnswIndex[] newTriplets = new HnswIndex[1];
+            Map<String, ElasticsearchSimilarInference> newPayloads = new HashMap<>();
+            long tripletDocs = elasticsearchService.scanTriplets(triplet -> {
+                if (newTriplets[0] == null) {
+                    newTriplets[0] = newIndex(triplet.getIssueEmbedding());
+                }
+                addOrWarn(newTriplets[0], triplet.getTicketId(), triplet.getIssueEmbedding());
+                newPayloads.put(triplet.getTicketId(),
+                        new ElasticsearchSimilarInference(triplet.getRca(), triplet.getIssue(), triplet.getSolution()));
+            });
+
+            synchronized (writesDuringRebuild) {
+                tickets = newTickets[0];
+                triplets = newTriplets[0];
+                tripletPayloads.clear();
+                tripletPayloads.putAll(newPayloads);
+                // Replay after the scan so a write newer than what was scanned wins
+                writesDuringRebuild.forEach(Runnable::run);
+                log.info("Replayed {} writes made during the rebuild", writesDuringRebuild.size());
+                writesDuringRebuild.clear();
+                // Before rebuilding is cleared, so a swap after this point marks the graph stale again
+                if (!tripletRebuildPending.get()) {
+                    tripletsStale = false;
+                }
+                rebuilding.set(false);
+            }
+            if (includeTickets) {
+                ready = true;
+            }
+            lastRebuildError = null;
+            perfLog.info("Rebuilt HNSW graphs in {} ms: {} ticket embeddings, {} triplets",
+                    System.currentTimeMillis() - start, ticketDocs, tripletDocs);
+
+            dirty.set(true);
+            checkpoint();
+        } catch (Exception e) {
+            log.error("HNSW rebuild failed: {}", e.getMessage(), e);
+            lastRebuildError = e.toString();
+            synchronized (writesDuringRebuild) {
+                writesDuringRebuild.clear();
+                rebuilding.set(false);
+            }
+        }
+        // The alias moved while this rebuild was scanning; read the new index
+        if (tripletRebuildPending.getAndSet(false)) {
+            startRebuild(false);
+        }
+    }
+
+    private void addTicket(String ticketId, Embedding embedding) {
+        if (embedding == null || embedding.isEmpty()) return;
+        if (tickets == null) {
+            synchronized (this) {
+                if (tickets == null) tickets = newIndex(embedding);
+            }
+        }
+        addOrWarn(tickets, ticketId, embedding);
+    }
+
+    private void addTriplet(String ticketId, Embedding embedding, ElasticsearchSimilarInference payload) {
+        if (embedding == null || embedding.isEmpty()) return;
+        if (triplets == null) {
+            synchronized (this) {
+                if (triplets == null) triplets = newIndex(embedding);
+            }
+        }
+        tripletPayloads.put(ticketId, payload);
+        addOrWarn(triplets, ticketId, embedding);
+    }
+
+    private void removeTriplet(String ticketId) {
+        tripletPayloads.remove(ticketId);
+        HnswIndex index = triplets;
+        if (index != null) {
+            index.remove(ticketId);
+        }
+    }
+
+    private HnswIndex newIndex(Embedding first) {
+        return new HnswIndex(first.dimensions(), m, efConstruction, vectorApi);
+    }
+
+    private void addOrWarn(HnswIndex index, String id, Embedding embedding) {
+        try {
+            index.add(id, embedding);
+        } catch (IllegalArgumentException e) {
+            log.warn("Not adding {} to the HNSW graph: {}", id, e.getMessage());
+        }
+    }
+
+    private void saveSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        Path path = Path.of(snapshotPath);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_VERSION);
+            HnswIndex ticketIndex = tickets;
+            HnswIndex tripletIndex = triplets;
+            // Compared with the Elasticsearch counts on load
+            out.writeLong(sizeOf(ticketIndex));
+            out.writeLong(sizeOf(tripletIndex));
+            out.writeBoolean(ticketIndex != null);
+            if (ticketIndex != null) ticketIndex.save(out);
+            out.writeBoolean(tripletIndex != null);
+            if (tripletIndex != null) tripletIndex.save(out);
+
+            Map<String, ElasticsearchSimilarInference> payloads = new HashMap<>(tripletPayloads);
+            out.writeInt(payloads.size());
+            for (Map.Entry<String, ElasticsearchSimilarInference> entry : payloads.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue().getRca());
+                writeString(out, entry.getValue().getIssue());
+                writeString(out, entry.getValue().getSolution());
+            }
+        }
+        // Readers of the snapshot never see a half-written file
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSnapshotAt = LocalDateTime.now();
+        perfLog.info("Wrote HNSW snapshot {} in {} ms ({} bytes)", path, System.currentTimeMillis() - start, Files.size(path));
+    }
+
+    // writeUTF is capped at 64 KB, which a long RCA could exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(HnswIndex index) {
+        return index == null ? 0 : index.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "hnsw");
+        stats.put("ready", ready);
+        stats.put("tripletsStale", tripletsStale);
+        stats.put("rebuilding", rebuilding.get());
+        stats.put("efSearch", efSearch);
+        stats.put("localQueries", localQueries.get());
+        stats.put("fallbackQueries", fallbackQueries.get());
+        stats.put("snapshotPath", snapshotPath);
+        stats.put("lastSnapshotAt", lastSnapshotAt == null ? null : lastSnapshotAt.toString());
+        stats.put("lastRebuildError", lastRebuildError);
+        HnswIndex ticketIndex = tickets;
+        stats.put("tickets", ticketIndex == null ? Map.of() : ticketIndex.stats());
+        HnswIndex tripletIndex = triplets;
+        stats.put("triplets", tripletIndex == null ? Map.of() : tripletIndex.stats());
+        return stats;
+    }
+}
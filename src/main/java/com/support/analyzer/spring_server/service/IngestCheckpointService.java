@@ -0,0 +1,151 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.entity.IngestCheckpoint;
+import com.support.analyzer.spring_server.entity.IngestRun;
+import com.support.analyzer.spring_server.repository.IngestRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Run registry and per-batch checkpoint journal for the ingest. Every batch that finishes a
+ * stage appends one {@link IngestCheckpoint}; a run that did not complete is picked up again by
+ * the next ingest call, which uses the journal to skip work that is already done.
+ */
+@Service
+public class IngestCheckpointService {
+    private static final Logger log = LoggerFactory.getLogger(IngestCheckpointService.class);
+    private static final int CHECKPOINT_CHUNK_SIZE = 1000;
+
+    private final IngestRunRepository ingestRunRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public IngestCheckpointService(IngestRunRepository ingestRunRepository, MongoTemplate mongoTemplate) {
+        this.ingestRunRepository = ingestRunRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Resume the most recent run that did not complete, or register a new one.
+     */
+    public IngestRun startOrResume(String mode) {
+        mongoTemplate.indexOps(IngestCheckpoint.class)
+                .createIndex(new Index().on("runId", Sort.Direction.ASC).on("stage", Sort.Direction.ASC).named("runId_1_stage_1"));
+
+        Optional<IngestRun> unfinished = ingestRunRepository.findFirstByStatusInOrderByStartedAtDesc(
+                List.of(IngestRun.Status.RUNNING, IngestRun.Status.FAILED));
+
+        if (unfinished.isPresent()) {
+            IngestRun run = unfinished.get();
+            if (!run.getMode().equals(mode)) {
+                log.warn("Requested a {} ingest but run {} ({}) is unfinished; resuming it first", mode, run.getRunId(), run.getMode());
+            }
+            log.info("Resuming ingest run {} from {} (attempt {})", run.getRunId(), run.getPhase(), run.getResumeCount() + 2);
+            run.setStatus(IngestRun.Status.RUNNING);
+            run.setResumeCount(run.getResumeCount() + 1);
+            run.setLastError(null);
+            return save(run);
+        }
+
+        IngestRun run = new IngestRun();
+        run.setRunId(UUID.randomUUID().toString());
+        run.setMode(mode);
+        run.setStatus(IngestRun.Status.RUNNING);
+        run.setPhase(IngestRun.Phase.PHASE1);
+        run.setStartedAt(LocalDateTime.now());
+        log.info("Starting new ingest run {} ({})", run.getRunId(), mode);
+        return save(run);
+    }
+
+    public IngestRun save(IngestRun run) {
+        run.setUpdatedAt(LocalDateTime.now());
+        return ingestRunRepository.save(run);
+    }
+
+    public void advancePhase(IngestRun run, IngestRun.Phase phase) {
+        run.setPhase(phase);
+        save(run);
+        log.info("Ingest run {} entered {}", run.getRunId(), phase);
+    }
+
+    /**
+     * Mark the run complete and drop its journal; nothing will ever resume from it again.
+     */
+    public void complete(IngestRun run) {
+        run.setPhase(IngestRun.Phase.DONE);
+        run.setStatus(IngestRun.Status.COMPLETED);
+        run.setFinishedAt(LocalDateTime.now());
+        save(run);
+        mongoTemplate.remove(new Query(Criteria.where("runId").is(run.getRunId())), IngestCheckpoint.class);
+        log.info("Ingest run {} completed", run.getRunId());
+    }
+
+    /**
+     * Mark the run cancelled and drop its journal. The watermark is not advanced, so a later
+     * delta run picks the unprocessed tickets up again.
+     */
+    public void cancel(IngestRun run) {
+        try {
+            run.setStatus(IngestRun.Status.CANCELLED);
+            run.setFinishedAt(LocalDateTime.now());
+            save(run);
+            mongoTemplate.remove(new Query(Criteria.where("runId").is(run.getRunId())), IngestCheckpoint.class);
+            log.info("Ingest run {} cancelled in {}", run.getRunId(), run.getPhase());
+        } catch (Exception e) {
+            log.error("Could not mark ingest run {} as cancelled: {}", run.getRunId(), e.getMessage());
+        }
+    }
+
+    public void fail(IngestRun run, Exception e) {
+        try {
+            run.setStatus(IngestRun.Status.FAILED);
+            run.setLastError(e.toString());
+            save(run);
+        } catch (Exception ex) {
+            log.error("Could not mark ingest run {} as failed: {}", run.getRunId(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Append the given tickets to the journal for a stage. Never throws: losing a checkpoint only
+     * means the work is repeated after a restart.
+     */
+    public void record(String runId, IngestCheckpoint.Stage stage, Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return;
+        try {
+            List<String> ids = new ArrayList<>(ticketIds);
+            List<IngestCheckpoint> entries = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += CHECKPOINT_CHUNK_SIZE) {
+                entries.add(new IngestCheckpoint(runId, stage,
+                        new ArrayList<>(ids.subList(i, Math.min(i + CHECKPOINT_CHUNK_SIZE, ids.size())))));
+            }
+            mongoTemplate.insertAll(entries);
+        } catch (Exception e) {
+            log.error("Failed to record {} checkpoint for {} tickets in run {}: {}", stage, ticketIds.size(), runId, e.getMessage());
+        }
+    }
+
+    /**
+     * All ticket ids that finished the given stage in this run, in journal order.
+     */
+    public LinkedHashSet<String> completed(String runId, IngestCheckpoint.Stage stage) {
+        LinkedHashSet<String> ticketIds = new LinkedHashSet<>();
+        Query query = new Query(Criteria.where("runId").is(runId).and("stage").is(stage))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        try (Stream<IngestCheckpoint> entries = mongoTemplate.stream(query, IngestCheckpoint.class)) {
+            entries.forEach(entry -> ticketIds.addAll(entry.getTicketIds()));
+        }
+        return ticketIds;
+    }
+}
@@ -0,0 +1,174 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.util.AdaptiveBatchSizer;
+import com.support.analyzer.spring_server.util.PipelineStage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live state of one asynchronous ingest run: phase, per-phase counters, throughput and the
+ * cancellation flag that every phase polls. The job id is the ingest run id.
+ */
+public class IngestJob {
+    public enum State { RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    private final String jobId;
+    private final String mode;
+    private final Instant startedAt = Instant.now();
+    private final AtomicBoolean cancelRequested = new AtomicBoolean(false);
+
+    private volatile State state = State.RUNNING;
+    private volatile String phase = "PHASE1";
+    private volatile Instant phaseStartedAt = startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    // Phase 1
+    private volatile long totalTickets = -1;
+    private final AtomicLong sourcedTickets = new AtomicLong();
+    private final AtomicLong skippedTickets = new AtomicLong();
+    private final AtomicLong indexedTickets = new AtomicLong();
+    private volatile List<PipelineStage<?, ?>> stages = List.of();
+    private volatile List<AdaptiveBatchSizer> batchSizers = List.of();
+
+    // Phase 2
+    private volatile long clusteringTotal;
+    private final AtomicLong clusteringProcessed = new AtomicLong();
+    private volatile Map<String, Object> clusteringMetrics;
+    private volatile Map<String, Object> representativeBudget;
+
+    // Phase 3
+    private volatile long representativesTotal;
+    private final AtomicLong representativesProcessed = new AtomicLong();
+
+    public IngestJob(String jobId, String mode) {
+        this.jobId = jobId;
+        this.mode = mode;
+    }
+
+    public void enterPhase(String phase) {
+        this.phase = phase;
+        this.phaseStartedAt = Instant.now();
+    }
+
+    public void finish(State state, String error) {
+        this.state = state;
+        this.error = error;
+        this.finishedAt = Instant.now();
+    }
+
+    public boolean requestCancel() {
+        return state == State.RUNNING && cancelRequested.compareAndSet(false, true);
+    }
+
+    public boolean isCancelled() {
+        return cancelRequested.get();
+    }
+
+    public boolean isFinished() {
+        return state != State.RUNNING;
+    }
+
+    public void setTotalTickets(long totalTickets) { this.totalTickets = totalTickets; }
+    public void ticketSourced() { sourcedTickets.incrementAndGet(); }
+    public void ticketSkipped() { skippedTickets.incrementAndGet(); }
+    public void ticketsIndexed(int count) { indexedTickets.addAndGet(count); }
+    public void setStages(List<PipelineStage<?, ?>> stages) { this.stages = List.copyOf(stages); }
+    public void setBatchSizers(List<AdaptiveBatchSizer> batchSizers) { this.batchSizers = List.copyOf(batchSizers); }
+
+    public void setClusteringTotal(long clusteringTotal) { this.clusteringTotal = clusteringTotal; }
+    public void ticketsClustered(int count) { clusteringProcessed.addAndGet(count); }
+    public void setClusteringMetrics(Map<String, Object> clusteringMetrics) { this.clusteringMetrics = Map.copyOf(clusteringMetrics); }
+    public void setRepresentativeBudget(Map<String, Object> representativeBudget) { this.representativeBudget = Map.copyOf(representativeBudget); }
+
+    public void setRepresentativesTotal(long representativesTotal) { this.representativesTotal = representativesTotal; }
+    public void representativesProcessed(int count) { representativesProcessed.addAndGet(count); }
+
+    public String getJobId() { return jobId; }
+    public String getMode() { return mode; }
+    public State getState() { return state; }
+    public String getPhase() { return phase; }
+
+    /**
+     * Snapshot for the job status endpoint
+     */
+    public Map<String, Object> toStatusMap() {
+        Instant now = finishedAt != null ? finishedAt : Instant.now();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", jobId);
+        status.put("mode", mode);
+        status.put("state", state);
+        status.put("cancelRequested", cancelRequested.get());
+        status.put("phase", phase);
+        status.put("startedAt", startedAt.toString());
+        status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        status.put("elapsedMs", Duration.between(startedAt, now).toMillis());
+        if (error != null) {
+            status.put("error", error);
+        }
+
+        long indexed = indexedTickets.get();
+
+        Map<String, Object> phase1 = new LinkedHashMap<>();
+        phase1.put("totalTickets", totalTickets);
+        phase1.put("sourcedTickets", sourcedTickets.get());
+        phase1.put("skippedTickets", skippedTickets.get());
+        phase1.put("indexedTickets", indexed + skippedTickets.get());
+        status.put("phase1", phase1);
+
+        Map<String, Object> phase2 = new LinkedHashMap<>();
+        phase2.put("ticketsToCluster", clusteringTotal);
+        phase2.put("ticketsClustered", clusteringProcessed.get());
+        if (clusteringMetrics != null) {
+            phase2.put("neighborSearch", clusteringMetrics);
+        }
+        if (representativeBudget != null) {
+            phase2.put("representatives", representativeBudget);
+        }
+        status.put("phase2", phase2);
+
+        Map<String, Object> phase3 = new LinkedHashMap<>();
+        phase3.put("representatives", representativesTotal);
+        phase3.put("representativesProcessed", representativesProcessed.get());
+        status.put("phase3", phase3);
+
+        List<Map<String, Object>> stageStats = new ArrayList<>();
+        for (PipelineStage<?, ?> stage : stages) {
+            Map<String, Object> stageStat = new LinkedHashMap<>();
+            stageStat.put("stage", stage.getName());
+            stageStat.put("workers", stage.getConcurrency());
+            stageStat.put("batchSize", stage.getCurrentBatchSize());
+            stageStat.put("queued", stage.getQueuedItems());
+            stageStat.put("itemsIn", stage.getItemsIn());
+            stageStat.put("itemsOut", stage.getItemsOut());
+            stageStat.put("batches", stage.getBatches());
+            stageStat.put("failedBatches", stage.getFailedBatches());
+            stageStat.put("averageBatchLatencyMs", stage.getAverageBatchLatencyMs());
+            stageStats.add(stageStat);
+        }
+        status.put("stages", stageStats);
+        status.put("batchSizing", batchSizers.stream().map(AdaptiveBatchSizer::toMap).toList());
+
+        // Throughput and ETA of the current phase
+        double phaseSeconds = Math.max(0.001, Duration.between(phaseStartedAt, now).toMillis() / 1000.0);
+        long done;
+        long total;
+        switch (phase) {
+            case "PHASE1" -> { done = indexed; total = totalTickets < 0 ? -1 : totalTickets - skippedTickets.get(); }
+            case "PHASE2" -> { done = clusteringProcessed.get(); total = clusteringTotal; }
+            case "PHASE3" -> { done = representativesProcessed.get(); total = representativesTotal; }
+            default -> { done = 0; total = 0; }
+        }
+        double perSecond = done / phaseSeconds;
+        status.put("phaseItemsPerSecond", Math.round(perSecond * 100) / 100.0);
+        status.put("phaseEtaSeconds", state != State.RUNNING || total < 0 || perSecond <= 0
+                ? null
+                : Math.round(Math.max(0, total - done) / perSecond));
+
+        return status;
+    }
+}
@@ -0,0 +1,125 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.entity.IngestRun;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs ingests in the background, one at a time, and keeps the state of recent jobs for the
+ * status endpoint.
+ */
+@Service
+public class IngestJobService {
+    private static final Logger log = LoggerFactory.getLogger(IngestJobService.class);
+    private static final int MAX_RECENT_JOBS = 20;
+
+    private final SupportTicketIngestService ingestService;
+    private final IngestCheckpointService checkpointService;
+    private final BatchSizeController batchSizeController;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingest-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, IngestJob> recentJobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IngestJob> eldest) {
+            return size() > MAX_RECENT_JOBS && eldest.getValue().isFinished();
+        }
+    };
+
+    private IngestJob currentJob;
+
+    @Autowired
+    public IngestJobService(SupportTicketIngestService ingestService,
+                            IngestCheckpointService checkpointService,
+                            BatchSizeController batchSizeController) {
+        this.ingestService = ingestService;
+        this.checkpointService = checkpointService;
+        this.batchSizeController = batchSizeController;
+    }
+
+    /**
+     * Register (or resume) a run and start it in the background.
+     *
+     * @return the new job, or empty if another ingest is still running
+     */
+    public synchronized Optional<IngestJob> submit(SupportTicketIngestService.IngestMode mode) {
+        if (currentJob != null && !currentJob.isFinished()) {
+            log.warn("Rejected {} ingest: job {} is still running", mode, currentJob.getJobId());
+            return Optional.empty();
+        }
+
+        IngestRun run = checkpointService.startOrResume(mode.name());
+        IngestJob job = new IngestJob(run.getRunId(), run.getMode());
+        job.setBatchSizers(batchSizeController.getSizers());
+        currentJob = job;
+        recentJobs.put(job.getJobId(), job);
+
+        jobExecutor.submit(() -> execute(run, job));
+        log.info("Submitted ingest job {} ({})", job.getJobId(), job.getMode());
+        return Optional.of(job);
+    }
+
+    private void execute(IngestRun run, IngestJob job) {
+        try {
+            ingestService.processRun(run, job);
+            job.finish(IngestJob.State.COMPLETED, null);
+            log.info("Ingest job {} completed", job.getJobId());
+        } catch (CancellationException e) {
+            job.finish(IngestJob.State.CANCELLED, null);
+            log.info("Ingest job {} cancelled", job.getJobId());
+        } catch (Exception e) {
+            job.finish(IngestJob.State.FAILED, e.toString());
+            log.error("Ingest job {} failed: {}", job.getJobId(), e.getMessage(), e);
+        }
+    }
+
+    public synchronized Optional<IngestJob> get(String jobId) {
+        return Optional.ofNullable(recentJobs.get(jobId));
+    }
+
+    /**
+     * Ask a running job to stop. It finishes its in-flight batches, flushes buffered writes and
+     * then ends in state CANCELLED.
+     *
+     * @return false if the job has already finished
+     */
+    public synchronized boolean cancel(IngestJob job) {
+        boolean requested = job.requestCancel() || (job.isCancelled() && !job.isFinished());
+        if (requested) {
+            log.info("Cancellation requested for ingest job {} in {}", job.getJobId(), job.getPhase());
+        }
+        return requested;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            if (currentJob != null && !currentJob.isFinished()) {
+                log.info("Shutting down: cancelling ingest job {}", currentJob.getJobId());
+                currentJob.requestCancel();
+            }
+        }
+        jobExecutor.shutdown();
+        try {
+            if (!jobExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                jobExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            jobExecutor.shutdownNow();
+        }
+    }
+}
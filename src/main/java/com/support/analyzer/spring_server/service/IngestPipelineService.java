@@ -0,0 +1,645 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
+import com.support.analyzer.spring_server.dto.*;
+import com.support.analyzer.spring_server.entity.IngestCheckpoint;
+import com.support.analyzer.spring_server.entity.IngestRun;
+import com.support.analyzer.spring_server.entity.SummarizedTicket;
+import com.support.analyzer.spring_server.entity.SupportTicket;
+import com.support.analyzer.spring_server.util.ContentDeduplicator;
+import com.support.analyzer.spring_server.util.PerfStats;
+import com.support.analyzer.spring_server.util.PipelineStage;
+import com.support.analyzer.spring_server.util.RunStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Phase 1 of the ingest: masking -> summarization -> embedding -> indexing, each stage with its
+ * own workers and batch size, connected by bounded queues. The Flask masking endpoint, the LLM
+ * router and the Flask embedding endpoint are kept busy concurrently, and the slowest stage
+ * throttles everything upstream of it (including the Mongo cursor).
+ *
+ * Every stage journals the tickets it finished through {@link IngestCheckpointService}. When a run
+ * is resumed, tickets already indexed are skipped outright and tickets already summarized are
+ * reloaded from summarized_tickets instead of going back through masking and the LLM. Masked text
+ * and embeddings are not persisted, so those two stages are simply repeated when needed.
+ *
+ * Tickets with identical (normalized) messages are deduplicated at the source: only the first
+ * ticket per content fingerprint is masked, summarized and embedded, and its summary and
+ * embedding are fanned out to the duplicates, which go straight to indexing.
+ *
+ * The run also works out how far the delta watermark may advance: up to the newest updatedAt
+ * among the tickets indexed, but never past a ticket that was read and then dropped by a stage,
+ * so the next delta run reads the dropped tickets again.
+ */
+@Service
+public class IngestPipelineService {
+    private static final Logger log = LoggerFactory.getLogger(IngestPipelineService.class);
+    private static final Logger perfLog = LoggerFactory.getLogger("PERF_SUMMARY");
+
+    private final MongoService mongoService;
+    private final MaskingService maskingService;
+    private final OpenAIService openAIService;
+    private final EmbeddingService embeddingService;
+    private final VectorStore vectorStore;
+    private final IngestCheckpointService checkpointService;
+    private final IngestExecutorFactory executorFactory;
+    private final BatchSizeController batchSizeController;
+
+    @Value("${ingest.pipeline.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${ingest.pipeline.maxLingerMs}")
+    private long maxLingerMs;
+
+    @Value("${ingest.stage.masking.concurrency}")
+    private int maskingConcurrency;
+
+    @Value("${ingest.stage.summarization.concurrency}")
+    private int summarizationConcurrency;
+
+    @Value("${ingest.stage.embedding.concurrency}")
+    private int embeddingConcurrency;
+
+    @Value("${ingest.stage.indexing.concurrency}")
+    private int indexingConcurrency;
+
+    @Value("${ingest.stage.indexing.batchSize}")
+    private int indexingBatchSize;
+
+    @Value("${ingest.dedup.enabled}")
+    private boolean dedupEnabled;
+
+    @Value("${ingest.dedup.resultCacheSize}")
+    private int dedupResultCacheSize;
+
+    @Autowired
+    public IngestPipelineService(MongoService mongoService,
+                                 MaskingService maskingService,
+                                 OpenAIService openAIService,
+                                 EmbeddingService embeddingService,
+                                 VectorStore vectorStore,
+                                 IngestCheckpointService checkpointService,
+                                 IngestExecutorFactory executorFactory,
+                                 BatchSizeController batchSizeController) {
+        this.mongoService = mongoService;
+        this.maskingService = maskingService;
+        this.openAIService = openAIService;
+        this.embeddingService = embeddingService;
+        this.vectorStore = vectorStore;
+        this.checkpointService = checkpointService;
+        this.executorFactory = executorFactory;
+        this.batchSizeController = batchSizeController;
+    }
+
+    /**
+     * Push every ticket from the source through the pipeline and block until all stages drain,
+     * or until the job is cancelled, in which case the stages stop and queued tickets are dropped.
+     *
+     * @param summaryStore receives the summary of every ticket indexed, for Phase 3
+     * @param embeddingStore receives the embedding of every ticket indexed, for Phase 2
+     * @return ids of the tickets indexed in Elasticsearch, including those indexed by an earlier attempt
+     *         of the run, and the watermark those tickets justify
+     * @throws IllegalStateException if reading the tickets failed part way, since the tickets never
+     *         read make the watermark unsafe; everything indexed so far is checkpointed
+     */
+    public Result run(Iterator<SupportTicket> tickets, IngestRun run, IngestJob job,
+                            RunStore<String> summaryStore, RunStore<Embedding> embeddingStore) {
+        RunState state = new RunState(run.getRunId(), job, summaryStore, embeddingStore,
+                dedupEnabled ? new ContentDeduplicator<>(dedupResultCacheSize) : null);
+        Set<String> indexedBefore = Set.of();
+        Set<String> summarizedBefore = Set.of();
+        if (run.getResumeCount() > 0) {
+            indexedBefore = checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.INDEXED);
+            summarizedBefore = checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.SUMMARIZED);
+            log.info("Resuming Phase 1 of run {}: {} tickets already indexed, {} already summarized",
+                    run.getRunId(), indexedBefore.size(), summarizedBefore.size());
+        }
+
+        BlockingQueue<TicketWork> maskQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TicketWork> summarizeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TicketWork> embedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<TicketWork> indexQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        AtomicBoolean sourceDone = new AtomicBoolean(false);
+
+        PipelineStage<TicketWork, TicketWork> masking = new PipelineStage<>(
+                "masking", maskQueue, summarizeQueue, maskingConcurrency,
+                batchSizeController.sizer(BatchSizeController.MASKING)::getBatchSize, maxLingerMs, releasingDropped(batch -> maskBatch(batch, state), state), sourceDone::get, job::isCancelled);
+        PipelineStage<TicketWork, TicketWork> summarization = new PipelineStage<>(
+                "summarization", summarizeQueue, embedQueue, summarizationConcurrency,
+                batchSizeController.sizer(BatchSizeController.SUMMARIZATION)::getBatchSize, maxLingerMs, releasingDropped(batch -> summarizeBatch(batch, state), state), masking::isDone, job::isCancelled);
+        PipelineStage<TicketWork, TicketWork> embedding = new PipelineStage<>(
+                "embedding", embedQueue, indexQueue, embeddingConcurrency,
+                batchSizeController.sizer(BatchSizeController.EMBEDDING)::getBatchSize, maxLingerMs, releasingDropped(batch -> embedBatch(batch, state), state), summarization::isDone, job::isCancelled);
+        PipelineStage<TicketWork, TicketWork> indexing = new PipelineStage<>(
+                "indexing", indexQueue, null, indexingConcurrency,
+                () -> indexingBatchSize, maxLingerMs, batch -> indexBatch(batch, state), embedding::isDone, job::isCancelled);
+
+        List<PipelineStage<TicketWork, TicketWork>> stages = List.of(masking, summarization, embedding, indexing);
+        job.setStages(List.copyOf(stages));
+        int workerCount = stages.stream().mapToInt(PipelineStage::getConcurrency).sum();
+        ExecutorService stageExecutor = executorFactory.newExecutor("ingest-stage", workerCount);
+        stages.forEach(stage -> stage.start(stageExecutor));
+
+        int sourcedTickets = 0;
+        int skippedTickets = 0;
+        Exception readFailure = null;
+        try {
+            while (!job.isCancelled() && tickets.hasNext()) {
+                SupportTicket ticket = tickets.next();
+                sourcedTickets++;
+                job.ticketSourced();
+                if (indexedBefore.contains(ticket.getTicketId())) {
+                    state.indexedTicketIds.add(ticket.getTicketId());
+                    state.advanceWatermark(ticket.getUpdatedAt());
+                    skippedTickets++;
+                    job.ticketSkipped();
+                    continue;
+                }
+                TicketWork work = new TicketWork(ticket.getTicketId(), ticket.getMessages().stream()
+                        .map(msg -> msg.get_source().getMessage())
+                        .collect(Collectors.toList()));
+                work.summarizedBefore = summarizedBefore.contains(ticket.getTicketId());
+                work.updatedAt = ticket.getUpdatedAt();
+                if (work.updatedAt != null) {
+                    state.unindexed.put(work.ticketId, work.updatedAt);
+                }
+
+                if (state.dedup != null) {
+                    work.fingerprint = ContentDeduplicator.fingerprint(work.messages);
+                    ContentDeduplicator.Admission<DedupResult> admission = state.dedup.admit(work.fingerprint, work);
+                    if (admission.outcome() == ContentDeduplicator.Outcome.ATTACHED) {
+                        continue; // fanned out when its canonical is embedded
+                    }
+                    if (admission.outcome() == ContentDeduplicator.Outcome.RESOLVED) {
+                        work.copyResult(admission.result().summary(), admission.result().embedding());
+                        enqueue(indexQueue, work, job);
+                        continue;
+                    }
+                }
+                enqueue(maskQueue, work, job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while feeding the ingest pipeline after {} tickets", sourcedTickets);
+        } catch (Exception e) {
+            log.error("Reading tickets failed after {} tickets: {}", sourcedTickets, e.getMessage(), e);
+            readFailure = e;
+        } finally {
+            sourceDone.set(true);
+            stageExecutor.shutdown();
+            try {
+                stageExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stageExecutor.shutdownNow();
+            }
+        }
+
+        if (job.isCancelled()) {
+            log.warn("Pipeline cancelled after {} tickets read, {} indexed", sourcedTickets, state.indexedTicketIds.size());
+        }
+        log.info("Pipeline finished: {} tickets read, {} skipped as already indexed, {} indexed in total",
+                sourcedTickets, skippedTickets, state.indexedTicketIds.size());
+        perfLog.info("=== PHASE 1 PIPELINE STAGES ===");
+        stages.forEach(stage -> perfLog.info(stage.toString()));
+        batchSizeController.getSizers().forEach(sizer -> perfLog.info(sizer.toString()));
+        if (state.dedup != null) {
+            logDedupSummary(state.dedup);
+        }
+        if (readFailure != null) {
+            throw new IllegalStateException("Reading tickets failed after " + sourcedTickets + " tickets", readFailure);
+        }
+
+        return new Result(state.indexedTicketIds, state.watermark());
+    }
+
+    private List<TicketWork> maskBatch(List<TicketWork> batch, RunState state) {
+        PerfStats batchStats = new PerfStats();
+
+        List<TicketWork> ready = restoreSummaries(batch);
+        List<TicketWork> toMask = batch.stream()
+                .filter(work -> work.summary == null)
+                .collect(Collectors.toList());
+        if (toMask.isEmpty()) {
+            return ready;
+        }
+
+        List<MaskBatchRequest.MaskItem> maskItems = toMask.stream()
+                .map(work -> new MaskBatchRequest.MaskItem(work.ticketId, work.messages))
+                .collect(Collectors.toList());
+
+        log.info("Masking {} tickets", maskItems.size());
+
+        batchStats.markOperationStart("maskingService_batch");
+        List<FlaskMaskedResponseItem> maskedResults = maskingService.getMaskedMessagesBatch(maskItems);
+        batchStats.markOperationEnd("maskingService_batch");
+
+        // VALIDATION: Check if masking results are available
+        if (maskedResults == null || maskedResults.isEmpty()) {
+            log.error("Masking service returned null or empty results for batch. Skipping batch processing.");
+            batchSizeController.record(BatchSizeController.MASKING, toMask.size(), batchStats, "maskingService_batch", toMask.size(), 0);
+            return ready;
+        }
+
+        Map<String, TicketWork> byId = indexById(toMask);
+        List<TicketWork> masked = new ArrayList<>();
+        for (FlaskMaskedResponseItem item : maskedResults) {
+            TicketWork work = byId.get(item.getTicketId());
+            List<String> maskedMessages = item.getMaskedMessages();
+            if (work == null || maskedMessages == null || maskedMessages.isEmpty()) {
+                log.warn("Skipping ticket {} - no masked messages available", item.getTicketId());
+                continue;
+            }
+            work.maskedContent = String.join("\n", maskedMessages);
+            work.messages = null;
+            masked.add(work);
+        }
+
+        log.info("Masked {} tickets", masked.size());
+        batchSizeController.record(BatchSizeController.MASKING, toMask.size(), batchStats, "maskingService_batch",
+                toMask.size() - masked.size(), 0);
+        checkpointService.record(state.runId, IngestCheckpoint.Stage.MASKED, ticketIds(masked));
+        logBatchStats("masking", toMask.size(), batchStats);
+
+        ready.addAll(masked);
+        return ready;
+    }
+
+    /**
+     * Reload the summaries of tickets summarized by an earlier attempt of this run. Tickets whose
+     * summary never made it to Mongo are left without one and go through the full pipeline.
+     */
+    private List<TicketWork> restoreSummaries(List<TicketWork> batch) {
+        Map<String, TicketWork> candidates = indexById(batch.stream()
+                .filter(work -> work.summarizedBefore)
+                .collect(Collectors.toList()));
+        List<TicketWork> restored = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return restored;
+        }
+
+        for (SummarizedTicket summarized : mongoService.getSummarizedTicketsByIds(candidates.keySet())) {
+            TicketWork work = candidates.get(summarized.getTicketId());
+            if (work != null && summarized.getSummary() != null && !summarized.getSummary().isBlank()) {
+                work.summary = summarized.getSummary();
+                work.messages = null;
+                restored.add(work);
+            }
+        }
+        log.info("Restored {} of {} checkpointed summaries", restored.size(), candidates.size());
+        return restored;
+    }
+
+    private List<TicketWork> summarizeBatch(List<TicketWork> batch, RunState state) {
+        PerfStats batchStats = new PerfStats();
+
+        // Summaries restored from a checkpoint skip the LLM
+        List<TicketWork> summarized = batch.stream()
+                .filter(work -> work.summary != null)
+                .collect(Collectors.toList());
+        List<TicketWork> pending = batch.stream()
+                .filter(work -> work.summary == null)
+                .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return summarized;
+        }
+
+        List<SummarizationRequest> summarizationRequests = pending.stream()
+                .map(work -> new SummarizationRequest(work.ticketId, work.maskedContent))
+                .collect(Collectors.toList());
+
+        log.info("Sending {} tickets for batch summarization", summarizationRequests.size());
+
+        batchStats.markOperationStart("openAIService_batchSummarize");
+        List<SummarizationResponse> summaryResponses = openAIService.summarizeMessagesBatch(summarizationRequests);
+        batchStats.markOperationEnd("openAIService_batchSummarize");
+
+        if (summaryResponses == null || summaryResponses.isEmpty()) {
+            log.error("Summarization returned no responses for batch. Skipping {} tickets.", pending.size());
+            batchSizeController.record(BatchSizeController.SUMMARIZATION, pending.size(), batchStats, "openAIService_batchSummarize",
+                    pending.size(), openAIService.getSummaryBatchRateLimits());
+            return summarized;
+        }
+
+        Map<String, TicketWork> byId = indexById(pending);
+        List<TicketWork> generated = new ArrayList<>();
+        List<SummarizedTicket> toSave = new ArrayList<>();
+
+        for (SummarizationResponse response : summaryResponses) {
+            TicketWork work = byId.get(response.getTicketId());
+            if (work != null && response.isSuccess() && response.getSummary() != null && !response.getSummary().isBlank()) {
+                toSave.add(new SummarizedTicket(response.getTicketId(), response.getSummary()));
+                work.summary = response.getSummary();
+                work.maskedContent = null;
+                generated.add(work);
+            } else {
+                log.warn("Failed to summarize ticket {}: {}", response.getTicketId(), response.getErrorMessage());
+            }
+        }
+        // Summaries must be durable before the checkpoint claims them, so this batch writes its own
+        // rather than going through the shared buffer, and only what was written moves on
+        batchStats.markOperationStart("mongoService_addSummarize");
+        Set<String> saved = mongoService.upsertSummarizedTickets(toSave);
+        batchStats.markOperationEnd("mongoService_addSummarize");
+        List<TicketWork> newlySummarized = generated.stream()
+                .filter(work -> saved.contains(work.ticketId))
+                .collect(Collectors.toList());
+        if (newlySummarized.size() < generated.size()) {
+            log.warn("{} of {} summaries could not be saved and are dropped", generated.size() - newlySummarized.size(), generated.size());
+        }
+
+        batchSizeController.record(BatchSizeController.SUMMARIZATION, pending.size(), batchStats, "openAIService_batchSummarize",
+                pending.size() - newlySummarized.size(), openAIService.getSummaryBatchRateLimits());
+        checkpointService.record(state.runId, IngestCheckpoint.Stage.SUMMARIZED, ticketIds(newlySummarized));
+        log.info("Successfully processed {} out of {} summaries", newlySummarized.size(), summarizationRequests.size());
+        logBatchStats("summarization", pending.size(), batchStats);
+
+        summarized.addAll(newlySummarized);
+        return summarized;
+    }
+
+    private List<TicketWork> embedBatch(List<TicketWork> batch, RunState state) {
+        PerfStats batchStats = new PerfStats();
+
+        List<EmbedBatchRequest.EmbedItem> embedItems = batch.stream()
+                .map(work -> new EmbedBatchRequest.EmbedItem(work.ticketId, work.summary))
+                .collect(Collectors.toList());
+
+        batchStats.markOperationStart("embeddingService_batch");
+        List<FlaskEmbeddingResponseItem> embeddingResults = embeddingService.getEmbeddingsBatch(embedItems);
+        batchStats.markOperationEnd("embeddingService_batch");
+
+        // VALIDATION: Check if embedding results are available
+        if (embeddingResults == null || embeddingResults.isEmpty()) {
+            log.error("Embedding service returned null or empty results for batch. Skipping Elasticsearch indexing.");
+            batchSizeController.record(BatchSizeController.EMBEDDING, batch.size(), batchStats, "embeddingService_batch", batch.size(), 0);
+            return List.of();
+        }
+
+        Map<String, TicketWork> byId = indexById(batch);
+        List<TicketWork> embedded = new ArrayList<>();
+        for (FlaskEmbeddingResponseItem item : embeddingResults) {
+            TicketWork work = item.getTicketId() != null ? byId.get(item.getTicketId()) : null;
+            if (work == null || item.getEmbedding() == null || item.getEmbedding().isEmpty()) {
+                log.warn("Skipping indexing for ticket {} - invalid embedding data", item.getTicketId());
+                continue;
+            }
+            work.embedding = item.getEmbedding();
+            embedded.add(work);
+        }
+
+        batchSizeController.record(BatchSizeController.EMBEDDING, batch.size(), batchStats, "embeddingService_batch",
+                batch.size() - embedded.size(), 0);
+        embedded.addAll(fanOutDuplicates(embedded, state));
+        checkpointService.record(state.runId, IngestCheckpoint.Stage.EMBEDDED, ticketIds(embedded));
+        logBatchStats("embedding", batch.size(), batchStats);
+        return embedded;
+    }
+
+    private List<TicketWork> indexBatch(List<TicketWork> batch, RunState state) {
+        PerfStats batchStats = new PerfStats();
+
+        persistDuplicateSummaries(batch, state);
+
+        batchStats.markOperationStart("elasticsearchService_indexBatch");
+        List<CompletableFuture<Boolean>> writes = new ArrayList<>(batch.size());
+        for (TicketWork work : batch) {
+            writes.add(vectorStore.indexEmbedding(work.ticketId, work.embedding));
+        }
+        vectorStore.flush();
+        batchStats.markOperationEnd("elasticsearchService_indexBatch");
+
+        // Only documents Elasticsearch confirmed are checkpointed; the rest (dead-lettered, or
+        // still retrying when the flush timed out) are picked up again by a resumed run
+        List<TicketWork> written = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            TicketWork work = batch.get(i);
+            if (VectorStore.isWritten(writes.get(i))) {
+                state.summaryStore.put(work.ticketId, work.summary);
+                state.embeddingStore.put(work.ticketId, work.embedding);
+                state.unindexed.remove(work.ticketId);
+                state.advanceWatermark(work.updatedAt);
+                written.add(work);
+            }
+            work.embedding = null;
+        }
+        if (written.size() < batch.size()) {
+            log.warn("{} of {} embeddings were not confirmed by Elasticsearch and are not checkpointed",
+                    batch.size() - written.size(), batch.size());
+        }
+
+        List<String> indexed = ticketIds(written);
+        checkpointService.record(state.runId, IngestCheckpoint.Stage.INDEXED, indexed);
+        state.indexedTicketIds.addAll(indexed);
+        state.job.ticketsIndexed(indexed.size());
+
+        logBatchStats("indexing", batch.size(), batchStats);
+        return written;
+    }
+
+    /**
+     * Hand the canonical's summary and embedding to the duplicates that were waiting on it.
+     * Only canonicals reach the embedding stage, so everything passed in is one.
+     */
+    private List<TicketWork> fanOutDuplicates(List<TicketWork> embedded, RunState state) {
+        if (state.dedup == null) return List.of();
+        List<TicketWork> duplicates = new ArrayList<>();
+        for (TicketWork canonical : embedded) {
+            if (canonical.fingerprint == null) continue;
+            List<TicketWork> waiting = state.dedup.complete(canonical.fingerprint,
+                    new DedupResult(canonical.summary, canonical.embedding));
+            for (TicketWork duplicate : waiting) {
+                duplicate.copyResult(canonical.summary, canonical.embedding);
+                duplicates.add(duplicate);
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            log.info("Fanned out summaries and embeddings to {} duplicate tickets", duplicates.size());
+        }
+        return duplicates;
+    }
+
+    /**
+     * Wrap a stage processor so the duplicates of canonicals it drops are released, whether it
+     * returns without them or throws. A stage that throws loses its whole batch, and canonicals left
+     * in flight would strand their duplicates and every later ticket with the same content.
+     */
+    private Function<List<TicketWork>, List<TicketWork>> releasingDropped(
+            Function<List<TicketWork>, List<TicketWork>> processor, RunState state) {
+        return batch -> {
+            List<TicketWork> survivors = List.of();
+            try {
+                survivors = processor.apply(batch);
+                return survivors;
+            } finally {
+                releaseDropped(batch, survivors, state);
+            }
+        };
+    }
+
+    /**
+     * Drop the duplicates of canonicals a stage failed on, so they are not left waiting
+     */
+    private void releaseDropped(List<TicketWork> batch, List<TicketWork> survivors, RunState state) {
+        if (state.dedup == null) return;
+        Set<TicketWork> alive = Collections.newSetFromMap(new IdentityHashMap<>());
+        alive.addAll(survivors);
+        for (TicketWork work : batch) {
+            if (work.fingerprint != null && !work.duplicate && !alive.contains(work)) {
+                List<TicketWork> dropped = state.dedup.fail(work.fingerprint);
+                if (!dropped.isEmpty()) {
+                    log.warn("Skipping {} duplicates of ticket {} along with it", dropped.size(), work.ticketId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Duplicates never went through summarization, so their summaries are written here, before
+     * they are indexed
+     */
+    private void persistDuplicateSummaries(List<TicketWork> batch, RunState state) {
+        List<TicketWork> duplicates = batch.stream()
+                .filter(work -> work.duplicate)
+                .collect(Collectors.toList());
+        if (duplicates.isEmpty()) return;
+
+        Set<String> saved = mongoService.upsertSummarizedTickets(duplicates.stream()
+                .map(work -> new SummarizedTicket(work.ticketId, work.summary))
+                .collect(Collectors.toList()));
+        checkpointService.record(state.runId, IngestCheckpoint.Stage.SUMMARIZED, new ArrayList<>(saved));
+    }
+
+    private void enqueue(BlockingQueue<TicketWork> queue, TicketWork work, IngestJob job) throws InterruptedException {
+        while (!queue.offer(work, 100, TimeUnit.MILLISECONDS)) {
+            if (job.isCancelled()) return;
+        }
+    }
+
+    private void logDedupSummary(ContentDeduplicator<TicketWork, DedupResult> dedup) {
+        long saved = dedup.getDuplicates() - dedup.getDropped();
+        perfLog.info("=== PHASE 1 DEDUPLICATION ===");
+        perfLog.info(dedup.toString());
+        perfLog.info("Duplicate ratio: {}%, items saved per downstream: masking={}, summarization={}, embedding={}",
+                String.format("%.1f", dedup.getDuplicateRatio() * 100), saved, saved, saved);
+        perfLog.info("Estimated batch calls saved: masking={}, summarization={}, embedding={}",
+                callsSaved(saved, BatchSizeController.MASKING),
+                callsSaved(saved, BatchSizeController.SUMMARIZATION),
+                callsSaved(saved, BatchSizeController.EMBEDDING));
+    }
+
+    private long callsSaved(long itemsSaved, String stage) {
+        int batchSize = batchSizeController.sizer(stage).getBatchSize();
+        return (itemsSaved + batchSize - 1) / batchSize;
+    }
+
+    private List<String> ticketIds(List<TicketWork> works) {
+        return works.stream().map(work -> work.ticketId).collect(Collectors.toList());
+    }
+
+    private Map<String, TicketWork> indexById(List<TicketWork> batch) {
+        Map<String, TicketWork> byId = new HashMap<>();
+        for (TicketWork work : batch) {
+            byId.put(work.ticketId, work);
+        }
+        return byId;
+    }
+
+    private void logBatchStats(String stage, int batchSize, PerfStats batchStats) {
+        batchStats.stopAndGetStat();
+        perfLog.info("{} stage performance for {} tickets: {}", stage, batchSize, batchStats.toFormattedString());
+    }
+
+    private static final class RunState {
+        private final String runId;
+        private final IngestJob job;
+        private final RunStore<String> summaryStore;
+        private final RunStore<Embedding> embeddingStore;
+        // null when deduplication is disabled
+        private final ContentDeduplicator<TicketWork, DedupResult> dedup;
+        private final List<String> indexedTicketIds = Collections.synchronizedList(new ArrayList<>());
+        // updatedAt of tickets read but not (yet) indexed; whatever is left once the stages drain was dropped
+        private final Map<String, LocalDateTime> unindexed = new ConcurrentHashMap<>();
+        private final AtomicReference<LocalDateTime> newestIndexed = new AtomicReference<>();
+
+        private RunState(String runId, IngestJob job, RunStore<String> summaryStore, RunStore<Embedding> embeddingStore,
+                         ContentDeduplicator<TicketWork, DedupResult> dedup) {
+            this.runId = runId;
+            this.job = job;
+            this.summaryStore = summaryStore;
+            this.embeddingStore = embeddingStore;
+            this.dedup = dedup;
+        }
+
+        private void advanceWatermark(LocalDateTime updatedAt) {
+            if (updatedAt == null) return;
+            newestIndexed.accumulateAndGet(updatedAt, (current, candidate) ->
+                    current == null || candidate.isAfter(current) ? candidate : current);
+        }
+
+        /**
+         * Newest updatedAt indexed, held back to just before the oldest dropped ticket. Mongo stores
+         * dates to the millisecond, so one millisecond earlier still selects that ticket next time.
+         */
+        private LocalDateTime watermark() {
+            LocalDateTime watermark = newestIndexed.get();
+            if (watermark == null || unindexed.isEmpty()) return watermark;
+            LocalDateTime oldestDropped = Collections.min(unindexed.values()).minusNanos(1_000_000);
+            if (oldestDropped.isBefore(watermark)) {
+                log.warn("{} tickets were dropped by the pipeline; holding the watermark at {} instead of {}",
+                        unindexed.size(), oldestDropped, watermark);
+                return oldestDropped;
+            }
+            return watermark;
+        }
+    }
+
+    /**
+     * @param watermark the updatedAt the next delta run may select after, or null to keep the previous one
+     */
+    public record Result(List<String> indexedTicketIds, LocalDateTime watermark) {}
+
+    // Cached for late duplicates
+    private record DedupResult(String summary, Embedding embedding) {}
+
+    /**
+     * A ticket moving through the pipeline. Each stage drops the data it no longer needs.
+     */
+    private static final class TicketWork {
+        private final String ticketId;
+        private boolean summarizedBefore;
+        private LocalDateTime updatedAt;
+        private String fingerprint;
+        // Took its summary and embedding from a canonical ticket with the same content
+        private boolean duplicate;
+        private List<String> messages;
+        private String maskedContent;
+        private String summary;
+        private Embedding embedding;
+
+        private TicketWork(String ticketId, List<String> messages) {
+            this.ticketId = ticketId;
+            this.messages = messages;
+        }
+
+        private void copyResult(String summary, Embedding embedding) {
+            this.duplicate = true;
+            this.messages = null;
+            this.summary = summary;
+            this.embedding = embedding;
+        }
+    }
+}
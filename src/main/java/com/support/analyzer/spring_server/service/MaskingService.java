@@ -3,6 +3,7 @@ package com.support.analyzer.spring_server.service;
 import com.support.analyzer.spring_server.dto.FlaskMaskedResponse;
 import com.support.analyzer.spring_server.dto.FlaskMaskedResponseItem;
 import com.support.analyzer.spring_server.dto.MaskBatchRequest;
+import com.support.analyzer.spring_server.util.ConcurrencyLimit;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,13 +25,21 @@ public class MaskingService {
     @Value("${flask.baseurl}")
     private String flaskBaseUrl;
 
+    @Value("${flask.mask.concurrent.requests.limit}")
+    private int maxConcurrentRequests;
+
+    @Value("${flask.request.timeout.seconds}")
+    private int requestTimeoutSeconds;
+
     private WebClient maskingClient;
+    private ConcurrencyLimit requestLimit;
 
     @PostConstruct
     public void initClient() {
         this.maskingClient = WebClient.builder()
                 .baseUrl(flaskBaseUrl)
                 .build();
+        this.requestLimit = new ConcurrencyLimit("flask_mask", maxConcurrentRequests, requestTimeoutSeconds);
     }
 
     public List<String> getMaskedMessages(String ticketId, List<String> messages) {
@@ -50,7 +60,30 @@ public class MaskingService {
         }
     }
 
+    /**
+     * {@link #getMaskedMessages} without blocking, under the masking concurrency limit;
+     * completes with null on failure
+     */
+    public CompletableFuture<List<String>> getMaskedMessagesAsync(String ticketId, List<String> messages) {
+        return requestLimit.executeAsync(() -> maskingClient.post()
+                .uri("/mask")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new MaskRequest(messages))
+                .retrieve()
+                .bodyToMono(FlaskMaskedResponse.class)
+                .map(FlaskMaskedResponse::getMasked_messages)
+                .toFuture()
+                .exceptionally(e -> {
+                    log.error("Masking error for ticket " + ticketId + ": " + e.getMessage());
+                    return null;
+                }), null);
+    }
+
     public List<FlaskMaskedResponseItem> getMaskedMessagesBatch(List<MaskBatchRequest.MaskItem> batch) {
+        return requestLimit.execute(() -> maskBatch(batch), List.of());
+    }
+
+    private List<FlaskMaskedResponseItem> maskBatch(List<MaskBatchRequest.MaskItem> batch) {
         try {
             log.info("Batch masking request for {} items", batch.size());
 
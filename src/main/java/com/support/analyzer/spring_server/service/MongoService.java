@@ -1,6 +1,7 @@
 package com.support.analyzer.spring_server.service;
 
 import com.support.analyzer.spring_server.entity.*;
+import com.support.analyzer.spring_server.repository.IngestMetadataRepository;
 import com.support.analyzer.spring_server.repository.NewSupportTicketRepository;
 import com.support.analyzer.spring_server.repository.SummarizedTicketRepository;
 import com.support.analyzer.spring_server.repository.SupportTicketRepository;
@@ -9,8 +10,10 @@ import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -18,8 +21,13 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 @Service
 public class MongoService {
@@ -29,23 +37,29 @@ public class MongoService {
     private final SummarizedTicketRepository summarizedTicketRepository;
     private final TicketTripletRepository ticketTripletRepository;
     private final NewSupportTicketRepository newSupportTicketRepository;
+    private final IngestMetadataRepository ingestMetadataRepository;
     private final MongoTemplate mongoTemplate;
 
     // Bulk buffers - SHARED across all threads
     private final List<SummarizedTicket> summarizedTicketBuffer = Collections.synchronizedList(new ArrayList<>());
     private final List<TicketTriplet> tripletBuffer = Collections.synchronizedList(new ArrayList<>());
     private final int BULK_THRESHOLD = 50; // flush every 50 documents
+    // Locks rather than synchronized: a virtual thread blocked on I/O inside a monitor pins its carrier
+    private final ReentrantLock summarizedFlushLock = new ReentrantLock();
+    private final ReentrantLock tripletFlushLock = new ReentrantLock();
 
     @Autowired
     public MongoService(SupportTicketRepository messageRepository,
                         SummarizedTicketRepository summarizedTicketRepository,
                         TicketTripletRepository ticketTripletRepository,
                         NewSupportTicketRepository newSupportTicketRepository,
+                        IngestMetadataRepository ingestMetadataRepository,
                         MongoTemplate mongoTemplate) {
         this.messageRepository = messageRepository;
         this.summarizedTicketRepository = summarizedTicketRepository;
         this.ticketTripletRepository = ticketTripletRepository;
         this.newSupportTicketRepository = newSupportTicketRepository;
+        this.ingestMetadataRepository = ingestMetadataRepository;
         this.mongoTemplate = mongoTemplate;
     }
 
@@ -54,6 +68,70 @@ public class MongoService {
         return messageRepository.findAll();
     }
 
+    /**
+     * Stream support tickets through a server-side cursor instead of materializing the whole collection.
+     * The caller must close the returned stream.
+     */
+    public Stream<SupportTicket> streamSupportTickets(int cursorBatchSize) {
+        Query query = new Query()
+                .cursorBatchSize(cursorBatchSize)
+                .noCursorTimeout(); // consumers may stall on downstream backpressure longer than the idle timeout
+        return mongoTemplate.stream(query, SupportTicket.class);
+    }
+
+    /**
+     * Stream only the tickets changed after the given watermark, oldest change first.
+     * Served by the updatedAt index, see {@link #ensureSupportTicketUpdatedAtIndex()}.
+     */
+    public Stream<SupportTicket> streamSupportTicketsUpdatedAfter(LocalDateTime watermark, int cursorBatchSize) {
+        Query query = new Query(Criteria.where("updatedAt").gt(watermark))
+                .with(Sort.by(Sort.Direction.ASC, "updatedAt"))
+                .cursorBatchSize(cursorBatchSize)
+                .noCursorTimeout();
+        return mongoTemplate.stream(query, SupportTicket.class);
+    }
+
+    /**
+     * Number of tickets a run will read: all of them, or those changed after the watermark.
+     * Returns -1 if the count fails; it only feeds progress reporting.
+     */
+    public long countSupportTickets(LocalDateTime watermark) {
+        try {
+            Query query = watermark == null ? new Query() : new Query(Criteria.where("updatedAt").gt(watermark));
+            return mongoTemplate.count(query, SupportTicket.class);
+        } catch (Exception e) {
+            log.error("Failed to count support tickets: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    // Idempotent - Mongo returns the existing index if it is already there
+    public void ensureSupportTicketUpdatedAtIndex() {
+        String indexName = mongoTemplate.indexOps(SupportTicket.class)
+                .createIndex(new Index().on("updatedAt", Sort.Direction.ASC).named("updatedAt_1"));
+        log.info("Ensured index {} on support_tickets", indexName);
+    }
+
+    public LocalDateTime getIngestWatermark() {
+        try {
+            return ingestMetadataRepository.findById(IngestMetadata.TICKET_WATERMARK)
+                    .map(IngestMetadata::getWatermark)
+                    .orElse(null);
+        } catch (Exception e) {
+            // Falling back to no watermark would silently turn a delta run into a full one
+            throw new RuntimeException("Error reading ingest watermark: " + e.getMessage(), e);
+        }
+    }
+
+    public void saveIngestWatermark(LocalDateTime watermark) {
+        try {
+            ingestMetadataRepository.save(new IngestMetadata(IngestMetadata.TICKET_WATERMARK, watermark, LocalDateTime.now()));
+            log.info("Advanced ingest watermark to {}", watermark);
+        } catch (Exception e) {
+            throw new RuntimeException("Error saving ingest watermark: " + e.getMessage());
+        }
+    }
+
     public SupportTicket getSupportTicketById(String id) {
         return messageRepository.findById(id).orElseThrow(() -> new RuntimeException("Ticket not found"));
     }
@@ -103,6 +181,48 @@ public class MongoService {
         }
     }
 
+    // Single $in round trip for a batch of ids; missing ids are simply absent from the result
+    public List<SummarizedTicket> getSummarizedTicketsByIds(Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return List.of();
+        try {
+            return mongoTemplate.find(new Query(Criteria.where("_id").in(ticketIds)), SummarizedTicket.class);
+        } catch (Exception e) {
+            log.error("Error getting {} summarized tickets: {}", ticketIds.size(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Which of the given tickets already have a triplet
+     */
+    public Set<String> getTicketTripletIds(Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return Set.of();
+        try {
+            Query query = new Query(Criteria.where("_id").in(ticketIds));
+            query.fields().include("_id");
+            Set<String> ids = new HashSet<>();
+            for (TicketTriplet triplet : mongoTemplate.find(query, TicketTriplet.class)) {
+                ids.add(triplet.getTicketId());
+            }
+            return ids;
+        } catch (Exception e) {
+            log.error("Error looking up triplets of {} tickets: {}", ticketIds.size(), e.getMessage());
+            return Set.of();
+        }
+    }
+
+    /**
+     * Delete the triplets of the given tickets, e.g. once they are no longer cluster roots
+     */
+    public void deleteTicketTriplets(Collection<String> ticketIds) {
+        if (ticketIds.isEmpty()) return;
+        try {
+            long deleted = mongoTemplate.remove(new Query(Criteria.where("_id").in(ticketIds)), TicketTriplet.class).getDeletedCount();
+            log.info("Deleted {} ticket triplets of {} tickets", deleted, ticketIds.size());
+        } catch (Exception e) {
+            throw new RuntimeException("Error deleting ticket triplets: " + e.getMessage(), e);
+        }
+    }
 
     public void addSummarizeTicketDirect(SummarizedTicket summarizedTicket) {
         summarizedTicket.setCreatedAt(LocalDateTime.now());
@@ -123,6 +243,8 @@ public class MongoService {
     }
 
     // ==================== NEW BUFFERED BULK UPSERT METHODS ====================
+    // A flush may return while another thread is still writing items it copied out of the buffer,
+    // so callers that checkpoint what they wrote use upsertSummarizedTickets/upsertTicketTriplets
     public void addSummarizeTicket(SummarizedTicket summarizedTicket) {
         summarizedTicket.setCreatedAt(LocalDateTime.now());
         summarizedTicket.setUpdatedAt(LocalDateTime.now());
@@ -144,18 +266,50 @@ public class MongoService {
         }
     }
 
-    public synchronized void flushSummarizedTickets() {
+    public void flushSummarizedTickets() {
         if (summarizedTicketBuffer.isEmpty()) return;
 
+        summarizedFlushLock.lock();
         try {
-            List<SummarizedTicket> toFlush = new ArrayList<>(summarizedTicketBuffer);
+            doFlushSummarizedTickets();
+        } finally {
+            summarizedFlushLock.unlock();
+        }
+    }
+
+    private void doFlushSummarizedTickets() {
+        if (summarizedTicketBuffer.isEmpty()) return;
+
+        List<SummarizedTicket> toFlush;
+        synchronized (summarizedTicketBuffer) {
+            toFlush = new ArrayList<>(summarizedTicketBuffer);
             summarizedTicketBuffer.clear();
+        }
+        upsertSummarizedTickets(toFlush);
+    }
 
-            log.info("Flushing {} summarized tickets via bulk upsert operation", toFlush.size());
+    /**
+     * Bulk upsert the given summaries right away, bypassing the shared buffer, falling back to
+     * one upsert per ticket if the bulk write fails.
+     *
+     * @return ids of the summaries that were written
+     */
+    public Set<String> upsertSummarizedTickets(List<SummarizedTicket> tickets) {
+        Set<String> written = new HashSet<>();
+        if (tickets.isEmpty()) return written;
+
+        LocalDateTime now = LocalDateTime.now();
+        for (SummarizedTicket ticket : tickets) {
+            if (ticket.getCreatedAt() == null) ticket.setCreatedAt(now);
+            if (ticket.getUpdatedAt() == null) ticket.setUpdatedAt(now);
+        }
+
+        try {
+            log.info("Flushing {} summarized tickets via bulk upsert operation", tickets.size());
 
             BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SummarizedTicket.class);
 
-            for (SummarizedTicket ticket : toFlush) {
+            for (SummarizedTicket ticket : tickets) {
                 Query query = new Query(Criteria.where("_id").is(ticket.getTicketId()));
 
                 Update update = new Update()
@@ -168,42 +322,66 @@ public class MongoService {
 
             var result = bulkOps.execute();
             log.info("Successfully bulk upserted {} summarized tickets. Matched: {}, Modified: {}, Upserted: {}",
-                    toFlush.size(), result.getMatchedCount(), result.getModifiedCount(), result.getUpserts().size());
+                    tickets.size(), result.getMatchedCount(), result.getModifiedCount(), result.getUpserts().size());
+            tickets.forEach(ticket -> written.add(ticket.getTicketId()));
 
         } catch (Exception e) {
             log.error("Error bulk upserting summarized tickets: {}", e.getMessage());
 
             // Fallback to individual upserts
             log.info("Attempting individual upserts as fallback");
-            List<SummarizedTicket> failedItems = new ArrayList<>(summarizedTicketBuffer);
-            summarizedTicketBuffer.clear();
-
-            int successCount = 0;
-            for (SummarizedTicket ticket : failedItems) {
+            for (SummarizedTicket ticket : tickets) {
                 try {
                     summarizedTicketRepository.save(ticket); // save() does upsert
-                    successCount++;
+                    written.add(ticket.getTicketId());
                 } catch (Exception ex) {
                     log.error("Failed to upsert summarized ticket {}: {}", ticket.getTicketId(), ex.getMessage());
                 }
             }
             log.info("Fallback completed: {}/{} summarized tickets upserted successfully",
-                    successCount, failedItems.size());
+                    written.size(), tickets.size());
         }
+        return written;
     }
 
-    public synchronized void flushTicketTriplets() {
+    public void flushTicketTriplets() {
         if (tripletBuffer.isEmpty()) return;
 
+        tripletFlushLock.lock();
         try {
-            List<TicketTriplet> toFlush = new ArrayList<>(tripletBuffer);
+            doFlushTicketTriplets();
+        } finally {
+            tripletFlushLock.unlock();
+        }
+    }
+
+    private void doFlushTicketTriplets() {
+        if (tripletBuffer.isEmpty()) return;
+
+        List<TicketTriplet> toFlush;
+        synchronized (tripletBuffer) {
+            toFlush = new ArrayList<>(tripletBuffer);
             tripletBuffer.clear();
+        }
+        upsertTicketTriplets(toFlush);
+    }
 
-            log.info("Flushing {} ticket triplets via bulk upsert operation", toFlush.size());
+    /**
+     * Bulk upsert the given triplets right away, bypassing the shared buffer, falling back to
+     * one upsert per triplet if the bulk write fails.
+     *
+     * @return ids of the triplets that were written
+     */
+    public Set<String> upsertTicketTriplets(List<TicketTriplet> triplets) {
+        Set<String> written = new HashSet<>();
+        if (triplets.isEmpty()) return written;
+
+        try {
+            log.info("Flushing {} ticket triplets via bulk upsert operation", triplets.size());
 
             BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TicketTriplet.class);
 
-            for (TicketTriplet triplet : toFlush) {
+            for (TicketTriplet triplet : triplets) {
                 Query query = new Query(Criteria.where("_id").is(triplet.getTicketId()));
 
                 Update update = new Update()
@@ -216,28 +394,26 @@ public class MongoService {
 
             var result = bulkOps.execute();
             log.info("Successfully bulk upserted {} ticket triplets. Matched: {}, Modified: {}, Upserted: {}",
-                    toFlush.size(), result.getMatchedCount(), result.getModifiedCount(), result.getUpserts().size());
+                    triplets.size(), result.getMatchedCount(), result.getModifiedCount(), result.getUpserts().size());
+            triplets.forEach(triplet -> written.add(triplet.getTicketId()));
 
         } catch (Exception e) {
             log.error("Error bulk upserting ticket triplets: {}", e.getMessage());
 
             // Fallback to individual upserts
             log.info("Attempting individual upserts as fallback");
-            List<TicketTriplet> failedItems = new ArrayList<>(tripletBuffer);
-            tripletBuffer.clear();
-
-            int successCount = 0;
-            for (TicketTriplet triplet : failedItems) {
+            for (TicketTriplet triplet : triplets) {
                 try {
                     ticketTripletRepository.save(triplet); // save() does upsert
-                    successCount++;
+                    written.add(triplet.getTicketId());
                 } catch (Exception ex) {
                     log.error("Failed to upsert ticket triplet {}: {}", triplet.getTicketId(), ex.getMessage());
                 }
             }
             log.info("Fallback completed: {}/{} ticket triplets upserted successfully",
-                    successCount, failedItems.size());
+                    written.size(), triplets.size());
         }
+        return written;
     }
 
     @PreDestroy
@@ -1,11 +1,13 @@
 package com.support.analyzer.spring_server.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.support.analyzer.spring_server.dto.ElasticsearchSimilarInference;
 import com.support.analyzer.spring_server.dto.SummarizationRequest;
 import com.support.analyzer.spring_server.dto.SummarizationResponse;
 import com.support.analyzer.spring_server.entity.TicketTriplet;
+import com.support.analyzer.spring_server.util.ConcurrencyLimit;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
@@ -16,6 +18,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
@@ -23,8 +26,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -41,7 +44,14 @@ public class OpenAIService {
     private int requestTimeoutSeconds;
 
     private WebClient openAiClient;
-    private Semaphore requestSemaphore;
+    // Shared by the blocking calls and the async inference path
+    private ConcurrencyLimit requestLimit;
+
+    // Degradation signals for adaptive batch sizing, one per batched call so each sizer sees only its
+    // own 429s and not those of inference traffic; every 429 attempt counts, including retried ones.
+    // A batch whose response cannot be parsed comes back as failed items, which the sizer reads.
+    private final AtomicLong summaryBatchRateLimits = new AtomicLong();
+    private final AtomicLong tripletBatchRateLimits = new AtomicLong();
 
     @PostConstruct
     public void initClient() {
@@ -50,22 +60,38 @@ public class OpenAIService {
                 .defaultHeader("Content-Type", "application/json")
                 .build();
 
-        this.requestSemaphore = new Semaphore(maxConcurrentRequests, true); // Fair semaphore
+        this.requestLimit = new ConcurrencyLimit("openai", maxConcurrentRequests, requestTimeoutSeconds);
         log.info("Initialized OpenAI service with max {} concurrent requests", maxConcurrentRequests);
     }
 
     @PreDestroy
     public void cleanup() {
-        if (requestSemaphore != null) {
+        if (requestLimit != null) {
             log.info("Shutting down OpenAI service, waiting for {} active requests to complete",
-                    maxConcurrentRequests - requestSemaphore.availablePermits());
+                    requestLimit.getInFlight());
         }
     }
 
     public String summarizeMessages(String rawMessages) {
-        return executeWithSemaphore(() -> {
+        return executeWithLimit(() -> {
             try {
-                String prompt = """
+                return generateResponse(summaryPrompt(rawMessages));
+            } catch (Exception e) {
+                log.error("OpenAI Summarization Error: {}", e, e);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * {@link #summarizeMessages} without blocking; completes with null on failure
+     */
+    public CompletableFuture<String> summarizeMessagesAsync(String rawMessages) {
+        return requestLimit.executeAsync(() -> generateResponseAsync(summaryPrompt(rawMessages)), null);
+    }
+
+    private String summaryPrompt(String rawMessages) {
+        return """
             You are a technical support analyst. Summarize the following conversation logs into a single clear paragraph.
 
             Guidelines:
@@ -77,77 +103,87 @@ public class OpenAIService {
             Conversation Logs:
             %s
             """.formatted(rawMessages);
-
-                return generateResponse(prompt);
-            } catch (Exception e) {
-                log.error("OpenAI Summarization Error: {}", e, e);
-                return null;
-            }
-        });
     }
 
     public TicketTriplet generateCompleteInference(String ticketId,String originalMessage, List<ElasticsearchSimilarInference> similarTriplets) {
-        return executeWithSemaphore(() -> {
+        return executeWithLimit(() -> {
             try {
 
 
                 log.debug("Generating complete inference with {} similar triplets", similarTriplets.size());
 
-                StringBuilder tripletContext = new StringBuilder();
-                tripletContext.append("Similar resolved support tickets:\n\n");
+                String response = generateResponse(completeInferencePrompt(originalMessage, similarTriplets));
+                return parseCompleteInference(ticketId, response);
+            } catch (Exception e) {
+                log.error("Error generating complete inference: {}", e.getMessage());
+                return null;
+            }
 
-                for (int i = 0; i < similarTriplets.size(); i++) {
-                    ElasticsearchSimilarInference triplet = similarTriplets.get(i);
-                    tripletContext.append(String.format("Ticket %d:\n", i + 1));
-                    tripletContext.append("issue: ").append(triplet.getIssue()).append("\n");
-                    tripletContext.append("rca: ").append(triplet.getRca()).append("\n");
-                    tripletContext.append("solution: ").append(triplet.getSolution()).append("\n\n");
-                }
 
-                String comprehensivePrompt = "Based on the following original support ticket message and similar resolved tickets, " +
-                        "analyze and provide: issue identification, root cause analysis, and recommended solution. " +
-                        "The given issue may be an enhancement so take that into account. " +
-                        "Also give clear and detailed RCA and solution using numbered points (1., 2., 3., etc.). " +
-                        "If a point has multiple sentences, write them in one block — do not use \\n or newline characters. " +
-                        "Ensure output is valid JSON, with all fields as plain strings only (no markdown, no code blocks, no arrays). " +
-                        "Return only the following fields: rca, issue, solution." +
+        });
+    }
 
-                        "\n\nUse language of words familiar to the original message and similar tickets.\n\n" +
-                        "Original Message:\n" + originalMessage + "\n\n" + tripletContext;
+    /**
+     * {@link #generateCompleteInference} without blocking; completes with null on failure
+     */
+    public CompletableFuture<TicketTriplet> generateCompleteInferenceAsync(String ticketId, String originalMessage,
+                                                                          List<ElasticsearchSimilarInference> similarTriplets) {
+        log.debug("Generating complete inference with {} similar triplets", similarTriplets.size());
+        return requestLimit.executeAsync(
+                        () -> generateResponseAsync(completeInferencePrompt(originalMessage, similarTriplets)), null)
+                .thenApply(response -> parseCompleteInference(ticketId, response));
+    }
 
+    private String completeInferencePrompt(String originalMessage, List<ElasticsearchSimilarInference> similarTriplets) {
+        StringBuilder tripletContext = new StringBuilder();
+        tripletContext.append("Similar resolved support tickets:\n\n");
 
-                String response = generateResponse(comprehensivePrompt);
-                log.info("Generated comprehensive inference response: {}", response);
+        for (int i = 0; i < similarTriplets.size(); i++) {
+            ElasticsearchSimilarInference triplet = similarTriplets.get(i);
+            tripletContext.append(String.format("Ticket %d:\n", i + 1));
+            tripletContext.append("issue: ").append(triplet.getIssue()).append("\n");
+            tripletContext.append("rca: ").append(triplet.getRca()).append("\n");
+            tripletContext.append("solution: ").append(triplet.getSolution()).append("\n\n");
+        }
 
-                if (response == null || response.isBlank()) {
-                    log.warn("Failed to generate comprehensive inference");
-                    return null;
-                }
+        return "Based on the following original support ticket message and similar resolved tickets, " +
+                "analyze and provide: issue identification, root cause analysis, and recommended solution. " +
+                "The given issue may be an enhancement so take that into account. " +
+                "Also give clear and detailed RCA and solution using numbered points (1., 2., 3., etc.). " +
+                "If a point has multiple sentences, write them in one block — do not use \\n or newline characters. " +
+                "Ensure output is valid JSON, with all fields as plain strings only (no markdown, no code blocks, no arrays). " +
+                "Return only the following fields: rca, issue, solution." +
 
+                "\n\nUse language of words familiar to the original message and similar tickets.\n\n" +
+                "Original Message:\n" + originalMessage + "\n\n" + tripletContext;
+    }
 
-                TicketTriplet triplet = new TicketTriplet();
+    private TicketTriplet parseCompleteInference(String ticketId, String response) {
+        log.info("Generated comprehensive inference response: {}", response);
 
-                try {
-                    JsonNode root = new ObjectMapper().readTree(response);
-                    triplet.setTicketId(ticketId);
-                    triplet.setRca(root.path("rca").asText());
-                    triplet.setIssue(root.path("issue").asText());
-                    triplet.setSolution(root.path("solution").asText());
-                } catch (Exception e) {
-                    log.error("Failed to parse OpenAI response for ticket {}: {}", ticketId, e);
-                    return null;
-                }
-                return triplet;
-            } catch (Exception e) {
-                log.error("Error generating complete inference: {}", e.getMessage());
-                return null;
-            }
+        if (response == null || response.isBlank()) {
+            log.warn("Failed to generate comprehensive inference");
+            return null;
+        }
 
 
-        });
+        TicketTriplet triplet = new TicketTriplet();
+
+        try {
+            JsonNode root = new ObjectMapper().readTree(response);
+            triplet.setTicketId(ticketId);
+            triplet.setRca(root.path("rca").asText());
+            triplet.setIssue(root.path("issue").asText());
+            triplet.setSolution(root.path("solution").asText());
+        } catch (Exception e) {
+            log.error("Failed to parse OpenAI response for ticket {}: {}", ticketId, e);
+            return null;
+        }
+        return triplet;
     }
+
     public List<SummarizationResponse> summarizeMessagesBatch(List<SummarizationRequest> requests) {
-        return executeWithSemaphore(() -> {
+        return executeWithLimit(() -> {
             try {
                 // Build a combined prompt for all tickets
                 StringBuilder batchPrompt = new StringBuilder();
@@ -163,7 +199,7 @@ public class OpenAIService {
                 batchPrompt.append("\nProvide summaries in JSON format as an array of objects,  without any markdown or code block formatting each with 'ticketId' and 'summary' fields. " +
                         "Example format: [{\"ticketId\": \"TICKET_1\", \"summary\": \"...\"}, ...]");
 
-                String response = generateResponse(batchPrompt.toString());
+                String response = generateResponse(batchPrompt.toString(), summaryBatchRateLimits);
                 if (response == null || response.isBlank()) {
                     return requests.stream()
                             .map(req -> SummarizationResponse.failure(req.getTicketId(), "Failed to generate summary"))
@@ -216,7 +252,7 @@ public class OpenAIService {
 
 
     public List<TicketTriplet> generateTicketTripletsBatch(List<TripletBatchRequestItem> requests) {
-        return executeWithSemaphore(() -> {
+        return executeWithLimit(() -> {
             try {
                 // Construct prompt for batch triplet inference
                 StringBuilder batchPrompt = new StringBuilder();
@@ -250,7 +286,7 @@ public class OpenAIService {
                     batchPrompt.append(req.getSummary()).append("\n\n");
                 }
 
-                String response = generateResponse(batchPrompt.toString());
+                String response = generateResponse(batchPrompt.toString(), tripletBatchRateLimits);
                 if (response == null || response.isBlank()) {
                     return requests.stream()
                             .map(req -> {
@@ -320,7 +356,7 @@ public class OpenAIService {
     }
 
     public TicketTriplet generateTicketTriplet(String ticketId, String summary) {
-        return executeWithSemaphore(() -> {
+        return executeWithLimit(() -> {
             try {
                 log.debug("Generating triplet for ticket: {}", ticketId);
 
@@ -364,31 +400,40 @@ public class OpenAIService {
         });
     }
 
-    private <T> T executeWithSemaphore(java.util.function.Supplier<T> operation) {
+    private <T> T executeWithLimit(java.util.function.Supplier<T> operation) {
+        return requestLimit.execute(operation, null);
+    }
+
+    public String generateResponse(String prompt) {
+        return generateResponse(prompt, null);
+    }
+
+    /**
+     * @param rateLimits counts the 429s of this call, if not null
+     */
+    private String generateResponse(String prompt, AtomicLong rateLimits) {
         try {
-            if (requestSemaphore.tryAcquire(requestTimeoutSeconds, TimeUnit.SECONDS)) {
-                try {
-                    log.debug("Acquired OpenAI request permit. Available permits: {}", requestSemaphore.availablePermits());
-                    return operation.get();
-                } finally {
-                    requestSemaphore.release();
-                    log.debug("Released OpenAI request permit. Available permits: {}", requestSemaphore.availablePermits());
-                }
-            } else {
-                log.warn("Failed to acquire OpenAI request permit within {} seconds. Request dropped.", requestTimeoutSeconds);
-                return null;
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Thread interrupted while waiting for OpenAI request permit", e);
+            return generateResponseMono(prompt, rateLimits).block();
+        } catch (Exception e) {
+            log.error("OpenAI Error:", e);
             return null;
         }
     }
 
-    public String generateResponse(String prompt) {
+    // Completes with null instead of failing
+    private CompletableFuture<String> generateResponseAsync(String prompt) {
+        return generateResponseMono(prompt, null)
+                .toFuture()
+                .exceptionally(e -> {
+                    log.error("OpenAI Error:", e);
+                    return null;
+                });
+    }
+
+    private Mono<String> generateResponseMono(String prompt, AtomicLong rateLimits) {
+        String requestBody;
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            String requestBody = mapper.writeValueAsString(Map.of(
+            requestBody = new ObjectMapper().writeValueAsString(Map.of(
                     "model", "gpt-4",
                     "max_tokens", 16000,
                     "client_identifier", "spr-ui-dev",
@@ -397,40 +442,40 @@ public class OpenAIService {
                             "content", prompt
                     ))
             ));
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+
+        return openAiClient.post()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnError(WebClientResponseException.TooManyRequests.class, e -> {
+                    if (rateLimits != null) rateLimits.incrementAndGet();
+                })
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
+                        .filter(throwable ->
+                                (throwable instanceof WebClientResponseException &&
+                                        (((WebClientResponseException) throwable).getStatusCode().value() == 429 ||
+                                                ((WebClientResponseException) throwable).getStatusCode().value() == 400)) ||
+                                        (throwable instanceof WebClientRequestException &&
+                                                throwable.getCause() instanceof java.net.SocketException)
+                        )
+                        .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) -> {
+                            Throwable ex = retrySignal.failure();
+                            if (ex instanceof WebClientResponseException wcre) {
+                                log.error("Failed after retries. Status: {}, Response: {}",
+                                        wcre.getStatusCode(), wcre.getResponseBodyAsString());
+                            } else {
+                                log.error("Failed after retries. Exception: {}", ex.toString());
+                            }
+                            return ex;
+                        }))
 
-            return openAiClient.post()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
-                            .filter(throwable ->
-                                    (throwable instanceof WebClientResponseException &&
-                                            (((WebClientResponseException) throwable).getStatusCode().value() == 429 ||
-                                                    ((WebClientResponseException) throwable).getStatusCode().value() == 400)) ||
-                                            (throwable instanceof WebClientRequestException &&
-                                                    throwable.getCause() instanceof java.net.SocketException)
-                            )
-                            .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) -> {
-                                Throwable ex = retrySignal.failure();
-                                if (ex instanceof WebClientResponseException wcre) {
-                                    log.error("Failed after retries. Status: {}, Response: {}",
-                                            wcre.getStatusCode(), wcre.getResponseBodyAsString());
-                                } else {
-                                    log.error("Failed after retries. Exception: {}", ex.toString());
-                                }
-                                return ex;
-                            }))
-
-
-                    .doOnError(error -> log.error("Request failed: {}", error.getMessage()))
-                    .map(this::extractSummaryFromResponse)
-                    .block();
 
-        } catch (Exception e) {
-            log.error("OpenAI Error:", e);
-            return null;
-        }
+                .doOnError(error -> log.error("Request failed: {}", error.getMessage()))
+                .map(this::extractSummaryFromResponse);
     }
 
 
@@ -449,20 +494,28 @@ public class OpenAIService {
     }
 
     // Monitoring methods
+    public long getSummaryBatchRateLimits() {
+        return summaryBatchRateLimits.get();
+    }
+
+    public long getTripletBatchRateLimits() {
+        return tripletBatchRateLimits.get();
+    }
+
     public int getAvailablePermits() {
-        return requestSemaphore.availablePermits();
+        return requestLimit.getLimit() - requestLimit.getInFlight();
     }
 
     public int getQueueLength() {
-        return requestSemaphore.getQueueLength();
+        return requestLimit.getWaiting();
     }
 
     public boolean hasQueuedThreads() {
-        return requestSemaphore.hasQueuedThreads();
+        return requestLimit.getWaiting() > 0;
     }
 
     public boolean isAtCapacity() {
-        return requestSemaphore.availablePermits() == 0;
+        return requestLimit.getInFlight() >= requestLimit.getLimit();
     }
 
 
@@ -0,0 +1,242 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.util.RunStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Picks the ticket Phase 3 builds each cluster's triplet from, and how many clusters get one.
+ * <p>
+ * With dsu.representatives.policy=medoid the representative is the member closest to the
+ * cluster's centroid, the mean of its unit-length embeddings, so it is the most typical ticket
+ * rather than whichever one union-find left at the root. Small clusters are resolved several at
+ * a time and scored in memory; clusters larger than one chunk are streamed twice, once to sum
+ * the centroid and once to find the closest member, so no cluster is ever held in full.
+ * <p>
+ * The budget then orders clusters by descending size and keeps those with at least
+ * dsu.representatives.minClusterSize members, up to dsu.representatives.maxPerRun LLM calls.
+ * The rest are deferred: they stay in ticket_clusters without a new triplet, keeping whatever
+ * triplet their tickets already had, until a later delta run touches them or a run with a larger
+ * budget selects them. Full runs do not rebuild the triplet index while a budget is set (see
+ * {@link TripletIndexManager}), so deferring never drops an existing triplet.
+ */
+@Service
+public class RepresentativeSelector {
+    private static final Logger log = LoggerFactory.getLogger(RepresentativeSelector.class);
+
+    // "root" or "medoid"
+    @Value("${dsu.representatives.policy}")
+    private String policy;
+
+    // 0 means no cap
+    @Value("${dsu.representatives.maxPerRun}")
+    private int maxPerRun;
+
+    @Value("${dsu.representatives.minClusterSize}")
+    private int minClusterSize;
+
+    @Value("${dsu.knn.chunkSize}")
+    private int chunkSize;
+
+    private final VectorStore vectorStore;
+
+    @Autowired
+    public RepresentativeSelector(VectorStore vectorStore) {
+        this.vectorStore = vectorStore;
+    }
+
+    /**
+     * Whether the budget can defer clusters
+     */
+    public boolean isBudgeted() {
+        return maxPerRun > 0 || minClusterSize > 1;
+    }
+
+    public boolean isMedoid() {
+        return "medoid".equalsIgnoreCase(policy);
+    }
+
+    /**
+     * Representative of each given cluster, by cluster root. With the root policy that is the
+     * root itself.
+     */
+    public Map<String, String> chooseRepresentatives(Map<String, List<String>> clusters, RunStore<Embedding> embeddingStore) {
+        Map<String, String> representatives = new HashMap<>(clusters.size() * 2);
+        if (!isMedoid()) {
+            clusters.keySet().forEach(root -> representatives.put(root, root));
+            return representatives;
+        }
+        long startTime = System.currentTimeMillis();
+        int chunk = Math.max(1, chunkSize);
+
+        List<Map.Entry<String, List<String>>> pending = new ArrayList<>();
+        int pendingMembers = 0;
+        int moved = 0;
+        for (Map.Entry<String, List<String>> cluster : clusters.entrySet()) {
+            List<String> members = cluster.getValue();
+            // With one or two members every one is equally central
+            if (members.size() <= 2) {
+                representatives.put(cluster.getKey(), cluster.getKey());
+            } else if (members.size() > chunk) {
+                String medoid = streamingMedoid(members, chunk, embeddingStore);
+                representatives.put(cluster.getKey(), medoid != null ? medoid : cluster.getKey());
+                if (medoid != null && !medoid.equals(cluster.getKey())) moved++;
+            } else {
+                if (pendingMembers + members.size() > chunk) {
+                    moved += medoidsInMemory(pending, embeddingStore, representatives);
+                    pending.clear();
+                    pendingMembers = 0;
+                }
+                pending.add(cluster);
+                pendingMembers += members.size();
+            }
+        }
+        moved += medoidsInMemory(pending, embeddingStore, representatives);
+
+        log.info("Chose medoids of {} clusters in {} ms; {} differ from the union-find root",
+                clusters.size(), System.currentTimeMillis() - startTime, moved);
+        return representatives;
+    }
+
+    /**
+     * Representatives to build triplets for, biggest clusters first, within the budget.
+     *
+     * @param byRepresentative cluster members by representative
+     */
+    public Budgeted budget(Map<String, List<String>> byRepresentative) {
+        List<Map.Entry<String, List<String>>> bySize = new ArrayList<>(byRepresentative.entrySet());
+        bySize.sort((a, b) -> Integer.compare(b.getValue().size(), a.getValue().size()));
+
+        int cap = maxPerRun > 0 ? maxPerRun : Integer.MAX_VALUE;
+        List<String> selected = new ArrayList<>();
+        long selectedTickets = 0;
+        long deferredTickets = 0;
+        for (Map.Entry<String, List<String>> cluster : bySize) {
+            if (selected.size() < cap && cluster.getValue().size() >= minClusterSize) {
+                selected.add(cluster.getKey());
+                selectedTickets += cluster.getValue().size();
+            } else {
+                deferredTickets += cluster.getValue().size();
+            }
+        }
+        Budgeted budgeted = new Budgeted(selected, selectedTickets, bySize.size() - selected.size(), deferredTickets);
+        if (budgeted.deferredClusters() > 0) {
+            log.info("Representative budget: {} clusters covering {} tickets selected, {} clusters covering {} tickets deferred",
+                    selected.size(), selectedTickets, budgeted.deferredClusters(), deferredTickets);
+        }
+        return budgeted;
+    }
+
+    // Resolve the members of several small clusters at once and score each cluster in memory
+    private int medoidsInMemory(List<Map.Entry<String, List<String>>> clusters, RunStore<Embedding> embeddingStore,
+                                Map<String, String> representatives) {
+        if (clusters.isEmpty()) return 0;
+        List<String> ticketIds = new ArrayList<>();
+        clusters.forEach(cluster -> ticketIds.addAll(cluster.getValue()));
+        Map<String, Embedding> embeddings = embeddingStore.resolve(ticketIds, vectorStore::getEmbeddingsByTicketIds);
+
+        int moved = 0;
+        for (Map.Entry<String, List<String>> cluster : clusters) {
+            Centroid centroid = null;
+            for (String member : cluster.getValue()) {
+                centroid = Centroid.add(centroid, embeddings.get(member));
+            }
+            String medoid = null;
+            double best = Double.NEGATIVE_INFINITY;
+            for (String member : cluster.getValue()) {
+                double similarity = Centroid.similarity(centroid, embeddings.get(member));
+                if (similarity > best) {
+                    best = similarity;
+                    medoid = member;
+                }
+            }
+            String representative = medoid != null ? medoid : cluster.getKey();
+            representatives.put(cluster.getKey(), representative);
+            if (!representative.equals(cluster.getKey())) moved++;
+        }
+        return moved;
+    }
+
+    // Two chunked passes over a cluster too large to resolve at once; null if no member has an embedding
+    private String streamingMedoid(List<String> members, int chunk, RunStore<Embedding> embeddingStore) {
+        Centroid centroid = null;
+        for (int from = 0; from < members.size(); from += chunk) {
+            List<String> part = members.subList(from, Math.min(members.size(), from + chunk));
+            for (Embedding embedding : embeddingStore.resolve(part, vectorStore::getEmbeddingsByTicketIds).values()) {
+                centroid = Centroid.add(centroid, embedding);
+            }
+        }
+        if (centroid == null) return null;
+
+        String medoid = null;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int from = 0; from < members.size(); from += chunk) {
+            List<String> part = members.subList(from, Math.min(members.size(), from + chunk));
+            for (Map.Entry<String, Embedding> entry : embeddingStore.resolve(part, vectorStore::getEmbeddingsByTicketIds).entrySet()) {
+                double similarity = Centroid.similarity(centroid, entry.getValue());
+                if (similarity > best) {
+                    best = similarity;
+                    medoid = entry.getKey();
+                }
+            }
+        }
+        return medoid;
+    }
+
+    /**
+     * Running sum of unit vectors. The sum is never normalized: only the ranking of members by
+     * their dot product with it matters, and that is the same as ranking by cosine.
+     */
+    private static final class Centroid {
+        private final double[] sum;
+
+        private Centroid(int dimensions) {
+            this.sum = new double[dimensions];
+        }
+
+        // Members whose embedding is missing or has other dimensions are left out
+        static Centroid add(Centroid centroid, Embedding embedding) {
+            if (embedding == null || embedding.isEmpty()) return centroid;
+            if (centroid == null) centroid = new Centroid(embedding.dimensions());
+            if (embedding.dimensions() != centroid.sum.length) return centroid;
+            float[] values = embedding.values();
+            double scale = 1.0 / norm(values);
+            for (int i = 0; i < values.length; i++) {
+                centroid.sum[i] += values[i] * scale;
+            }
+            return centroid;
+        }
+
+        static double similarity(Centroid centroid, Embedding embedding) {
+            if (centroid == null || embedding == null || embedding.isEmpty()
+                    || embedding.dimensions() != centroid.sum.length) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            float[] values = embedding.values();
+            double dot = 0;
+            for (int i = 0; i < values.length; i++) {
+                dot += values[i] * centroid.sum[i];
+            }
+            return dot / norm(values);
+        }
+
+        private static double norm(float[] values) {
+            double norm = 0;
+            for (float value : values) {
+                norm += value * value;
+            }
+            return norm == 0 ? 1.0 : Math.sqrt(norm);
+        }
+    }
+
+    /**
+     * Representatives selected for this run, largest cluster first, and what the budget deferred.
+     */
+    public record Budgeted(List<String> representatives, long coveredTickets, int deferredClusters, long deferredTickets) {}
+}
@@ -1,17 +1,19 @@
 package com.support.analyzer.spring_server.service;
 
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
 import com.support.analyzer.spring_server.dto.ElasticsearchSimilarInference;
-import com.support.analyzer.spring_server.entity.NewSupportTicket;
-import com.support.analyzer.spring_server.entity.TicketTriplet;
 import com.support.analyzer.spring_server.dto.TicketTripletWithDetails;
 import com.support.analyzer.spring_server.util.PerfStats;
-import com.support.analyzer.spring_server.util.PerfTracker;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,162 +26,168 @@ public class SupportTicketInference {
     private final MaskingService maskingService;
     private final OpenAIService openAIService;
     private final EmbeddingService embeddingService;
-    private final ElasticsearchService elasticsearchService;
+    private final VectorStore vectorStore;
+    // The Mongo driver in use is blocking, so the async path runs its two Mongo calls here
+    private final ExecutorService mongoExecutor;
 
     @Autowired
     public SupportTicketInference(MongoService mongoService,
                                   MaskingService maskingService,
                                   OpenAIService openAIService,
                                   EmbeddingService embeddingService,
-                                  ElasticsearchService elasticsearchService) {
+                                  VectorStore vectorStore,
+                                  IngestExecutorFactory executorFactory,
+                                  @Value("${inference.async.mongoThreads}") int mongoThreads) {
         this.mongoService = mongoService;
         this.maskingService = maskingService;
         this.openAIService = openAIService;
         this.embeddingService = embeddingService;
-        this.elasticsearchService = elasticsearchService;
+        this.vectorStore = vectorStore;
+        this.mongoExecutor = executorFactory.newExecutor("inference-mongo", mongoThreads);
     }
 
-    public TicketTripletWithDetails inferSupportTicket(String ticketId) {
-        PerfStats mainPerfStats = PerfTracker.start();
-        long startTime = System.currentTimeMillis();
-
-        try {
-            log.info("Starting inference for ticket: {}", ticketId);
-
-            // Step 1: Get the support ticket and process messages
-            PerfTracker.in("getTicketAndProcessMessages");
-            NewSupportTicket ticket = mongoService.getNewSupportTicketById(ticketId);
-            if (ticket == null) {
-                log.warn("Ticket not found: {}", ticketId);
-                PerfTracker.out("getTicketAndProcessMessages");
-                return null;
-            }
-
-            List<String> rawMessages = ticket.getMessages().stream()
-                    .map(msg -> msg.get_source().getMessage())
-                    .collect(Collectors.toList());
+    @PreDestroy
+    public void shutdown() {
+        mongoExecutor.shutdown();
+    }
 
-            if (rawMessages.isEmpty()) {
-                log.warn("No messages found for ticket: {}", ticketId);
-                PerfTracker.out("getTicketAndProcessMessages");
-                return null;
-            }
-            log.info("Raw messages for ticket {}: {}", ticketId, rawMessages);
-            PerfTracker.out("getTicketAndProcessMessages");
+    /**
+     * Infers a triplet for the ticket without holding a thread while waiting: the masking, embedding
+     * and OpenAI calls go through WebClient and the kNN search through the async Elasticsearch
+     * client, so each step continues on the thread that completed the previous one. Only the
+     * ticket lookup and the save run on a small pool, the Mongo driver being blocking.
+     *
+     * @return completes with null when the ticket is missing, has no messages or a step yields
+     * nothing, and exceptionally when a step fails
+     */
+    public CompletableFuture<TicketTripletWithDetails> inferSupportTicketAsync(String ticketId) {
+        PerfStats perfStats = new PerfStats();
+        long startTime = System.currentTimeMillis();
+        log.info("Starting async inference for ticket: {}", ticketId);
+
+        perfStats.markOperationStart("getTicketAndProcessMessages");
+        return CompletableFuture.supplyAsync(() -> mongoService.getNewSupportTicketById(ticketId), mongoExecutor)
+                .thenCompose(ticket -> {
+                    perfStats.markOperationEnd("getTicketAndProcessMessages");
+                    if (ticket == null) {
+                        log.warn("Ticket not found: {}", ticketId);
+                        return notInferred();
+                    }
+                    List<String> rawMessages = ticket.getMessages().stream()
+                            .map(msg -> msg.get_source().getMessage())
+                            .collect(Collectors.toList());
+                    if (rawMessages.isEmpty()) {
+                        log.warn("No messages found for ticket: {}", ticketId);
+                        return notInferred();
+                    }
+                    log.info("Raw messages for ticket {}: {}", ticketId, rawMessages);
+                    return maskAsync(ticketId, rawMessages, perfStats);
+                })
+                .whenComplete((inference, error) -> {
+                    if (error != null) {
+                        log.error("Error during inference for ticket {}: {}", ticketId, error.getMessage(), error);
+                    } else if (inference != null) {
+                        log.info("Successfully generated inference for ticket: {} with {} similar tickets in {}ms",
+                                ticketId, inference.getDetails().getSimilarTickets().size(), System.currentTimeMillis() - startTime);
+                    }
+                    PerfStats finalStats = perfStats.stopAndGetStat();
+                    perfLog.info("=== INFERENCE PERFORMANCE STATS FOR TICKET {} ===", ticketId);
+                    perfLog.info(finalStats.toFormattedString());
+                    perfLog.info("=== INFERENCE SERVICE TIMING SUMMARY ===");
+                    logInferenceServiceSummary(finalStats, ticketId);
+                    perfLog.info("=== END INFERENCE PERFORMANCE STATS ===");
+                });
+    }
 
-            // Step 2: Mask sensitive information
-            PerfTracker.in("maskingService_getSingle");
-            List<String> maskedMessages = maskingService.getMaskedMessages(ticketId, rawMessages);
+    private CompletableFuture<TicketTripletWithDetails> maskAsync(String ticketId, List<String> rawMessages, PerfStats perfStats) {
+        perfStats.markOperationStart("maskingService_getSingle");
+        return maskingService.getMaskedMessagesAsync(ticketId, rawMessages).thenCompose(maskedMessages -> {
+            perfStats.markOperationEnd("maskingService_getSingle");
             if (maskedMessages == null || maskedMessages.isEmpty()) {
                 log.warn("Masking failed or returned empty for ticket: {}", ticketId);
-                PerfTracker.out("maskingService_getSingle");
-                return null;
+                return notInferred();
             }
             log.info("Masked messages for ticket {}: {}", ticketId, maskedMessages);
+            return summarizeAsync(ticketId, String.join("\n", maskedMessages), perfStats);
+        });
+    }
 
-            String joinedMasked = String.join("\n", maskedMessages);
-            log.debug("Masked messages for ticket {}: {}", ticketId, joinedMasked);
-            PerfTracker.out("maskingService_getSingle");
-
-            // Step 3: Generate summary for embedding
-            PerfTracker.in("openAIService_summarizeSingle");
-            String summary = openAIService.summarizeMessages(joinedMasked);
+    private CompletableFuture<TicketTripletWithDetails> summarizeAsync(String ticketId, String joinedMasked, PerfStats perfStats) {
+        perfStats.markOperationStart("openAIService_summarizeSingle");
+        return openAIService.summarizeMessagesAsync(joinedMasked).thenCompose(summary -> {
+            perfStats.markOperationEnd("openAIService_summarizeSingle");
             log.info("Generated summary for ticket {}: {}", ticketId, summary);
             if (summary == null || summary.isBlank()) {
                 log.warn("Summary generation failed for ticket: {}", ticketId);
-                PerfTracker.out("openAIService_summarizeSingle");
-                return null;
+                return notInferred();
             }
-            PerfTracker.out("openAIService_summarizeSingle");
+            return embedAsync(ticketId, joinedMasked, summary, perfStats);
+        });
+    }
 
-            // Step 4: Generate embedding for the summary
-            PerfTracker.in("embeddingService_getSingle");
-            List<Double> embedding = embeddingService.getEmbedding(ticketId, summary);
+    private CompletableFuture<TicketTripletWithDetails> embedAsync(String ticketId, String joinedMasked, String summary,
+                                                                   PerfStats perfStats) {
+        perfStats.markOperationStart("embeddingService_getSingle");
+        return embeddingService.getEmbeddingAsync(ticketId, summary).thenCompose(embedding -> {
+            perfStats.markOperationEnd("embeddingService_getSingle");
             if (embedding == null || embedding.isEmpty()) {
                 log.warn("Embedding generation failed for ticket: {}", ticketId);
-                PerfTracker.out("embeddingService_getSingle");
-                return null;
-            }
-            PerfTracker.out("embeddingService_getSingle");
-
-            // Step 5: Find k-nearest neighbors in triplets index
-            PerfTracker.in("elasticsearchService_findSimilar");
-            List<ElasticsearchSimilarInference> similarTriplets = elasticsearchService.findSimilarTriplets(embedding, K_NEAREST_NEIGHBORS);
-            log.info("Found {} similar triplets for ticket: {}", similarTriplets.size(), ticketId);
-            if (similarTriplets.isEmpty()) {
-                log.warn("No similar triplets found for ticket: {}", ticketId);
-                PerfTracker.out("elasticsearchService_findSimilar");
-                return null;
+                return notInferred();
             }
-            PerfTracker.out("elasticsearchService_findSimilar");
-
-            // Step 6: Convert ElasticsearchSimilarInference to SimilarTicketInfo for response
-            PerfTracker.in("convertSimilarTriplets");
-            List<TicketTripletWithDetails.SimilarTicketInfo> similarTicketInfos = similarTriplets.stream()
-                    .map(triplet -> {
-                        TicketTripletWithDetails.SimilarTicketInfo info = new TicketTripletWithDetails.SimilarTicketInfo();
-                        info.setRca(triplet.getRca());
-                        info.setIssue(triplet.getIssue());
-                        info.setSolution(triplet.getSolution());
-                        // If you have similarity score available, set it here
-                        // info.setSimilarity(triplet.getSimilarityScore());
-                        return info;
-                    })
-                    .collect(Collectors.toList());
-
-            log.info("Converted {} similar triplets to SimilarTicketInfo objects", similarTicketInfos.size());
-            PerfTracker.out("convertSimilarTriplets");
-
-            // Step 7: Generate complete inference using OpenAI with similar triplets context
-            PerfTracker.in("openAIService_generateCompleteInference");
-            TicketTriplet inference = openAIService.generateCompleteInference(ticketId, joinedMasked, similarTriplets);
+            perfStats.markOperationStart("elasticsearchService_findSimilar");
+            return vectorStore.findSimilarTripletsAsync(embedding, K_NEAREST_NEIGHBORS)
+                    .thenCompose(similarTriplets -> {
+                        perfStats.markOperationEnd("elasticsearchService_findSimilar");
+                        log.info("Found {} similar triplets for ticket: {}", similarTriplets.size(), ticketId);
+                        if (similarTriplets.isEmpty()) {
+                            log.warn("No similar triplets found for ticket: {}", ticketId);
+                            return notInferred();
+                        }
+                        return generateAsync(ticketId, joinedMasked, summary, similarTriplets, perfStats);
+                    });
+        });
+    }
 
+    private CompletableFuture<TicketTripletWithDetails> generateAsync(String ticketId, String joinedMasked, String summary,
+                                                                      List<ElasticsearchSimilarInference> similarTriplets,
+                                                                      PerfStats perfStats) {
+        perfStats.markOperationStart("openAIService_generateCompleteInference");
+        return openAIService.generateCompleteInferenceAsync(ticketId, joinedMasked, similarTriplets).thenCompose(inference -> {
+            perfStats.markOperationEnd("openAIService_generateCompleteInference");
             if (inference == null) {
                 log.warn("Failed to generate complete inference for ticket: {}", ticketId);
-                PerfTracker.out("openAIService_generateCompleteInference");
-                return null;
-            }
-            PerfTracker.out("openAIService_generateCompleteInference");
-
-            // Save the inference
-            PerfTracker.in("mongoService_saveInference");
-            mongoService.addTicketTriplet(inference);
-            mongoService.finalFlush();
-            log.info("Saved inference for ticket: {},{}", ticketId, inference);
-            PerfTracker.out("mongoService_saveInference");
-
-            // Step 8: Create enhanced response with similar tickets information
-            PerfTracker.in("createEnhancedResponse");
-            TicketTripletWithDetails enhancedInference = new TicketTripletWithDetails(
-                    inference,
-                    joinedMasked,
-                    summary,
-                    similarTicketInfos
-            );
-            PerfTracker.out("createEnhancedResponse");
-
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("Successfully generated inference for ticket: {} with {} similar tickets in {}ms",
-                    ticketId, similarTicketInfos.size(), totalDuration);
-
-            return enhancedInference;
-
-        } catch (Exception e) {
-            log.error("Error during inference for ticket {}: {}", ticketId, e.getMessage(), e);
-            throw new RuntimeException("Failed to infer support ticket: " + e.getMessage(), e);
-        } finally {
-            // Stop and log performance stats
-            PerfStats finalStats = PerfTracker.stopAndClean();
-            if (finalStats != null) {
-                perfLog.info("=== INFERENCE PERFORMANCE STATS FOR TICKET {} ===", ticketId);
-                perfLog.info(finalStats.toFormattedString());
-
-                // Log service timing summary
-                perfLog.info("=== INFERENCE SERVICE TIMING SUMMARY ===");
-                logInferenceServiceSummary(finalStats, ticketId);
-                perfLog.info("=== END INFERENCE PERFORMANCE STATS ===");
+                return notInferred();
             }
-        }
+            // A single upsert rather than the shared triplet buffer, which would need a flush to land
+            perfStats.markOperationStart("mongoService_saveInference");
+            return CompletableFuture.supplyAsync(() -> {
+                mongoService.addTicketTripletDirect(inference);
+                perfStats.markOperationEnd("mongoService_saveInference");
+                log.info("Saved inference for ticket: {},{}", ticketId, inference);
+
+                perfStats.markOperationStart("createEnhancedResponse");
+                TicketTripletWithDetails enhancedInference = new TicketTripletWithDetails(
+                        inference, joinedMasked, summary, toSimilarTicketInfos(similarTriplets));
+                perfStats.markOperationEnd("createEnhancedResponse");
+                return enhancedInference;
+            }, mongoExecutor);
+        });
+    }
+
+    private static List<TicketTripletWithDetails.SimilarTicketInfo> toSimilarTicketInfos(List<ElasticsearchSimilarInference> similarTriplets) {
+        return similarTriplets.stream()
+                .map(triplet -> {
+                    TicketTripletWithDetails.SimilarTicketInfo info = new TicketTripletWithDetails.SimilarTicketInfo();
+                    info.setRca(triplet.getRca());
+                    info.setIssue(triplet.getIssue());
+                    info.setSolution(triplet.getSolution());
+                    return info;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static CompletableFuture<TicketTripletWithDetails> notInferred() {
+        return CompletableFuture.completedFuture(null);
     }
 
     private void logInferenceServiceSummary(PerfStats stats, String ticketId) {
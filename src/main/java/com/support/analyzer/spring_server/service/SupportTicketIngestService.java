@@ -1,21 +1,30 @@
 package com.support.analyzer.spring_server.service;
 
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
 import com.support.analyzer.spring_server.dto.*;
+import com.support.analyzer.spring_server.entity.IngestCheckpoint;
+import com.support.analyzer.spring_server.entity.IngestRun;
 import com.support.analyzer.spring_server.entity.SummarizedTicket;
 import com.support.analyzer.spring_server.entity.SupportTicket;
 import com.support.analyzer.spring_server.entity.TicketTriplet;
+import com.support.analyzer.spring_server.util.AdaptiveBatchSizer;
 import com.support.analyzer.spring_server.util.PerfStats;
 import com.support.analyzer.spring_server.util.PerfTracker;
+import com.support.analyzer.spring_server.util.RunStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SupportTicketIngestService {
@@ -23,11 +32,16 @@ public class SupportTicketIngestService {
     private static final Logger perfLog = LoggerFactory.getLogger("PERF_SUMMARY");
 
     private final MongoService mongoService;
-    private final MaskingService maskingService;
+    private final IngestPipelineService ingestPipelineService;
     private final OpenAIService openAIService;
     private final EmbeddingService embeddingService;
     private final ElasticsearchService elasticsearchService;
+    private final VectorStore vectorStore;
     private final DsuService dsuService;
+    private final IngestCheckpointService checkpointService;
+    private final IngestExecutorFactory executorFactory;
+    private final BatchSizeController batchSizeController;
+    private final TripletIndexManager tripletIndexManager;
 
     @Value("${batchSize}")
     private int batchSize;
@@ -35,224 +49,288 @@ public class SupportTicketIngestService {
     @Value("${numThreads}")
     private int numThreads;
 
+    @Value("${ingest.executor.maxInFlightTripletBatches}")
+    private int maxInFlightTripletBatches;
+
+    @Value("${ingest.summaryStore.maxEntries}")
+    private int summaryStoreMaxEntries;
+
+    @Value("${ingest.embeddingStore.maxEntries}")
+    private int embeddingStoreMaxEntries;
+
     @Autowired
     public SupportTicketIngestService(MongoService mongoService,
-                                      MaskingService maskingService,
+                                      IngestPipelineService ingestPipelineService,
                                       OpenAIService openAIService,
                                       EmbeddingService embeddingService,
                                       ElasticsearchService elasticsearchService,
-                                      DsuService dsuService) {
+                                      VectorStore vectorStore,
+                                      DsuService dsuService,
+                                      IngestCheckpointService checkpointService,
+                                      IngestExecutorFactory executorFactory,
+                                      BatchSizeController batchSizeController,
+                                      TripletIndexManager tripletIndexManager) {
         this.mongoService = mongoService;
-        this.maskingService = maskingService;
+        this.ingestPipelineService = ingestPipelineService;
         this.openAIService = openAIService;
         this.embeddingService = embeddingService;
         this.elasticsearchService = elasticsearchService;
+        this.vectorStore = vectorStore;
         this.dsuService = dsuService;
+        this.checkpointService = checkpointService;
+        this.executorFactory = executorFactory;
+        this.batchSizeController = batchSizeController;
+        this.tripletIndexManager = tripletIndexManager;
     }
 
-    public void processAllTickets() {
+    public enum IngestMode {
+        // Reprocess every ticket in support_tickets
+        FULL,
+        // Only tickets whose updatedAt is newer than the stored watermark
+        DELTA
+    }
+
+    /**
+     * Execute a run registered by {@link IngestCheckpointService#startOrResume(String)}, reporting
+     * progress to the job. Progress is journaled per batch, so if the JVM dies the next ingest
+     * picks the unfinished run up again and continues from the phase and batches it had reached.
+     * A cancelled job stops between batches, flushes the Mongo and Elasticsearch buffers and
+     * marks the run CANCELLED.
+     * <p>
+     * The Elasticsearch indices stay in their bulk-load profile (no refresh, fewer replicas) for
+     * the whole run and are refreshed explicitly before clustering reads them; their settings
+     * are restored when the run ends, however it ends. A full run rebuilds the triplet index
+     * into a new one and swaps it in once Phase 3 is done (see {@link TripletIndexManager}).
+     */
+    public void processRun(IngestRun run, IngestJob job) {
         PerfStats mainPerfStats = PerfTracker.start();
 
         long startTime = System.currentTimeMillis();
 
-        PerfTracker.in("getAllSupportTickets");
-        List<SupportTicket> tickets = mongoService.getAllSupportTicket();
-        PerfTracker.out("getAllSupportTickets");
-
-        log.info("Processing {} tickets", tickets.size());
-        List<String> allTicketIds = Collections.synchronizedList(new ArrayList<>());
-
-        PerfTracker.in("phase1_prepareBatches");
-
-        List<List<SupportTicket>> batches = new ArrayList<>();
-        for (int i = 0; i < tickets.size(); i += batchSize) {
-            batches.add(tickets.subList(i, Math.min(i + batchSize, tickets.size())));
-        }
-        PerfTracker.out("phase1_prepareBatches");
-
-        ExecutorService ticketExecutor = Executors.newFixedThreadPool(numThreads);
-        List<Future<?>> ticketFutures = new ArrayList<>();
-
-        PerfTracker.in("phase1_batchProcessing");
-
-        for (List<SupportTicket> batch : batches) {
-            Future<?> future = ticketExecutor.submit(() -> {
-                // Each thread gets its own performance tracker
-                PerfStats threadPerfStats = new PerfStats();
-                try {
-                    threadPerfStats.markOperationStart("prepareMaskItems");
-                    List<MaskBatchRequest.MaskItem> maskItems = batch.stream()
-                            .map(ticket -> new MaskBatchRequest.MaskItem(
-                                    ticket.getTicketId(),
-                                    ticket.getMessages().stream()
-                                            .map(msg -> msg.get_source().getMessage())
-                                            .collect(Collectors.toList())))
-                            .collect(Collectors.toList());
-                    threadPerfStats.markOperationEnd("prepareMaskItems");
-
-                    log.info("Masking {} tickets", maskItems.size());
-
-                    threadPerfStats.markOperationStart("maskingService_batch");
-                    List<FlaskMaskedResponseItem> maskedResults = maskingService.getMaskedMessagesBatch(maskItems);
-                    threadPerfStats.markOperationEnd("maskingService_batch");
-
-                    // VALIDATION: Check if masking results are available
-                    if (maskedResults == null || maskedResults.isEmpty()) {
-                        log.error("Masking service returned null or empty results for batch. Skipping batch processing.");
-                        return;
-                    }
-
-                    log.info("Masked {} tickets", maskedResults.size());
-
-                    threadPerfStats.markOperationStart("prepareEmbedItems");
-
-                    threadPerfStats.markOperationStart("prepareSummarizationBatch");
-                    List<SummarizationRequest> summarizationRequests = new ArrayList<>();
-
-                    for (FlaskMaskedResponseItem item : maskedResults) {
-                        String ticketId = item.getTicketId();
-                        List<String> maskedMessages = item.getMaskedMessages();
-                        log.info("Ticket {} masked messages: {}", ticketId, maskedMessages);
-                        if (maskedMessages == null || maskedMessages.isEmpty()) {
-                            log.warn("Skipping ticket {} - no masked messages available", ticketId);
-                            continue;
-                        }
-
-                        String joinedMasked = String.join("\n", maskedMessages);
-                        summarizationRequests.add(new SummarizationRequest(ticketId, joinedMasked));
-                    }
-                    threadPerfStats.markOperationEnd("prepareSummarizationBatch");
-
-                    // VALIDATION: Check if we have any valid summarization requests
-                    if (summarizationRequests.isEmpty()) {
-                        log.error("No valid summarization requests after masking. Skipping batch processing.");
-                        return;
-                    }
-
-                    log.info("Sending {} tickets for batch summarization", summarizationRequests.size());
-
-                    threadPerfStats.markOperationStart("openAIService_batchSummarize");
-                    List<SummarizationResponse> summaryResponses = openAIService.summarizeMessagesBatch(summarizationRequests);
-                    threadPerfStats.markOperationEnd("openAIService_batchSummarize");
-
-                    log.info("Received {} summarization responses", summaryResponses.size());
-
-                    threadPerfStats.markOperationStart("processResponsesAndSave");
-                    List<EmbedBatchRequest.EmbedItem> embedItems = new ArrayList<>();
-
-                    for (SummarizationResponse response : summaryResponses) {
-                        if (response.isSuccess() && response.getSummary() != null && !response.getSummary().isBlank()) {
-
-                            threadPerfStats.markOperationStart("mongoService_addSummarize_" + response.getTicketId());
-                            mongoService.addSummarizeTicket(new SummarizedTicket(response.getTicketId(), response.getSummary()));
-                            threadPerfStats.markOperationEnd("mongoService_addSummarize_" + response.getTicketId());
-
-                            // Prepare for embedding
-                            embedItems.add(new EmbedBatchRequest.EmbedItem(response.getTicketId(), response.getSummary()));
-
-                            log.info("Processed and saved ticket {}: {}", response.getTicketId(), response.getSummary());
-                        } else {
-                            log.warn("Failed to summarize ticket {}: {}", response.getTicketId(), response.getErrorMessage());
-                        }
-                    }
-                    threadPerfStats.markOperationEnd("processResponsesAndSave");
-
-                    // VALIDATION: Check if we have items to embed
-                    if (embedItems.isEmpty()) {
-                        log.error("No valid items for embedding after summarization. Skipping embedding and indexing.");
-                        return;
-                    }
+        IngestMode mode = IngestMode.valueOf(run.getMode());
+        boolean rebuildTriplets = mode == IngestMode.FULL && tripletIndexManager.isEnabled();
+        // Filled by Phase 1 and read by Phase 3; empty when resuming past Phase 1
+        RunStore<String> summaryStore = RunStore.summaries(summaryStoreMaxEntries);
+        // Filled by Phase 1 and read by Phase 2; empty when resuming past Phase 1
+        RunStore<Embedding> embeddingStore = RunStore.embeddings(embeddingStoreMaxEntries);
+
+        try {
+            elasticsearchService.beginBulkLoad(!rebuildTriplets);
+            List<String> allTicketIds = null;
+            if (run.getPhase() == IngestRun.Phase.PHASE1) {
+                job.enterPhase(IngestRun.Phase.PHASE1.name());
+                allTicketIds = runPhase1(run, mode, job, summaryStore, embeddingStore);
+                checkCancelled(job);
+                checkpointService.advancePhase(run, IngestRun.Phase.PHASE2);
+            }
 
-                    log.info("Successfully processed {} out of {} summaries", embedItems.size(), summarizationRequests.size());
-                    threadPerfStats.markOperationEnd("prepareEmbedItems");
+            List<String> representatives;
+            if (run.getPhase() == IngestRun.Phase.PHASE2) {
+                if (allTicketIds == null) {
+                    allTicketIds = new ArrayList<>(checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.INDEXED));
+                    log.info("Resuming run {} at clustering with {} indexed tickets", run.getRunId(), allTicketIds.size());
+                }
+                job.enterPhase(IngestRun.Phase.PHASE2.name());
+                // Refresh is off during the run; clustering must see every embedding Phase 1 wrote
+                elasticsearchService.refreshIndices();
+                representatives = runPhase2(allTicketIds, mode, job, embeddingStore);
+                checkCancelled(job);
+                checkpointService.record(run.getRunId(), IngestCheckpoint.Stage.CLUSTERED, representatives);
+                checkpointService.advancePhase(run, IngestRun.Phase.PHASE3);
+            } else {
+                representatives = new ArrayList<>(checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.CLUSTERED));
+            }
 
-                    threadPerfStats.markOperationStart("embeddingService_batch");
-                    List<FlaskEmbeddingResponseItem> embeddingResults = embeddingService.getEmbeddingsBatch(embedItems);
-                    threadPerfStats.markOperationEnd("embeddingService_batch");
+            int processedReps = 0;
+            job.enterPhase(IngestRun.Phase.PHASE3.name());
+            // VALIDATION: Check if clustering produced representatives
+            if (representatives.isEmpty()) {
+                log.error("Clustering did not produce any representatives. Skipping Phase 3.");
+            } else {
+                if (rebuildTriplets) {
+                    beginTripletRebuild(run);
+                }
+                processedReps = runPhase3(run, representatives, job, summaryStore);
+            }
+            checkCancelled(job);
+            if (rebuildTriplets && !representatives.isEmpty()) {
+                completeTripletRebuild(run);
+            }
 
-                    // VALIDATION: Check if embedding results are available
-                    if (embeddingResults == null || embeddingResults.isEmpty()) {
-                        log.error("Embedding service returned null or empty results for batch. Skipping Elasticsearch indexing.");
-                        return;
-                    }
+            if (run.getNextWatermark() != null && !run.getNextWatermark().equals(run.getPreviousWatermark())) {
+                mongoService.saveIngestWatermark(run.getNextWatermark());
+            }
+            checkpointService.complete(run);
+            vectorStore.checkpoint();
+            job.enterPhase(IngestRun.Phase.DONE.name());
 
-                    threadPerfStats.markOperationStart("elasticsearchService_indexBatch");
-                    for (FlaskEmbeddingResponseItem item : embeddingResults) {
-                        // Additional validation for individual embedding items
-                        if (item.getTicketId() == null || item.getEmbedding() == null || item.getEmbedding().isEmpty()) {
-                            log.warn("Skipping indexing for ticket {} - invalid embedding data", item.getTicketId());
-                            continue;
-                        }
+            long totalDuration = System.currentTimeMillis() - startTime;
+            log.info("Completed run {} with {} representatives processed in {} ms",
+                    run.getRunId(), processedReps, totalDuration);
+        } catch (CancellationException e) {
+            log.warn("Ingest run {} cancelled in {}; flushing buffered writes", run.getRunId(), run.getPhase());
+            mongoService.finalFlush();
+            elasticsearchService.finalFlush();
+            vectorStore.checkpoint();
+            checkpointService.cancel(run);
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("Ingest run {} failed in {}: {}", run.getRunId(), run.getPhase(), e.getMessage(), e);
+            checkpointService.fail(run, e);
+            throw e;
+        } finally {
+            tripletIndexManager.endRebuild();
+            elasticsearchService.endBulkLoad();
+            // Stop and log main performance stats
+            PerfStats finalStats = PerfTracker.stopAndClean();
+            if (finalStats != null) {
+                perfLog.info("=== MAIN THREAD PERFORMANCE STATS ===");
+                perfLog.info(finalStats.toFormattedString());
+
+                // Log aggregated service timing summary
+                perfLog.info("=== SERVICE TIMING SUMMARY ===");
+                logServiceSummary(finalStats);
+                perfLog.info("=== END PERFORMANCE STATS ===");
+            }
+        }
+    }
 
-                        elasticsearchService.indexEmbedding(item.getTicketId(), item.getEmbedding());
-                        allTicketIds.add(item.getTicketId());
-                    }
-                    threadPerfStats.markOperationEnd("elasticsearchService_indexBatch");
+    private void beginTripletRebuild(IngestRun run) {
+        try {
+            tripletIndexManager.beginRebuild(run);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the triplet index for run " + run.getRunId(), e);
+        }
+    }
 
-                    threadPerfStats.stopAndGetStat();
-                    perfLog.info("Batch thread performance for {} tickets: {}",
-                            batch.size(), threadPerfStats.toFormattedString());
+    // Fails the run if the new index does not validate; the next attempt resumes into the same index
+    private void completeTripletRebuild(IngestRun run) {
+        try {
+            tripletIndexManager.completeRebuild(run,
+                    checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.TRIPLETS).size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not swap in the triplet index of run " + run.getRunId(), e);
+        }
+    }
 
-                } catch (Exception e) {
-                    log.error("Batch processing failed: {}", e.getMessage(), e);
-                }
-            });
-            ticketFutures.add(future);
+    private void checkCancelled(IngestJob job) {
+        if (job.isCancelled()) {
+            throw new CancellationException("Ingest job " + job.getJobId() + " was cancelled");
         }
+    }
 
-        for (Future<?> f : ticketFutures) {
-            try {
-                f.get();
-            } catch (Exception e) {
-                log.error("Ticket processing task failed: {}", e.getMessage());
+    private List<String> runPhase1(IngestRun run, IngestMode mode, IngestJob job,
+                                   RunStore<String> summaryStore, RunStore<Embedding> embeddingStore) {
+        LocalDateTime previousWatermark = null;
+        if (mode == IngestMode.DELTA) {
+            PerfTracker.in("delta_prepare");
+            mongoService.ensureSupportTicketUpdatedAtIndex();
+            // A resumed run must keep selecting against the watermark it started from
+            previousWatermark = run.getResumeCount() > 0 ? run.getPreviousWatermark() : mongoService.getIngestWatermark();
+            run.setPreviousWatermark(previousWatermark);
+            checkpointService.save(run);
+            PerfTracker.out("delta_prepare");
+            if (previousWatermark == null) {
+                log.info("No ingest watermark stored yet; delta run will process every ticket");
+            } else {
+                log.info("Delta ingest of tickets updated after {}", previousWatermark);
             }
         }
 
-        ticketExecutor.shutdown();
+        job.setTotalTickets(mongoService.countSupportTickets(previousWatermark));
+
+        PerfTracker.in("phase1_batchProcessing");
+        IngestPipelineService.Result result;
+        try (Stream<SupportTicket> ticketStream = openTicketStream(previousWatermark)) {
+            result = ingestPipelineService.run(ticketStream.iterator(), run, job, summaryStore, embeddingStore);
+        }
         PerfTracker.out("phase1_batchProcessing");
 
+        // Only covers tickets that reached the index; saved once the run completes
+        run.setNextWatermark(result.watermark() != null ? result.watermark() : previousWatermark);
+        checkpointService.save(run);
+
         PerfTracker.in("phase1_finalFlush");
         mongoService.finalFlush();
         elasticsearchService.finalFlush();
         PerfTracker.out("phase1_finalFlush");
 
-        // PHASE 2: Clustering
-        log.info("Phase 1 complete. Starting clustering...");
+        return result.indexedTicketIds();
+    }
+
+    private List<String> runPhase2(List<String> allTicketIds, IngestMode mode, IngestJob job, RunStore<Embedding> embeddingStore) {
+        if (allTicketIds.isEmpty()) {
+            log.info("No {} tickets to cluster.", mode == IngestMode.DELTA ? "changed" : "ingested");
+            return List.of();
+        }
+
+        // In delta mode only the changed tickets (and the stored clusters they were in) seed the
+        // union-find, so only their kNN neighbourhoods are re-clustered and merged into the
+        // persisted clusters.
+        log.info("Phase 1 complete. Starting clustering of {} {} tickets...",
+                allTicketIds.size(), mode == IngestMode.DELTA ? "changed" : "ingested");
         PerfTracker.in("phase2_clustering");
-        List<String> representatives = dsuService.buildClustersAndGetRepresentatives(allTicketIds, 5);
+        List<String> representatives = dsuService.buildClustersAndGetRepresentatives(allTicketIds, 5, job, embeddingStore,
+                mode == IngestMode.DELTA);
         PerfTracker.out("phase2_clustering");
+        perfLog.info("Phase 2 embedding lookups: {}", embeddingStore);
+        return representatives == null ? List.of() : representatives;
+    }
 
-        // VALIDATION: Check if clustering produced representatives
-        if (representatives == null || representatives.isEmpty()) {
-            log.error("Clustering did not produce any representatives. Skipping Phase 3.");
-            long totalDuration = System.currentTimeMillis() - startTime;
-            log.info("Processing stopped after Phase 2. Processed {} tickets in {} ms", allTicketIds.size(), totalDuration);
-            return;
+    private int runPhase3(IngestRun run, List<String> allRepresentatives, IngestJob job, RunStore<String> summaryStore) {
+        Set<String> completedReps = checkpointService.completed(run.getRunId(), IngestCheckpoint.Stage.TRIPLETS);
+        List<String> representatives = allRepresentatives.stream()
+                .filter(repId -> !completedReps.contains(repId))
+                .collect(Collectors.toList());
+        if (!completedReps.isEmpty()) {
+            log.info("Resuming Phase 3 of run {}: {} of {} representatives already have triplets",
+                    run.getRunId(), completedReps.size(), allRepresentatives.size());
         }
+        job.setRepresentativesTotal(allRepresentatives.size());
+        job.representativesProcessed(completedReps.size());
 
         // PHASE 3: Triplet Generation + Batch Embedding
         PerfTracker.in("phase3_prepareTripletBatches");
-        ExecutorService tripletExecutor = Executors.newFixedThreadPool(numThreads);
+        ExecutorService tripletExecutor = executorFactory.newExecutor("triplet", numThreads);
+        // Virtual threads do not bound the batches in flight, so gate submission; anything past the
+        // LLM and Flask limits would only wait for a permit and risk its permit timeout
+        Semaphore inFlightBatches = new Semaphore(executorFactory.isVirtualThreads() ? maxInFlightTripletBatches : numThreads);
         List<Future<?>> tripletFutures = new ArrayList<>();
         AtomicInteger processedReps = new AtomicInteger(0);
-
-        List<List<String>> repBatches = new ArrayList<>();
-        for (int i = 0; i < representatives.size(); i += batchSize) {
-            repBatches.add(representatives.subList(i, Math.min(i + batchSize, representatives.size())));
-        }
+        AdaptiveBatchSizer tripletSizer = batchSizeController.sizer(BatchSizeController.TRIPLET);
         PerfTracker.out("phase3_prepareTripletBatches");
 
         PerfTracker.in("phase3_tripletProcessing");
 
-        for (List<String> repBatch : repBatches) {
+        int nextRep = 0;
+        while (nextRep < representatives.size()) {
+            if (job.isCancelled()) {
+                break;
+            }
+            try {
+                inFlightBatches.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while submitting triplet batches");
+                break;
+            }
+            // Cut each batch at submission time so it reflects the latest latency feedback
+            List<String> repBatch = representatives.subList(nextRep,
+                    Math.min(nextRep + tripletSizer.getBatchSize(), representatives.size()));
+            nextRep += repBatch.size();
             Future<?> future = tripletExecutor.submit(() -> {
+                if (job.isCancelled()) {
+                    inFlightBatches.release();
+                    return;
+                }
                 try {
-                    // Prepare batch request from summarized tickets
+                    // Prepare batch request from the run's summaries, one $in query for any not in memory
+                    Map<String, String> summaries = summaryStore.resolve(repBatch, this::loadSummaries);
                     List<OpenAIService.TripletBatchRequestItem> tripletRequestItems = new ArrayList<>();
                     for (String repId : repBatch) {
-                        SummarizedTicket summarized = mongoService.getSummarizedTicketById(repId);
-                        if (summarized != null && summarized.getSummary() != null && !summarized.getSummary().isBlank()) {
-                            tripletRequestItems.add(new OpenAIService.TripletBatchRequestItem(repId, summarized.getSummary()));
+                        String summary = summaries.get(repId);
+                        if (summary != null && !summary.isBlank()) {
+                            tripletRequestItems.add(new OpenAIService.TripletBatchRequestItem(repId, summary));
                         }
                     }
 
@@ -262,7 +340,15 @@ public class SupportTicketIngestService {
                         return;
                     }
 
+                    PerfStats batchStats = new PerfStats();
+                    batchStats.markOperationStart("openAIService_batchTriplets");
                     List<TicketTriplet> triplets = openAIService.generateTicketTripletsBatch(tripletRequestItems);
+                    batchStats.markOperationEnd("openAIService_batchTriplets");
+
+                    int generated = triplets == null ? 0 : (int) triplets.stream().filter(t -> t.getIssue() != null).count();
+                    batchSizeController.record(BatchSizeController.TRIPLET, tripletRequestItems.size(), batchStats,
+                            "openAIService_batchTriplets", tripletRequestItems.size() - generated,
+                            openAIService.getTripletBatchRateLimits());
 
                     // VALIDATION: Check if triplet generation was successful
                     if (triplets == null || triplets.isEmpty()) {
@@ -291,24 +377,48 @@ public class SupportTicketIngestService {
                         return;
                     }
 
+                    // Triplets must be durable before the checkpoint claims them, so the batch writes
+                    // its own instead of going through the shared buffer
+                    Set<String> savedTriplets = mongoService.upsertTicketTriplets(triplets.stream()
+                            .filter(t -> t.getTicketId() != null)
+                            .collect(Collectors.toList()));
+
+                    Map<String, CompletableFuture<Boolean>> writes = new LinkedHashMap<>();
                     for (TicketTriplet triplet : triplets) {
-                        mongoService.addTicketTriplet(triplet);
-                        List<Double> embedding = embeddingResults.stream()
+                        if (!savedTriplets.contains(triplet.getTicketId())) {
+                            log.warn("Triplet for ticket ID {} was not saved. Skipping Elasticsearch indexing.", triplet.getTicketId());
+                            continue;
+                        }
+                        Embedding embedding = embeddingResults.stream()
                                 .filter(item -> item.getTicketId().equals(triplet.getTicketId()))
                                 .findFirst()
                                 .map(FlaskEmbeddingResponseItem::getEmbedding)
                                 .orElse(null);
 
                         if (embedding != null && !embedding.isEmpty()) {
-                            elasticsearchService.indexTicketTripletWithEmbedding(triplet, embedding);
+                            writes.put(triplet.getTicketId(), vectorStore.indexTicketTripletWithEmbedding(triplet, embedding));
                         } else {
                             log.warn("No embedding found for triplet ticket ID: {}. Skipping Elasticsearch indexing.", triplet.getTicketId());
                         }
                     }
 
+                    vectorStore.flush();
+                    List<String> completedIds = writes.entrySet().stream()
+                            .filter(write -> VectorStore.isWritten(write.getValue()))
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toList());
+                    if (completedIds.size() < writes.size()) {
+                        log.warn("{} of {} triplets were not confirmed by Elasticsearch and are not checkpointed",
+                                writes.size() - completedIds.size(), writes.size());
+                    }
+                    checkpointService.record(run.getRunId(), IngestCheckpoint.Stage.TRIPLETS, completedIds);
+
                     processedReps.addAndGet(repBatch.size());
+                    job.representativesProcessed(repBatch.size());
                 } catch (Exception e) {
                     log.error("Triplet batch processing failed for batch {}: {}", repBatch, e.getMessage(), e);
+                } finally {
+                    inFlightBatches.release();
                 }
             });
             tripletFutures.add(future);
@@ -325,26 +435,29 @@ public class SupportTicketIngestService {
         tripletExecutor.shutdown();
         PerfTracker.out("phase3_tripletProcessing");
 
+        perfLog.info("Phase 3 summary lookups: {}", summaryStore);
+
         PerfTracker.in("phase3_finalFlush");
         mongoService.finalFlush();
         elasticsearchService.finalFlush();
         PerfTracker.out("phase3_finalFlush");
 
-        long totalDuration = System.currentTimeMillis() - startTime;
-        log.info("Completed processing {} tickets and {} representatives in {} ms",
-                allTicketIds.size(), processedReps.get(), totalDuration);
+        return processedReps.get();
+    }
 
-        // Stop and log main performance stats
-        PerfStats finalStats = PerfTracker.stopAndClean();
-        if (finalStats != null) {
-            perfLog.info("=== MAIN THREAD PERFORMANCE STATS ===");
-            perfLog.info(finalStats.toFormattedString());
+    private Map<String, String> loadSummaries(Collection<String> ticketIds) {
+        Map<String, String> summaries = new HashMap<>();
+        for (SummarizedTicket summarized : mongoService.getSummarizedTicketsByIds(ticketIds)) {
+            summaries.put(summarized.getTicketId(), summarized.getSummary());
+        }
+        return summaries;
+    }
 
-            // Log aggregated service timing summary
-            perfLog.info("=== SERVICE TIMING SUMMARY ===");
-            logServiceSummary(finalStats);
-            perfLog.info("=== END PERFORMANCE STATS ===");
+    private Stream<SupportTicket> openTicketStream(LocalDateTime watermark) {
+        if (watermark == null) {
+            return mongoService.streamSupportTickets(batchSize);
         }
+        return mongoService.streamSupportTicketsUpdatedAfter(watermark, batchSize);
     }
 
     private void logServiceSummary(PerfStats stats) {
@@ -359,8 +472,6 @@ public class SupportTicketIngestService {
                 operationTimes.getOrDefault("phase3_tripletProcessing", 0L));
 
         // Service breakdown
-        perfLog.info("MongoDB getAllSupportTickets: {}ms",
-                operationTimes.getOrDefault("getAllSupportTickets", 0L));
         perfLog.info("Final flush operations: {}ms",
                 operationTimes.getOrDefault("phase1_finalFlush", 0L) +
                         operationTimes.getOrDefault("phase3_finalFlush", 0L));
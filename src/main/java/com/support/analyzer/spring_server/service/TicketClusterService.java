@@ -0,0 +1,249 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.entity.TicketCluster;
+import com.support.analyzer.spring_server.util.IntUnionFind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Ticket clusters persisted in the ticket_clusters collection, so a delta run extends the stored
+ * clustering instead of rebuilding it. A full run replaces the collection. A delta run first
+ * dissolves the stored clusters its changed tickets belong to, since union-find cannot split a
+ * set and a changed ticket may no longer belong where it was; those members are re-clustered
+ * along with the run. The result is then merged into the stored clusters it links to.
+ */
+@Service
+public class TicketClusterService {
+    private static final Logger log = LoggerFactory.getLogger(TicketClusterService.class);
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    // Stored clusters larger than this are kept as they are when one of their tickets changes
+    @Value("${dsu.clusters.maxDissolveSize}")
+    private int maxDissolveSize;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public TicketClusterService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void ensureRootIdIndex() {
+        mongoTemplate.indexOps(TicketCluster.class)
+                .createIndex(new Index().on("rootId", Sort.Direction.ASC).named("rootId_1"));
+    }
+
+    /**
+     * The stored clusters the given changed tickets belong to, which the run re-clusters from
+     * scratch. Clusters with more than dsu.clusters.maxDissolveSize members are left intact.
+     */
+    public Dissolved dissolve(Collection<String> changedTicketIds) {
+        Set<String> roots = new HashSet<>(rootsOf(changedTicketIds).values());
+        if (roots.isEmpty()) {
+            return new Dissolved(Set.of(), List.of());
+        }
+
+        Map<String, List<String>> membersByRoot = new HashMap<>();
+        for (TicketCluster member : membersOf(roots)) {
+            membersByRoot.computeIfAbsent(member.getRootId(), r -> new ArrayList<>()).add(member.getTicketId());
+        }
+        Set<String> dissolvedRoots = new HashSet<>();
+        List<String> members = new ArrayList<>();
+        int tooLarge = 0;
+        for (Map.Entry<String, List<String>> cluster : membersByRoot.entrySet()) {
+            if (cluster.getValue().size() > maxDissolveSize) {
+                tooLarge++;
+                continue;
+            }
+            dissolvedRoots.add(cluster.getKey());
+            members.addAll(cluster.getValue());
+        }
+        if (tooLarge > 0) {
+            log.warn("{} stored clusters exceed dsu.clusters.maxDissolveSize={}; their changed tickets stay in them",
+                    tooLarge, maxDissolveSize);
+        }
+        log.info("Re-clustering {} stored clusters with {} members touched by {} changed tickets",
+                dissolvedRoots.size(), members.size(), changedTicketIds.size());
+        return new Dissolved(dissolvedRoots, members);
+    }
+
+    /**
+     * Replace every stored cluster with the given ones (root to members).
+     */
+    public void replaceAll(Map<String, List<String>> clusters) {
+        long startTime = System.currentTimeMillis();
+        mongoTemplate.remove(new Query(), TicketCluster.class);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<TicketCluster> documents = new ArrayList<>();
+        for (Map.Entry<String, List<String>> cluster : clusters.entrySet()) {
+            for (String member : cluster.getValue()) {
+                documents.add(new TicketCluster(member, cluster.getKey(), now));
+            }
+        }
+        if (!documents.isEmpty()) {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TicketCluster.class)
+                    .insert(documents)
+                    .execute();
+        }
+        log.info("Stored {} clusters with {} tickets in {} ms",
+                clusters.size(), documents.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Merge a delta run's clusters into the stored ones. Every stored cluster that shares a
+     * ticket with a run cluster is joined with it, except the dissolved ones, whose old
+     * membership is dropped. Each merged cluster keeps the root of the largest stored cluster it
+     * contains, so existing roots and their triplets stay valid where possible. Only tickets
+     * whose root changes are written.
+     *
+     * @param clusters the run's clusters, root to members
+     * @param dissolvedRoots roots returned by {@link #dissolve(Collection)} for this run
+     * @return the clusters touched by the merge, root to members, and the stored roots that are no
+     *         longer roots
+     */
+    public Merged merge(Map<String, List<String>> clusters, Set<String> dissolvedRoots) {
+        long startTime = System.currentTimeMillis();
+        List<String> ticketIds = new ArrayList<>();
+        clusters.values().forEach(ticketIds::addAll);
+
+        // Stored root of every ticket involved, from both dissolved and intact clusters
+        Map<String, String> previousRoot = rootsOf(ticketIds);
+        Set<String> intactRoots = new HashSet<>(previousRoot.values());
+        intactRoots.removeAll(dissolvedRoots);
+        List<TicketCluster> intactMembers = membersOf(intactRoots);
+        for (TicketCluster member : intactMembers) {
+            previousRoot.put(member.getTicketId(), member.getRootId());
+        }
+        Map<String, Integer> storedSize = new HashMap<>();
+        for (String root : previousRoot.values()) {
+            storedSize.merge(root, 1, Integer::sum);
+        }
+
+        Map<String, Integer> ids = new HashMap<>((ticketIds.size() + intactMembers.size()) * 2);
+        List<String> names = new ArrayList<>(ticketIds.size() + intactMembers.size());
+        IntUnionFind unionFind = new IntUnionFind(ticketIds.size() + intactMembers.size());
+        for (Map.Entry<String, List<String>> cluster : clusters.entrySet()) {
+            int root = intern(cluster.getKey(), ids, names, unionFind);
+            for (String member : cluster.getValue()) {
+                unionFind.union(root, intern(member, ids, names, unionFind));
+            }
+        }
+        for (TicketCluster member : intactMembers) {
+            unionFind.union(intern(member.getTicketId(), ids, names, unionFind),
+                    intern(member.getRootId(), ids, names, unionFind));
+        }
+
+        IntUnionFind.Clusters merged = unionFind.clusters();
+        Map<String, List<String>> byRoot = new HashMap<>(merged.count() * 2);
+        int keptRoots = 0;
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TicketCluster.class);
+        LocalDateTime now = LocalDateTime.now();
+        int written = 0;
+        for (int c = 0; c < merged.count(); c++) {
+            List<String> members = new ArrayList<>(merged.size(c));
+            String root = names.get(merged.root(c));
+            int rootSize = 0;
+            for (int i = 0; i < merged.size(c); i++) {
+                String member = names.get(merged.member(c, i));
+                members.add(member);
+                // A member that was a root before is a candidate to stay one
+                if (member.equals(previousRoot.get(member)) && storedSize.get(member) > rootSize) {
+                    root = member;
+                    rootSize = storedSize.get(member);
+                }
+            }
+            if (rootSize > 0) {
+                keptRoots++;
+            }
+            for (String member : members) {
+                if (!root.equals(previousRoot.get(member))) {
+                    bulkOps.upsert(new Query(Criteria.where("_id").is(member)),
+                            new Update().set("rootId", root).set("updatedAt", now));
+                    written++;
+                }
+            }
+            byRoot.put(root, members);
+        }
+        if (written > 0) {
+            bulkOps.execute();
+        }
+        Set<String> supersededRoots = new HashSet<>(previousRoot.values());
+        supersededRoots.addAll(dissolvedRoots);
+        supersededRoots.removeAll(byRoot.keySet());
+        log.info("Merged run clusters into {} stored clusters ({} kept their root, {} roots superseded); wrote {} memberships in {} ms",
+                byRoot.size(), keptRoots, supersededRoots.size(), written, System.currentTimeMillis() - startTime);
+        return new Merged(byRoot, supersededRoots);
+    }
+
+    /**
+     * Make newRoot the root of every member of oldRoot's cluster
+     */
+    public void reroot(String oldRoot, String newRoot) {
+        mongoTemplate.updateMulti(new Query(Criteria.where("rootId").is(oldRoot)),
+                new Update().set("rootId", newRoot).set("updatedAt", LocalDateTime.now()), TicketCluster.class);
+    }
+
+    private static int intern(String ticketId, Map<String, Integer> ids, List<String> names, IntUnionFind unionFind) {
+        Integer id = ids.get(ticketId);
+        if (id == null) {
+            id = unionFind.add();
+            ids.put(ticketId, id);
+            names.add(ticketId);
+        }
+        return id;
+    }
+
+    // Stored root of each given ticket that is in a cluster
+    private Map<String, String> rootsOf(Collection<String> ticketIds) {
+        Map<String, String> roots = new HashMap<>(ticketIds.size() * 2);
+        for (List<String> chunk : chunks(ticketIds)) {
+            for (TicketCluster cluster : mongoTemplate.find(new Query(Criteria.where("_id").in(chunk)), TicketCluster.class)) {
+                roots.put(cluster.getTicketId(), cluster.getRootId());
+            }
+        }
+        return roots;
+    }
+
+    // All members of the given stored clusters; served by the rootId index
+    private List<TicketCluster> membersOf(Collection<String> rootIds) {
+        List<TicketCluster> members = new ArrayList<>();
+        for (List<String> chunk : chunks(rootIds)) {
+            members.addAll(mongoTemplate.find(new Query(Criteria.where("rootId").in(chunk)), TicketCluster.class));
+        }
+        return members;
+    }
+
+    private static List<List<String>> chunks(Collection<String> ids) {
+        List<String> list = new ArrayList<>(ids);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += QUERY_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(i + QUERY_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Stored clusters a delta run re-clusters: their roots and all their members.
+     */
+    public record Dissolved(Set<String> roots, List<String> members) {}
+
+    /**
+     * Clusters touched by a merge, root to members, and the previous roots that are now plain
+     * members, whose triplets describe clusters that no longer exist.
+     */
+    public record Merged(Map<String, List<String>> clusters, Set<String> supersededRoots) {}
+}
@@ -0,0 +1,256 @@
+package com.support.analyzer.spring_server.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import com.support.analyzer.spring_server.entity.IngestRun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Zero-downtime triplet index rebuilds. A full run writes its triplets into a fresh versioned
+ * index, support-ticket-triplets-&lt;run start&gt;-&lt;run id&gt;, created in the bulk-load profile, while
+ * inference keeps reading the live index through the elasticsearch.search.index alias. Once
+ * Phase 3 is done the new index is refreshed, given the live index's settings and validated by
+ * document count; only then is the alias moved to it, in one atomic update. Delta runs keep
+ * writing through the alias. So do full runs while a representative budget is set
+ * (dsu.representatives.maxPerRun or minClusterSize): the clusters it defers get no triplet in the
+ * new index, and swapping it in would drop the triplets they have in the live one.
+ * <p>
+ * Indices the alias moved away from are kept for rollback; beyond the newest
+ * elasticsearch.triplets.rebuild.retainIndices of them they are deleted after each swap. A live
+ * index that predates versioning, a concrete index under the alias's name, is cloned to a
+ * versioned name before the first swap deletes it, so it is kept like any other previous version.
+ */
+@Service
+public class TripletIndexManager {
+    private static final Logger log = LoggerFactory.getLogger(TripletIndexManager.class);
+
+    @Value("${elasticsearch.search.index}")
+    private String alias;
+
+    @Value("${elasticsearch.triplets.rebuild.enabled}")
+    private boolean enabled;
+
+    // The new index must hold at least this share of the live one's documents to be swapped in
+    @Value("${elasticsearch.triplets.rebuild.minCountRatio}")
+    private double minCountRatio;
+
+    // Previous versions kept after a swap; negative keeps all
+    @Value("${elasticsearch.triplets.rebuild.retainIndices}")
+    private int retainIndices;
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchService elasticsearchService;
+    private final ElasticsearchIndexBootstrap indexBootstrap;
+    private final RepresentativeSelector representativeSelector;
+    private final VectorStore vectorStore;
+
+    @Autowired
+    public TripletIndexManager(ElasticsearchClient client, ElasticsearchService elasticsearchService,
+                               ElasticsearchIndexBootstrap indexBootstrap, RepresentativeSelector representativeSelector,
+                               VectorStore vectorStore) {
+        this.client = client;
+        this.elasticsearchService = elasticsearchService;
+        this.indexBootstrap = indexBootstrap;
+        this.representativeSelector = representativeSelector;
+        this.vectorStore = vectorStore;
+    }
+
+    /**
+     * Whether a full run should rebuild the triplet index rather than write through the alias
+     */
+    public boolean isEnabled() {
+        if (!enabled) return false;
+        if (representativeSelector.isBudgeted()) {
+            log.warn("A representative budget is set; the full run writes triplets through {} instead of rebuilding it, " +
+                    "so the triplets of deferred clusters are kept", alias);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The versioned index a run rebuilds triplets into; the same for every attempt of the run
+     */
+    public String indexFor(IngestRun run) {
+        return indexBootstrap.versionedTripletIndex(startedAt(run), run.getRunId().substring(0, Math.min(8, run.getRunId().length())));
+    }
+
+    /**
+     * Point triplet writes at the run's versioned index, creating it if this is the run's first
+     * attempt at Phase 3.
+     */
+    public String beginRebuild(IngestRun run) throws IOException {
+        String index = indexFor(run);
+        if (!client.indices().exists(e -> e.index(index)).value()) {
+            ElasticsearchService.IndexProfile bulkLoad = elasticsearchService.bulkLoadProfile();
+            indexBootstrap.createTripletIndex(index, null,
+                    bulkLoad != null ? bulkLoad.refreshInterval() : null,
+                    bulkLoad != null ? bulkLoad.replicas() : null);
+        } else {
+            log.info("Resuming triplet rebuild into existing index {}", index);
+        }
+        elasticsearchService.writeTripletsTo(index);
+        log.info("Rebuilding triplets into {}; {} keeps serving until the swap", index, alias);
+        return index;
+    }
+
+    /**
+     * Validate the run's index and move the alias to it.
+     *
+     * @param expectedDocuments triplets Phase 3 recorded as indexed for the run
+     * @throws IllegalStateException if validation fails; the alias is left where it was
+     */
+    public void completeRebuild(IngestRun run, long expectedDocuments) throws IOException {
+        String index = indexFor(run);
+        long startTime = System.currentTimeMillis();
+        elasticsearchService.flush();
+
+        Set<String> live = aliasedIndices();
+        boolean legacyIndex = live.isEmpty() && client.indices().exists(e -> e.index(alias)).value();
+        String liveIndex = legacyIndex ? alias : live.stream().findFirst().orElse(null);
+
+        // Serve with the live index's settings, not the bulk-load ones
+        ElasticsearchService.IndexProfile profile = liveIndex != null ? elasticsearchService.currentProfile(liveIndex) : null;
+        if (profile != null && !"-1".equals(profile.refreshInterval())) {
+            elasticsearchService.applyProfile(index, profile);
+        } else if (elasticsearchService.bulkLoadProfile() != null) {
+            elasticsearchService.applyProfile(index, elasticsearchService.defaultProfile());
+        }
+        elasticsearchService.refresh(index);
+
+        long documents = client.count(c -> c.index(index)).count();
+        long liveDocuments = liveIndex != null ? client.count(c -> c.index(alias)).count() : 0;
+        if (documents < expectedDocuments) {
+            throw new IllegalStateException(String.format(
+                    "Rebuilt triplet index %s holds %d documents, expected %d; %s left on %s",
+                    index, documents, expectedDocuments, alias, liveIndex));
+        }
+        if (documents < liveDocuments * minCountRatio) {
+            throw new IllegalStateException(String.format(
+                    "Rebuilt triplet index %s holds %d documents, under %.0f%% of the %d in %s; %s left on %s",
+                    index, documents, minCountRatio * 100, liveDocuments, alias, alias, liveIndex));
+        }
+
+        List<Action> actions = new ArrayList<>();
+        actions.add(Action.of(a -> a.add(add -> add.index(index).alias(alias))));
+        for (String previous : live) {
+            if (!previous.equals(index)) {
+                actions.add(Action.of(a -> a.remove(remove -> remove.index(previous).alias(alias))));
+            }
+        }
+        if (legacyIndex) {
+            // An index cannot share its name with an alias; the unversioned one goes in the same
+            // atomic update, once a copy of it is safe
+            String preserved = preserveLegacyIndex(run);
+            log.warn("{} is a concrete index, not an alias; it is deleted as the alias takes its name, and kept as {}",
+                    alias, preserved);
+            actions.add(Action.of(a -> a.removeIndex(remove -> remove.index(alias))));
+        }
+        try {
+            client.indices().updateAliases(u -> u.actions(actions));
+        } catch (IOException | RuntimeException e) {
+            if (legacyIndex) {
+                setWriteBlock(alias, false);
+            }
+            throw e;
+        }
+        indexBootstrap.aliasMoved(alias, index);
+        elasticsearchService.writeTripletsTo(null);
+        elasticsearchService.invalidateSimilarityCache();
+        vectorStore.tripletIndexSwapped();
+        log.info("Swapped {} from {} to {} ({} documents, {} before) in {} ms",
+                alias, liveIndex, index, documents, liveDocuments, System.currentTimeMillis() - startTime);
+
+        collectGarbage();
+    }
+
+    /**
+     * Clone the unversioned live index to a versioned name that sorts just before the run's own
+     * index. Cloning needs the source write-blocked, which it stays until the swap deletes it; the
+     * copy is unblocked so the alias can be moved back to it.
+     *
+     * @return the copy's name
+     * @throws IllegalStateException if the clone was not acknowledged; the source is unblocked again
+     */
+    private String preserveLegacyIndex(IngestRun run) throws IOException {
+        String copy = indexBootstrap.versionedTripletIndex(startedAt(run).minusSeconds(1), "legacy");
+        setWriteBlock(alias, true);
+        try {
+            if (!client.indices().exists(e -> e.index(copy)).value()) {
+                if (!client.indices().clone(c -> c.index(alias).target(copy)).shardsAcknowledged()) {
+                    throw new IllegalStateException("Cloning " + alias + " to " + copy + " was not acknowledged; " + alias + " left in place");
+                }
+            }
+            setWriteBlock(copy, false);
+        } catch (IOException | RuntimeException e) {
+            setWriteBlock(alias, false);
+            throw e;
+        }
+        return copy;
+    }
+
+    private void setWriteBlock(String index, boolean blocked) throws IOException {
+        client.indices().putSettings(p -> p
+                .index(index)
+                .settings(settings -> settings.blocks(blocks -> blocks.write(blocked))));
+    }
+
+    private static LocalDateTime startedAt(IngestRun run) {
+        return run.getStartedAt() != null ? run.getStartedAt() : LocalDateTime.now();
+    }
+
+    /**
+     * Send triplet writes back through the alias. The run's index is left for a resumed attempt
+     * or for garbage collection.
+     */
+    public void endRebuild() {
+        elasticsearchService.writeTripletsTo(null);
+    }
+
+    /**
+     * Delete versioned triplet indices the alias does not point to, beyond the newest retainIndices
+     *
+     * @return indices deleted
+     */
+    public int collectGarbage() {
+        if (retainIndices < 0) return 0;
+        try {
+            Set<String> live = aliasedIndices();
+            String prefix = indexBootstrap.versionedTripletIndexPrefix();
+            List<String> previous = new ArrayList<>();
+            for (String index : client.indices().get(g -> g.index(prefix + "*").allowNoIndices(true)).result().keySet()) {
+                if (index.startsWith(prefix) && !live.contains(index)) {
+                    previous.add(index);
+                }
+            }
+            // Names sort chronologically; newest first
+            previous.sort(Comparator.reverseOrder());
+            if (previous.size() <= retainIndices) return 0;
+
+            List<String> expired = previous.subList(retainIndices, previous.size());
+            client.indices().delete(d -> d.index(expired));
+            log.info("Deleted {} old triplet indices {}; kept {}", expired.size(), expired,
+                    previous.subList(0, retainIndices));
+            return expired.size();
+        } catch (Exception e) {
+            log.warn("Could not garbage-collect old triplet indices: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // Indices the alias points to; empty if it does not exist (yet, or because the name is a concrete index)
+    private Set<String> aliasedIndices() throws IOException {
+        if (!client.indices().existsAlias(e -> e.name(alias)).value()) {
+            return Set.of();
+        }
+        return new HashSet<>(client.indices().getAlias(g -> g.name(alias)).result().keySet());
+    }
+}
@@ -0,0 +1,83 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.dto.ElasticsearchSimilarInference;
+import com.support.analyzer.spring_server.dto.ElasticsearchSimilarTicket;
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.entity.TicketTriplet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Similarity search over the two vector indices: ticket embeddings (the deduplication index,
+ * clustered in Phase 2) and triplet issue embeddings (the search index, queried by inference).
+ * Selected with vectorstore.backend; Elasticsearch is the default and always the system of record.
+ */
+public interface VectorStore {
+
+    /**
+     * Writes may be buffered until {@link #flush()}
+     *
+     * @return completes with true once the document is in Elasticsearch, false if it was given up on
+     */
+    CompletableFuture<Boolean> indexEmbedding(String ticketId, Embedding embedding);
+
+    CompletableFuture<Boolean> indexTicketTripletWithEmbedding(TicketTriplet triplet, Embedding issueEmbedding);
+
+    /**
+     * Delete the triplets of the given tickets right away; tickets without one are ignored
+     *
+     * @throws IllegalStateException if any of them could not be deleted
+     */
+    void deleteTriplets(Collection<String> ticketIds);
+
+    /**
+     * Send buffered writes and wait for them, up to a timeout; check each write's future for
+     * whether it landed
+     */
+    void flush();
+
+    /**
+     * Whether a write has completed successfully by now, e.g. right after {@link #flush()}
+     */
+    static boolean isWritten(CompletableFuture<Boolean> write) {
+        return write.isDone() && !write.isCompletedExceptionally() && write.join();
+    }
+
+    /**
+     * Called once an ingest run has written everything, for stores that persist local state
+     */
+    default void checkpoint() {
+    }
+
+    /**
+     * Called once the triplet alias points at a rebuilt index, for stores that keep a copy of it
+     */
+    default void tripletIndexSwapped() {
+    }
+
+    /**
+     * Tickets without a stored embedding are absent from the result
+     *
+     * @throws IllegalStateException if the lookup fails, rather than leaving tickets out
+     */
+    Map<String, Embedding> getEmbeddingsByTicketIds(Collection<String> ticketIds);
+
+    /**
+     * @return neighbours per query ticket, excluding the ticket itself
+     * @throws IllegalStateException if any search fails, rather than returning no neighbours for it
+     */
+    Map<String, List<ElasticsearchSimilarTicket>> findKNearestNeighborsBatch(Map<String, Embedding> queries, int k);
+
+    List<ElasticsearchSimilarInference> findSimilarTriplets(Embedding queryEmbedding, int k);
+
+    /**
+     * {@link #findSimilarTriplets} for callers that must not block; stores that can only search
+     * synchronously run it on the calling thread
+     */
+    default CompletableFuture<List<ElasticsearchSimilarInference>> findSimilarTripletsAsync(Embedding queryEmbedding, int k) {
+        return CompletableFuture.completedFuture(findSimilarTriplets(queryEmbedding, k));
+    }
+}
@@ -0,0 +1,147 @@
+// AdaptiveBatchSizer.java
+package com.support.analyzer.spring_server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batch size controller for one stage. Tracks a moving average of the per-item latency of
+ * completed batches and steers the size toward the target batch latency, at most 25% per step.
+ * A batch with too many failed items, or any new rate-limit response, halves the size and
+ * holds it there for a few batches before growing again.
+ */
+public class AdaptiveBatchSizer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final double MAX_STEP = 0.25;
+    private static final int BACKOFF_HOLD_BATCHES = 3;
+
+    private final String name;
+    private final boolean enabled;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatencyMs;
+    private final double failureRateThreshold;
+
+    private final AtomicInteger current;
+    private double perItemLatencyMs;
+    private long lastThrottleCount;
+    private int holdBatches;
+
+    private final AtomicLong observedBatches = new AtomicLong();
+    private final AtomicLong increases = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    private final AtomicLong backoffs = new AtomicLong();
+
+    /**
+     * @param enabled false pins the size at initialSize and ignores all observations
+     */
+    public AdaptiveBatchSizer(String name, boolean enabled, int initialSize, int minSize, int maxSize,
+                              long targetLatencyMs, double failureRateThreshold) {
+        this.name = name;
+        this.enabled = enabled;
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatencyMs = targetLatencyMs;
+        this.failureRateThreshold = failureRateThreshold;
+        this.current = new AtomicInteger(enabled ? clamp(initialSize) : Math.max(1, initialSize));
+    }
+
+    public int getBatchSize() {
+        return current.get();
+    }
+
+    /**
+     * Feed the outcome of one batch.
+     *
+     * @param batchSize     items in the batch
+     * @param latencyMs     time spent in the downstream call, as measured by PerfStats
+     * @param failedItems   items the downstream did not return a usable result for
+     * @param throttleCount running total of rate-limit responses from the downstream (0 if it has none)
+     */
+    public synchronized void record(int batchSize, long latencyMs, int failedItems, long throttleCount) {
+        if (!enabled || batchSize <= 0) return;
+        observedBatches.incrementAndGet();
+
+        boolean throttled = throttleCount > lastThrottleCount;
+        lastThrottleCount = Math.max(lastThrottleCount, throttleCount);
+        double failureRate = (double) failedItems / batchSize;
+
+        int size = current.get();
+        if (throttled || failureRate > failureRateThreshold) {
+            int next = clamp(size / 2);
+            holdBatches = BACKOFF_HOLD_BATCHES;
+            backoffs.incrementAndGet();
+            if (next != size) {
+                current.set(next);
+                LOGGER.info("Batch size for {} backed off {} -> {} ({}, {} of {} items failed)",
+                        name, size, next, throttled ? "rate limited" : "failures", failedItems, batchSize);
+            }
+            return;
+        }
+
+        double perItem = (double) latencyMs / batchSize;
+        perItemLatencyMs = perItemLatencyMs == 0 ? perItem : EWMA_WEIGHT * perItem + (1 - EWMA_WEIGHT) * perItemLatencyMs;
+
+        if (holdBatches > 0) {
+            holdBatches--;
+            return;
+        }
+        if (perItemLatencyMs <= 0) return;
+
+        int desired = (int) Math.round(targetLatencyMs / perItemLatencyMs);
+        int lower = (int) Math.floor(size * (1 - MAX_STEP));
+        int upper = (int) Math.ceil(size * (1 + MAX_STEP));
+        // A batch cut short by the linger timeout says nothing about how large a batch could be
+        if (batchSize < size * 0.8) {
+            upper = size;
+        }
+        int next = clamp(Math.max(lower, Math.min(upper, desired)));
+        if (next > size) {
+            increases.incrementAndGet();
+        } else if (next < size) {
+            decreases.incrementAndGet();
+        }
+        if (next != size) {
+            current.set(next);
+            LOGGER.debug("Batch size for {} {} -> {} (avg {} ms/item, target {} ms/batch)",
+                    name, size, next, Math.round(perItemLatencyMs), targetLatencyMs);
+        }
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    public String getName() { return name; }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stage", name);
+        stats.put("adaptive", enabled);
+        stats.put("batchSize", current.get());
+        stats.put("minBatchSize", minSize);
+        stats.put("maxBatchSize", maxSize);
+        stats.put("targetLatencyMs", targetLatencyMs);
+        synchronized (this) {
+            stats.put("avgItemLatencyMs", Math.round(perItemLatencyMs * 10) / 10.0);
+        }
+        stats.put("observedBatches", observedBatches.get());
+        stats.put("increases", increases.get());
+        stats.put("decreases", decreases.get());
+        stats.put("backoffs", backoffs.get());
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchSizer{%s, size=%d, range=[%d,%d], target=%dms, batches=%d, up=%d, down=%d, backoffs=%d}",
+                name, current.get(), minSize, maxSize, targetLatencyMs, observedBatches.get(),
+                increases.get(), decreases.get(), backoffs.get());
+    }
+}
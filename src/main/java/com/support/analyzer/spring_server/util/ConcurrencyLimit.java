@@ -0,0 +1,175 @@
+// ConcurrencyLimit.java
+package com.support.analyzer.spring_server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent calls to one downstream service. With virtual threads the
+ * caller count is no longer bounded by a pool size, so this is what keeps Flask, the LLM
+ * router or Elasticsearch from being flooded.
+ * <p>
+ * {@link #execute} and {@link #executeAsync} wait in one FIFO queue: a caller that finds no
+ * permit free, or others already waiting, queues a future, which is completed by whichever call
+ * releases the next permit. Sync callers park on that future; async callers chain onto it.
+ */
+public class ConcurrencyLimit {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyLimit.class);
+
+    private final String name;
+    private final int limit;
+    private final long timeoutSeconds;
+    // Both guarded by this; a released permit goes straight to the oldest waiter, if any
+    private int available;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    public ConcurrencyLimit(String name, int limit, long timeoutSeconds) {
+        this.name = name;
+        this.limit = Math.max(1, limit);
+        this.timeoutSeconds = timeoutSeconds;
+        this.available = this.limit;
+        LOGGER.info("Limiting {} to {} concurrent requests", name, this.limit);
+    }
+
+    /**
+     * Run the operation once a permit is free. Returns the fallback if no permit frees up
+     * within the timeout or the thread is interrupted while waiting.
+     */
+    public <T> T execute(Supplier<T> operation, T fallback) {
+        if (!awaitPermit()) {
+            return fallback;
+        }
+        try {
+            return operation.get();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * {@link #execute(Supplier, Object)} for callers that must not mistake a dropped request for
+     * an empty result
+     *
+     * @throws IllegalStateException if no permit frees up within the timeout or the thread is interrupted
+     */
+    public <T> T executeOrThrow(Supplier<T> operation) {
+        if (!awaitPermit()) {
+            throw new IllegalStateException(Thread.currentThread().isInterrupted()
+                    ? "Interrupted while waiting for a " + name + " permit"
+                    : "No " + name + " permit within " + timeoutSeconds + " seconds");
+        }
+        try {
+            return operation.get();
+        } finally {
+            release();
+        }
+    }
+
+    // Park until a permit is handed over; false on timeout or interrupt, with nothing held
+    private boolean awaitPermit() {
+        CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get(timeoutSeconds, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            // Only abandon() fails the future, so ExecutionException does not happen here
+            abandon(permit);
+            LOGGER.warn("Failed to acquire a {} permit within {} seconds. Request dropped.", name, timeoutSeconds);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(permit);
+            LOGGER.error("Thread interrupted while waiting for a {} permit", name);
+            return false;
+        }
+    }
+
+    /**
+     * Start the asynchronous operation once a permit is free and hold the permit until its
+     * future completes. Completes with the fallback if no permit frees up within the timeout.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> operation, T fallback) {
+        CompletableFuture<Void> permit = acquire();
+        if (permit.isDone()) {
+            return runHoldingPermit(operation);
+        }
+        return permit.orTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .handle((granted, timeout) -> timeout)
+                .thenCompose(timeout -> {
+                    if (timeout != null) {
+                        abandon(permit);
+                        LOGGER.warn("Failed to acquire a {} permit within {} seconds. Request dropped.", name, timeoutSeconds);
+                        return CompletableFuture.completedFuture(fallback);
+                    }
+                    return runHoldingPermit(operation);
+                });
+    }
+
+    private <T> CompletableFuture<T> runHoldingPermit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException e) {
+            release();
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, error) -> release());
+    }
+
+    // A completed future when a permit is free and nobody is queued ahead, else a queued waiter
+    private synchronized CompletableFuture<Void> acquire() {
+        if (waiters.isEmpty() && available > 0) {
+            available--;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    // Withdraw a waiter that gave up; a permit granted to it in the meantime is passed on
+    private void abandon(CompletableFuture<Void> waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        if (!waiter.cancel(false) && !waiter.isCompletedExceptionally()) {
+            release();
+        }
+    }
+
+    // Hand the permit to the oldest waiter still waiting. Completed outside the lock, since an
+    // async waiter starts its operation on this thread
+    private void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    public String getName() { return name; }
+    public int getLimit() { return limit; }
+    public synchronized int getInFlight() { return limit - available; }
+    public synchronized int getWaiting() { return waiters.size(); }
+
+    @Override
+    public String toString() {
+        return String.format("Limit{%s, limit=%d, inFlight=%d, waiting=%d}", name, limit, getInFlight(), getWaiting());
+    }
+}
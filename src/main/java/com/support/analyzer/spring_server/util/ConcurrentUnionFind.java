@@ -0,0 +1,92 @@
+// ConcurrentUnionFind.java
+package com.support.analyzer.spring_server.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find over dense int ids 0..capacity-1, safe to call from any number of threads.
+ * Parents live in an AtomicIntegerArray. A union links one root under the other with a single
+ * CAS and retries if either root changed meanwhile; find() halves paths with CAS as well, and a
+ * lost CAS there only means another thread compressed the path first.
+ *
+ * Linking is randomized rather than by rank: each id has a fixed pseudo-random priority and the
+ * lower-priority root goes under the higher. That keeps trees shallow in expectation without a
+ * rank array that would need to change atomically together with the parent.
+ */
+public class ConcurrentUnionFind {
+    private final AtomicIntegerArray parent;
+    private final int seed;
+
+    public ConcurrentUnionFind(int capacity) {
+        this(capacity, 0x9E3779B9);
+    }
+
+    public ConcurrentUnionFind(int capacity, int seed) {
+        this.parent = new AtomicIntegerArray(capacity);
+        this.seed = seed;
+        for (int i = 0; i < capacity; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return parent.length();
+    }
+
+    public int find(int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) return x;
+            int grandparent = parent.get(p);
+            if (p != grandparent) {
+                parent.compareAndSet(x, p, grandparent);
+            }
+            x = grandparent;
+        }
+    }
+
+    /**
+     * @return true if this call joined two different sets
+     */
+    public boolean union(int x, int y) {
+        while (true) {
+            int rootX = find(x);
+            int rootY = find(y);
+            if (rootX == rootY) return false;
+
+            if (outranks(rootX, rootY)) {
+                int swap = rootX;
+                rootX = rootY;
+                rootY = swap;
+            }
+            // Only succeeds while rootX is still a root; otherwise someone linked it first, so retry
+            if (parent.compareAndSet(rootX, rootX, rootY)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean outranks(int a, int b) {
+        int priorityA = priority(a);
+        int priorityB = priority(b);
+        return priorityA != priorityB ? priorityA > priorityB : a > b;
+    }
+
+    // murmur3 finalizer: a fixed, well-mixed priority per id
+    private int priority(int id) {
+        int h = id ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Group ids 0..size-1 by set. Only meaningful once no union is in progress.
+     */
+    public IntUnionFind.Clusters clusters(int size) {
+        return IntUnionFind.Clusters.group(size, this::find);
+    }
+}
@@ -0,0 +1,120 @@
+// ContentDeduplicator.java
+package com.support.analyzer.spring_server.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses work items with identical content onto one canonical item. The first item seen for a
+ * fingerprint goes through the expensive processing; later ones either wait on the in-flight
+ * canonical or are answered straight from a bounded cache of finished results.
+ *
+ * @param <W> the work item
+ * @param <R> the result shared with the duplicates
+ */
+public class ContentDeduplicator<W, R> {
+
+    public enum Outcome {
+        // First of its fingerprint: process it
+        CANONICAL,
+        // Attached to an in-flight canonical; returned by complete() or fail()
+        ATTACHED,
+        // A result for the fingerprint was already cached
+        RESOLVED
+    }
+
+    public record Admission<R>(Outcome outcome, R result) {}
+
+    private final Map<String, List<W>> inFlight = new HashMap<>();
+    private final Map<String, R> results;
+
+    private final AtomicLong canonical = new AtomicLong();
+    private final AtomicLong attached = new AtomicLong();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param resultCacheSize finished results kept for late duplicates; least recently used are evicted
+     */
+    public ContentDeduplicator(int resultCacheSize) {
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, R> eldest) {
+                return size() > resultCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Fingerprint of a message list, insensitive to case, surrounding whitespace and whitespace runs
+     */
+    public static String fingerprint(List<String> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String message : messages) {
+                String normalized = message == null ? "" : message.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+                digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0); // message boundary, so ["ab"] and ["a", "b"] differ
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public synchronized Admission<R> admit(String fingerprint, W work) {
+        R result = results.get(fingerprint);
+        if (result != null) {
+            resolved.incrementAndGet();
+            return new Admission<>(Outcome.RESOLVED, result);
+        }
+        List<W> waiting = inFlight.get(fingerprint);
+        if (waiting != null) {
+            waiting.add(work);
+            attached.incrementAndGet();
+            return new Admission<>(Outcome.ATTACHED, null);
+        }
+        inFlight.put(fingerprint, new ArrayList<>());
+        canonical.incrementAndGet();
+        return new Admission<>(Outcome.CANONICAL, null);
+    }
+
+    /**
+     * Record the canonical's result and hand back the duplicates that were waiting on it
+     */
+    public synchronized List<W> complete(String fingerprint, R result) {
+        results.put(fingerprint, result);
+        List<W> waiting = inFlight.remove(fingerprint);
+        return waiting == null ? List.of() : waiting;
+    }
+
+    /**
+     * The canonical was dropped; its waiting duplicates are dropped with it. A later duplicate
+     * becomes a new canonical and gets another attempt.
+     */
+    public synchronized List<W> fail(String fingerprint) {
+        List<W> waiting = inFlight.remove(fingerprint);
+        if (waiting == null) return List.of();
+        dropped.addAndGet(waiting.size());
+        return waiting;
+    }
+
+    public long getCanonical() { return canonical.get(); }
+    public long getDuplicates() { return attached.get() + resolved.get(); }
+    public long getResolvedFromCache() { return resolved.get(); }
+    public long getDropped() { return dropped.get(); }
+
+    public double getDuplicateRatio() {
+        long total = canonical.get() + getDuplicates();
+        return total == 0 ? 0 : (double) getDuplicates() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Dedup{canonical=%d, duplicates=%d (%.1f%%), fromCache=%d, droppedWithCanonical=%d}",
+                getCanonical(), getDuplicates(), getDuplicateRatio() * 100, getResolvedFromCache(), getDropped());
+    }
+}
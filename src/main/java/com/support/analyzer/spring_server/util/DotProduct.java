@@ -0,0 +1,77 @@
+// DotProduct.java
+package com.support.analyzer.spring_server.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Dot product kernel shared by the in-memory vector indexes, on the incubating Vector API when
+ * asked for and available, else a scalar loop.
+ *
+ * VectorDotProduct is only compiled by the vector-api Maven profile, so it is bound reflectively:
+ * the Vector API is used when that class was built in and the JVM runs with the incubator module.
+ */
+final class DotProduct {
+    // VectorDotProduct must not even be loaded unless the incubator module is resolved
+    private static final MethodHandle VECTOR_DOT = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            ? findVectorDot() : null;
+    static final boolean VECTOR_API_AVAILABLE = VECTOR_DOT != null;
+
+    private DotProduct() {
+    }
+
+    /**
+     * Dot product of a[aOffset .. aOffset+length) and b[bOffset .. bOffset+length)
+     *
+     * @param vectorized use the Vector API; only pass true when VECTOR_API_AVAILABLE
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length, boolean vectorized) {
+        if (vectorized) {
+            try {
+                return (float) VECTOR_DOT.invokeExact(a, aOffset, b, bOffset, length);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Vector API dot product failed", e);
+            }
+        }
+        // Four independent accumulators: the JIT will not reorder a single float sum, so this
+        // is what lets the adds overlap in the pipeline
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int end = length - 3; i < end; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static MethodHandle findVectorDot() {
+        try {
+            return MethodHandles.lookup().findStatic(
+                    Class.forName(DotProduct.class.getPackageName() + ".VectorDotProduct"), "dot",
+                    MethodType.methodType(float.class, float[].class, int.class, float[].class, int.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            // Built without the vector-api profile
+            return null;
+        }
+    }
+
+    /**
+     * Write the values, scaled to unit length, into target at targetOffset; a zero vector stays zero
+     */
+    static void normalizeInto(float[] values, float[] target, int targetOffset) {
+        double norm = 0;
+        for (float value : values) {
+            norm += value * value;
+        }
+        float scale = norm == 0 ? 0f : (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < values.length; i++) {
+            target[targetOffset + i] = values[i] * scale;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+// HnswIndex.java
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory HNSW graph (Malkov and Yashunin) for approximate cosine kNN over string-keyed
+ * embeddings. Vectors are L2-normalized on insert into one row-major float[], so similarity is a
+ * dot product. Searches run concurrently under a read lock; inserts take the write lock.
+ *
+ * Re-adding an id with a changed vector tombstones its old node and inserts a new one: deleted
+ * nodes keep routing searches but never appear in results. Once they make up more than a quarter
+ * of the nodes the graph is compacted, relinking the live nodes only. Re-adding an unchanged vector
+ * is a no-op. Scores are on the Elasticsearch cosine scale, (1 + cosine) / 2, so they can be
+ * compared with kNN search hits.
+ */
+public class HnswIndex {
+    private static final int SNAPSHOT_MAGIC = 0x484E5357; // "HNSW"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_LEVEL = 16;
+    // Compact once this share of the nodes are tombstones; below MIN_COMPACT_NODES it is not worth it
+    private static final double MAX_DELETED_FRACTION = 0.25;
+    private static final int MIN_COMPACT_NODES = 1024;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final boolean vectorized;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors;
+    // links[node][level] = {count, neighbour, neighbour, ...}
+    private int[][][] links;
+    private String[] ids;
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> nodeById = new HashMap<>();
+    private int size;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+    private int compactions;
+
+    /**
+     * @param m              links per node on the upper levels; level 0 keeps 2*m
+     * @param efConstruction candidate list size while inserting; higher builds a better graph, slower
+     * @param useVectorApi   compute dot products with the incubating Vector API when available
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, boolean useVectorApi) {
+        this.dimensions = dimensions;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.vectorized = useVectorApi && DotProduct.VECTOR_API_AVAILABLE;
+        this.vectors = new float[16 * dimensions];
+        this.links = new int[16][][];
+        this.ids = new String[16];
+    }
+
+    public record Result(String id, double score) {}
+
+    private record Candidate(int node, float distance) {}
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::distance);
+    private static final Comparator<Candidate> FARTHEST_FIRST = NEAREST_FIRST.reversed();
+
+    /**
+     * @throws IllegalArgumentException if the embedding does not have this index's dimensions
+     */
+    public void add(String id, Embedding embedding) {
+        if (embedding.dimensions() != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + embedding.dimensions());
+        }
+        float[] normalized = new float[dimensions];
+        DotProduct.normalizeInto(embedding.values(), normalized, 0);
+
+        lock.writeLock().lock();
+        try {
+            Integer previous = nodeById.get(id);
+            if (previous != null) {
+                if (Arrays.equals(normalized, 0, dimensions, vectors, previous * dimensions, (previous + 1) * dimensions)) {
+                    return;
+                }
+                deleted.set(previous);
+            }
+            int node = allocate(id, normalized, 0, randomLevel());
+            nodeById.put(id, node);
+            link(node);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an entry; its node is tombstoned until the next compaction
+     *
+     * @return whether the id was present
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeById.remove(id);
+            if (node == null) return false;
+            deleted.set(node);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The k nearest live entries to the query, best first
+     *
+     * @param ef candidate list size; raised to k if smaller. Higher is slower and more accurate.
+     */
+    public List<Result> search(Embedding query, int k, int ef) {
+        if (query.dimensions() != dimensions) return List.of();
+        float[] normalized = new float[dimensions];
+        DotProduct.normalizeInto(query.values(), normalized, 0);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) return List.of();
+            int entry = entryPoint;
+            for (int level = topLevel; level > 0; level--) {
+                entry = greedyClosest(normalized, entry, level);
+            }
+            PriorityQueue<Candidate> found = searchLevel(normalized, entry, Math.max(ef, k), 0);
+            List<Candidate> sorted = new ArrayList<>(found);
+            sorted.sort(NEAREST_FIRST);
+
+            List<Result> results = new ArrayList<>(Math.min(k, sorted.size()));
+            for (Candidate candidate : sorted) {
+                if (deleted.get(candidate.node())) continue;
+                results.add(new Result(ids[candidate.node()], (2.0 - candidate.distance()) / 2.0));
+                if (results.size() == k) break;
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The stored (normalized) embedding of a live entry, or null
+     */
+    public Embedding get(String id) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeById.get(id);
+            if (node == null) return null;
+            return Embedding.of(Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return nodeById.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("entries", nodeById.size());
+            stats.put("nodes", size);
+            stats.put("deletedNodes", deleted.cardinality());
+            stats.put("compactions", compactions);
+            stats.put("levels", topLevel + 1);
+            stats.put("dimensions", dimensions);
+            stats.put("m", m);
+            stats.put("efConstruction", efConstruction);
+            stats.put("vectorApi", vectorized);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param normalized holds the unit-length vector at offset
+     */
+    private int allocate(String id, float[] normalized, int offset, int level) {
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            vectors = Arrays.copyOf(vectors, capacity * dimensions);
+            links = Arrays.copyOf(links, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        int node = size++;
+        System.arraycopy(normalized, offset, vectors, node * dimensions, dimensions);
+        ids[node] = id;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxLinks(l) + 1];
+        }
+        return node;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier));
+    }
+
+    /**
+     * Relink the live nodes into a fresh graph once tombstones pass MAX_DELETED_FRACTION. Each node
+     * keeps its level, so the graph has the same shape a build of the live entries would have.
+     * Caller holds the write lock.
+     */
+    private void compactIfNeeded() {
+        int deletedNodes = deleted.cardinality();
+        if (size < MIN_COMPACT_NODES || deletedNodes <= size * MAX_DELETED_FRACTION) return;
+
+        float[] oldVectors = vectors;
+        int[][][] oldLinks = links;
+        String[] oldIds = ids;
+        BitSet oldDeleted = (BitSet) deleted.clone();
+        int oldSize = size;
+
+        int capacity = Math.max(16, Integer.highestOneBit(oldSize - deletedNodes) * 2);
+        vectors = new float[capacity * dimensions];
+        links = new int[capacity][][];
+        ids = new String[capacity];
+        deleted.clear();
+        nodeById.clear();
+        size = 0;
+        entryPoint = -1;
+        topLevel = -1;
+        for (int old = 0; old < oldSize; old++) {
+            if (oldDeleted.get(old)) continue;
+            int node = allocate(oldIds[old], oldVectors, old * dimensions, oldLinks[old].length - 1);
+            nodeById.put(oldIds[old], node);
+            link(node);
+        }
+        compactions++;
+    }
+
+    private void link(int node) {
+        int level = links[node].length - 1;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return;
+        }
+        float[] query = vectors;
+        int offset = node * dimensions;
+
+        int entry = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            entry = greedyClosest(query, offset, entry, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            List<Candidate> candidates = new ArrayList<>(searchLevel(query, offset, entry, efConstruction, l));
+            candidates.sort(NEAREST_FIRST);
+            for (int neighbor : selectNeighbors(candidates, m)) {
+                addLink(node, neighbor, l);
+                addLink(neighbor, node, l);
+            }
+            entry = candidates.get(0).node();
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * The neighbour selection heuristic: a candidate is kept only if it is closer to the base
+     * node than to every candidate already kept, which spreads links across directions.
+     *
+     * @param candidates sorted nearest first by distance to the base node
+     */
+    private int[] selectNeighbors(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        for (Candidate candidate : candidates) {
+            if (count == selected.length) break;
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(candidate.node(), selected[i]) < candidate.distance()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate.node();
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] list = links[from][level];
+        int count = list[0];
+        for (int i = 1; i <= count; i++) {
+            if (list[i] == to) return;
+        }
+        if (count < list.length - 1) {
+            list[count + 1] = to;
+            list[0] = count + 1;
+            return;
+        }
+        // Full: re-select among the existing links plus the new one
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new Candidate(list[i], distance(from, list[i])));
+        }
+        candidates.add(new Candidate(to, distance(from, to)));
+        candidates.sort(NEAREST_FIRST);
+        int[] selected = selectNeighbors(candidates, list.length - 1);
+        list[0] = selected.length;
+        System.arraycopy(selected, 0, list, 1, selected.length);
+    }
+
+    private int greedyClosest(float[] query, int entry, int level) {
+        return greedyClosest(query, 0, entry, level);
+    }
+
+    private int greedyClosest(float[] query, int offset, int entry, int level) {
+        int current = entry;
+        float currentDistance = distance(query, offset, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                float d = distance(query, offset, list[i]);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = list[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private PriorityQueue<Candidate> searchLevel(float[] query, int entry, int ef, int level) {
+        return searchLevel(query, 0, entry, ef, level);
+    }
+
+    /**
+     * Best-first search of one level from the entry node
+     *
+     * @return up to ef nearest nodes found, farthest at the head
+     */
+    private PriorityQueue<Candidate> searchLevel(float[] query, int offset, int entry, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> found = new PriorityQueue<>(FARTHEST_FIRST);
+
+        Candidate start = new Candidate(entry, distance(query, offset, entry));
+        frontier.add(start);
+        found.add(start);
+        visited.set(entry);
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (found.size() >= ef && closest.distance() > found.peek().distance()) break;
+
+            int[] list = links[closest.node()][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbor = list[i];
+                if (visited.get(neighbor)) continue;
+                visited.set(neighbor);
+                float d = distance(query, offset, neighbor);
+                if (found.size() < ef || d < found.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbor, d);
+                    frontier.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+        return found;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    // 1 - cosine, in [0, 2]
+    private float distance(float[] query, int offset, int node) {
+        return 1f - DotProduct.dot(query, offset, vectors, node * dimensions, dimensions, vectorized);
+    }
+
+    private float distance(int nodeA, int nodeB) {
+        return distance(vectors, nodeA * dimensions, nodeB);
+    }
+
+    /**
+     * Write the whole graph. Holds the read lock, so searches continue but inserts wait.
+     */
+    public void save(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(topLevel);
+
+            ByteBuffer vector = ByteBuffer.allocate(dimensions * Float.BYTES);
+            for (int node = 0; node < size; node++) {
+                byte[] id = ids[node].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(id.length);
+                out.write(id);
+                out.writeBoolean(deleted.get(node));
+
+                vector.clear();
+                vector.asFloatBuffer().put(vectors, node * dimensions, dimensions);
+                out.write(vector.array());
+
+                out.writeInt(links[node].length);
+                for (int[] list : links[node]) {
+                    out.writeInt(list[0]);
+                    for (int i = 1; i <= list[0]; i++) {
+                        out.writeInt(list[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read a graph written by {@link #save}
+     *
+     * @throws IOException if the stream is not a snapshot of this format
+     */
+    public static HnswIndex load(DataInputStream in, boolean useVectorApi) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not an HNSW snapshot of version " + SNAPSHOT_VERSION);
+        }
+        int dimensions = in.readInt();
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        HnswIndex index = new HnswIndex(dimensions, m, efConstruction, useVectorApi);
+
+        int size = in.readInt();
+        int capacity = Math.max(16, size);
+        index.vectors = new float[capacity * dimensions];
+        index.links = new int[capacity][][];
+        index.ids = new String[capacity];
+        index.entryPoint = in.readInt();
+        index.topLevel = in.readInt();
+
+        ByteBuffer vector = ByteBuffer.allocate(dimensions * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            byte[] id = new byte[in.readInt()];
+            in.readFully(id);
+            index.ids[node] = new String(id, StandardCharsets.UTF_8);
+            if (in.readBoolean()) {
+                index.deleted.set(node);
+            } else {
+                index.nodeById.put(index.ids[node], node);
+            }
+
+            in.readFully(vector.array());
+            vector.clear();
+            vector.asFloatBuffer().get(index.vectors, node * dimensions, dimensions);
+
+            int levels = in.readInt();
+            index.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] list = new int[index.maxLinks(l) + 1];
+                list[0] = in.readInt();
+                for (int i = 1; i <= list[0]; i++) {
+                    list[i] = in.readInt();
+                }
+                index.links[node][l] = list;
+            }
+        }
+        index.size = size;
+        return index;
+    }
+}
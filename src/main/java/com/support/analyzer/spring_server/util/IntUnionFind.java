@@ -0,0 +1,137 @@
+// IntUnionFind.java
+package com.support.analyzer.spring_server.util;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Union-find over dense int ids 0..size-1, on primitive arrays. find() is iterative with path
+ * halving and union() is by rank, so neither allocates nor recurses. Elements can be added while
+ * in use; the arrays grow by doubling.
+ */
+public class IntUnionFind {
+    private int[] parent;
+    private byte[] rank; // rank stays below log2(n), so a byte is plenty
+    private int size;
+    private int components;
+
+    public IntUnionFind(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.parent = new int[capacity];
+        this.rank = new byte[capacity];
+    }
+
+    /**
+     * Add a singleton set and return its id, which is always the previous size()
+     */
+    public int add() {
+        if (size == parent.length) {
+            int capacity = parent.length * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            rank = Arrays.copyOf(rank, capacity);
+        }
+        parent[size] = size;
+        components++;
+        return size++;
+    }
+
+    public int find(int x) {
+        int[] p = parent;
+        while (p[x] != x) {
+            p[x] = p[p[x]]; // path halving: point at the grandparent while walking up
+            x = p[x];
+        }
+        return x;
+    }
+
+    /**
+     * @return true if x and y were in different sets
+     */
+    public boolean union(int x, int y) {
+        int rootX = find(x);
+        int rootY = find(y);
+        if (rootX == rootY) return false;
+
+        if (rank[rootX] < rank[rootY]) {
+            parent[rootX] = rootY;
+        } else if (rank[rootX] > rank[rootY]) {
+            parent[rootY] = rootX;
+        } else {
+            parent[rootY] = rootX;
+            rank[rootX]++;
+        }
+        components--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int components() {
+        return components;
+    }
+
+    /**
+     * Group all elements by set in one linear pass, as a counting sort over their roots.
+     */
+    public Clusters clusters() {
+        return Clusters.group(size, this::find);
+    }
+
+    /**
+     * Clusters in compressed form: members of cluster c are members[offsets[c] .. offsets[c+1]).
+     */
+    public record Clusters(int[] roots, int[] offsets, int[] members) {
+
+        /**
+         * Group elements 0..size-1 by the root each maps to
+         */
+        static Clusters group(int size, IntUnaryOperator rootOf) {
+            int[] roots = new int[size];
+            int[] clusterOf = new int[size];
+            Arrays.fill(clusterOf, -1);
+            int[] clusterRoots = new int[size];
+            int[] counts = new int[size + 1];
+
+            int clusterCount = 0;
+            for (int i = 0; i < size; i++) {
+                int root = rootOf.applyAsInt(i);
+                roots[i] = root;
+                if (clusterOf[root] < 0) {
+                    clusterRoots[clusterCount] = root;
+                    clusterOf[root] = clusterCount++;
+                }
+                counts[clusterOf[root] + 1]++;
+            }
+
+            // Prefix sums turn the counts into each cluster's start offset
+            for (int c = 0; c < clusterCount; c++) {
+                counts[c + 1] += counts[c];
+            }
+            int[] offsets = Arrays.copyOf(counts, clusterCount + 1);
+            int[] members = new int[size];
+            int[] next = Arrays.copyOf(counts, clusterCount);
+            for (int i = 0; i < size; i++) {
+                members[next[clusterOf[roots[i]]]++] = i;
+            }
+            return new Clusters(Arrays.copyOf(clusterRoots, clusterCount), offsets, members);
+        }
+
+        public int count() {
+            return roots.length;
+        }
+
+        public int root(int cluster) {
+            return roots[cluster];
+        }
+
+        public int size(int cluster) {
+            return offsets[cluster + 1] - offsets[cluster];
+        }
+
+        public int member(int cluster, int index) {
+            return members[offsets[cluster] + index];
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// LocalKnnIndex.java
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Exact all-pairs top-k cosine search over an in-memory set of embeddings. Rows are L2-normalized
+ * on insert and packed row-major into one float[], so cosine similarity is a plain dot product
+ * over contiguous memory. The search walks query blocks in parallel on a fork/join pool and,
+ * inside a block, streams candidate blocks small enough to stay in cache while every query of
+ * the block is scored against them.
+ *
+ * Scores are reported on the Elasticsearch cosine scale, (1 + cosine) / 2, so thresholds tuned
+ * against kNN search hits apply unchanged. Cost is O(n^2 * dimensions); meant for the tickets of
+ * one run, not a whole index.
+ */
+public class LocalKnnIndex {
+    private final int dimensions;
+    private final boolean vectorized;
+    private float[] matrix;
+    private int size;
+
+    /**
+     * @param useVectorApi compute dot products with the incubating Vector API when the JVM was
+     *                     started with --add-modules jdk.incubator.vector; ignored otherwise
+     */
+    public LocalKnnIndex(int dimensions, int expectedSize, boolean useVectorApi) {
+        this.dimensions = dimensions;
+        this.vectorized = useVectorApi && DotProduct.VECTOR_API_AVAILABLE;
+        this.matrix = new float[Math.max(1, expectedSize) * dimensions];
+    }
+
+    /**
+     * Copy the embedding in as a unit vector and return its row, which is always the previous size()
+     *
+     * @throws IllegalArgumentException if the embedding does not have this index's dimensions
+     */
+    public int add(Embedding embedding) {
+        if (embedding.dimensions() != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + embedding.dimensions());
+        }
+        if ((size + 1) * dimensions > matrix.length) {
+            matrix = Arrays.copyOf(matrix, Math.max(matrix.length * 2, (size + 1) * dimensions));
+        }
+        DotProduct.normalizeInto(embedding.values(), matrix, size * dimensions);
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * The k nearest other rows of every row.
+     *
+     * @param blockSize rows per query and per candidate block
+     * @param cancelled polled between blocks; once true the search stops and the result is partial
+     * @param progress  called with the number of query rows finished, from pool threads
+     */
+    public Neighbors nearestNeighbors(int k, int blockSize, ForkJoinPool pool,
+                                      BooleanSupplier cancelled, IntConsumer progress) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive, got " + k);
+        Neighbors neighbors = new Neighbors(size, k);
+        int block = Math.max(1, blockSize);
+        int blocks = (size + block - 1) / block;
+        pool.invoke(new QueryBlocks(0, blocks, block, neighbors, cancelled, progress));
+        return neighbors;
+    }
+
+    private final class QueryBlocks extends RecursiveAction {
+        private final int fromBlock;
+        private final int toBlock;
+        private final int blockSize;
+        private final Neighbors neighbors;
+        private final BooleanSupplier cancelled;
+        private final IntConsumer progress;
+
+        private QueryBlocks(int fromBlock, int toBlock, int blockSize, Neighbors neighbors,
+                            BooleanSupplier cancelled, IntConsumer progress) {
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.blockSize = blockSize;
+            this.neighbors = neighbors;
+            this.cancelled = cancelled;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int mid = (fromBlock + toBlock) >>> 1;
+                invokeAll(new QueryBlocks(fromBlock, mid, blockSize, neighbors, cancelled, progress),
+                        new QueryBlocks(mid, toBlock, blockSize, neighbors, cancelled, progress));
+                return;
+            }
+            if (cancelled.getAsBoolean()) return;
+
+            int queryStart = fromBlock * blockSize;
+            int queryEnd = Math.min(size, queryStart + blockSize);
+            for (int candidateStart = 0; candidateStart < size; candidateStart += blockSize) {
+                int candidateEnd = Math.min(size, candidateStart + blockSize);
+                for (int query = queryStart; query < queryEnd; query++) {
+                    for (int candidate = candidateStart; candidate < candidateEnd; candidate++) {
+                        if (candidate != query) {
+                            neighbors.offer(query, candidate, dot(query, candidate));
+                        }
+                    }
+                }
+            }
+            progress.accept(queryEnd - queryStart);
+        }
+    }
+
+    private float dot(int rowA, int rowB) {
+        return DotProduct.dot(matrix, rowA * dimensions, matrix, rowB * dimensions, dimensions, vectorized);
+    }
+
+    /**
+     * Top-k per row, kept sorted by descending cosine. Slots of rows with fewer than k
+     * neighbours hold row -1.
+     */
+    public static final class Neighbors {
+        private final int k;
+        private final int[] rows;
+        private final float[] cosines;
+
+        private Neighbors(int size, int k) {
+            this.k = k;
+            this.rows = new int[size * k];
+            this.cosines = new float[size * k];
+            Arrays.fill(rows, -1);
+            Arrays.fill(cosines, Float.NEGATIVE_INFINITY);
+        }
+
+        // Each query row is only ever written by the task that owns its block, so no locking
+        private void offer(int query, int candidate, float cosine) {
+            int base = query * k;
+            int last = base + k - 1;
+            if (cosine <= cosines[last]) return;
+            int i = last;
+            while (i > base && cosines[i - 1] < cosine) {
+                cosines[i] = cosines[i - 1];
+                rows[i] = rows[i - 1];
+                i--;
+            }
+            cosines[i] = cosine;
+            rows[i] = candidate;
+        }
+
+        public int k() {
+            return k;
+        }
+
+        public int neighbor(int row, int rank) {
+            return rows[row * k + rank];
+        }
+
+        /**
+         * Similarity on the Elasticsearch cosine scale, (1 + cosine) / 2
+         */
+        public double score(int row, int rank) {
+            return (1.0 + cosines[row * k + rank]) / 2.0;
+        }
+    }
+}
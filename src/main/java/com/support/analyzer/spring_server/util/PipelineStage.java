@@ -0,0 +1,186 @@
+// PipelineStage.java
+package com.support.analyzer.spring_server.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * One stage of a queue-connected pipeline. Workers drain batches from the input queue,
+ * process them and push the results to the (bounded) output queue, so a slow downstream
+ * stage blocks its producers instead of letting work pile up in memory.
+ */
+public class PipelineStage<I, O> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineStage.class);
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final String name;
+    private final BlockingQueue<I> input;
+    private final BlockingQueue<O> output;
+    private final int concurrency;
+    private final IntSupplier batchSize;
+    private final long maxLingerMs;
+    private final Function<List<I>, List<O>> processor;
+    private final BooleanSupplier upstreamDone;
+    private final BooleanSupplier cancelled;
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private volatile boolean done;
+
+    private final AtomicLong itemsIn = new AtomicLong();
+    private final AtomicLong itemsOut = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * @param output       next stage's queue, or null for a sink stage
+     * @param batchSize    evaluated before every batch so callers may resize it while running
+     * @param maxLingerMs  how long a worker waits for a partial batch to fill before processing it
+     * @param upstreamDone true once nothing more will be put on the input queue
+     * @param cancelled    true once the run is cancelled; workers then stop and queued items are dropped
+     */
+    public PipelineStage(String name,
+                         BlockingQueue<I> input,
+                         BlockingQueue<O> output,
+                         int concurrency,
+                         IntSupplier batchSize,
+                         long maxLingerMs,
+                         Function<List<I>, List<O>> processor,
+                         BooleanSupplier upstreamDone,
+                         BooleanSupplier cancelled) {
+        this.name = name;
+        this.input = input;
+        this.output = output;
+        this.concurrency = Math.max(1, concurrency);
+        this.batchSize = batchSize;
+        this.maxLingerMs = maxLingerMs;
+        this.processor = processor;
+        this.upstreamDone = upstreamDone;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Start the stage workers on the given executor
+     */
+    public void start(ExecutorService executor) {
+        activeWorkers.set(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.submit(this::runWorker);
+        }
+    }
+
+    private void runWorker() {
+        try {
+            List<I> batch;
+            while ((batch = nextBatch()) != null) {
+                processBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Stage {} worker interrupted", name);
+        } finally {
+            if (activeWorkers.decrementAndGet() == 0) {
+                done = true;
+                LOGGER.debug("Stage {} finished", name);
+            }
+        }
+    }
+
+    /**
+     * Block until at least one item is available, then gather up to batchSize items.
+     * Returns null once the upstream is finished and the input queue is drained, or on cancellation.
+     */
+    private List<I> nextBatch() throws InterruptedException {
+        I first = null;
+        while (first == null) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            first = input.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (first == null && upstreamDone.getAsBoolean() && input.isEmpty()) {
+                return null;
+            }
+        }
+
+        int size = Math.max(1, batchSize.getAsInt());
+        List<I> batch = new ArrayList<>(size);
+        batch.add(first);
+        input.drainTo(batch, size - 1);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+        while (batch.size() < size && !upstreamDone.getAsBoolean()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            I next = input.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) break;
+            batch.add(next);
+            input.drainTo(batch, size - batch.size());
+        }
+        return batch;
+    }
+
+    private void processBatch(List<I> batch) throws InterruptedException {
+        itemsIn.addAndGet(batch.size());
+        long start = System.nanoTime();
+        List<O> results;
+        try {
+            results = processor.apply(batch);
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            LOGGER.error("Stage {} failed on a batch of {} items: {}", name, batch.size(), e.getMessage(), e);
+            return;
+        } finally {
+            busyNanos.addAndGet(System.nanoTime() - start);
+            batches.incrementAndGet();
+        }
+
+        if (results == null) return;
+        itemsOut.addAndGet(results.size());
+        if (output != null) {
+            for (O result : results) {
+                // Downstream workers stop on cancellation, so never block indefinitely on a full queue
+                while (!output.offer(result, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) return;
+                }
+            }
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public String getName() { return name; }
+    public int getConcurrency() { return concurrency; }
+    public int getCurrentBatchSize() { return batchSize.getAsInt(); }
+    public int getQueuedItems() { return input.size(); }
+    public long getItemsIn() { return itemsIn.get(); }
+    public long getItemsOut() { return itemsOut.get(); }
+    public long getBatches() { return batches.get(); }
+    public long getFailedBatches() { return failedBatches.get(); }
+
+    public long getAverageBatchLatencyMs() {
+        long count = batches.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(busyNanos.get() / count);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "Stage{%s, workers=%d, batchSize=%d, queued=%d, in=%d, out=%d, batches=%d, failedBatches=%d, avgBatch=%dms}",
+                name, concurrency, getCurrentBatchSize(), getQueuedItems(), getItemsIn(), getItemsOut(),
+                getBatches(), getFailedBatches(), getAverageBatchLatencyMs()
+        );
+    }
+}
@@ -0,0 +1,92 @@
+// RunStore.java
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Per-ticket results produced during one ingest run, kept in memory so later phases need not read
+ * them back: Phase 1 summaries for Phase 3, and Phase 1 embeddings for clustering. Bounded: once
+ * full, further values are not kept and lookups for them go to the fallback, which is also what
+ * serves a resumed run that starts with an empty store.
+ */
+public class RunStore<V> {
+    private final String name;
+    private final int maxEntries;
+    private final Predicate<V> empty;
+    private final Map<String, V> values = new ConcurrentHashMap<>();
+
+    private final AtomicLong overflow = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbackLookups = new AtomicLong();
+    private final AtomicLong fallbackHits = new AtomicLong();
+
+    /**
+     * @param empty values that are not worth keeping, such as a blank summary
+     */
+    public RunStore(String name, int maxEntries, Predicate<V> empty) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.empty = empty;
+    }
+
+    public static RunStore<String> summaries(int maxEntries) {
+        return new RunStore<>("SummaryStore", maxEntries, String::isBlank);
+    }
+
+    public static RunStore<Embedding> embeddings(int maxEntries) {
+        return new RunStore<>("EmbeddingStore", maxEntries, Embedding::isEmpty);
+    }
+
+    public void put(String ticketId, V value) {
+        if (value == null || empty.test(value)) return;
+        // Size check is racy, so the bound may be overshot by the number of concurrent writers
+        if (values.size() >= maxEntries && !values.containsKey(ticketId)) {
+            overflow.incrementAndGet();
+            return;
+        }
+        values.put(ticketId, value);
+    }
+
+    /**
+     * Values for the given tickets, from memory where possible and from one fallback call for
+     * the rest. Tickets with no value anywhere are absent from the result, which keeps the
+     * iteration order of ticketIds.
+     */
+    public Map<String, V> resolve(Collection<String> ticketIds, Function<Collection<String>, Map<String, V>> fallback) {
+        Map<String, V> resolved = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String ticketId : ticketIds) {
+            V value = values.get(ticketId);
+            if (value != null) {
+                resolved.put(ticketId, value);
+            } else {
+                missing.add(ticketId);
+            }
+        }
+        hits.addAndGet(resolved.size());
+
+        if (!missing.isEmpty()) {
+            fallbackLookups.addAndGet(missing.size());
+            Map<String, V> loaded = fallback.apply(missing);
+            fallbackHits.addAndGet(loaded.size());
+            resolved.putAll(loaded);
+        }
+        return resolved;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{entries=%d, max=%d, overflow=%d, hits=%d, fallbackLookups=%d, fallbackHits=%d}",
+                name, values.size(), maxEntries, overflow.get(), hits.get(), fallbackLookups.get(), fallbackHits.get());
+    }
+}
@@ -0,0 +1,238 @@
+// SimHashLsh.java
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Random-hyperplane (SimHash) locality-sensitive hashing for a cosine similarity join. Every
+ * embedding gets bands x rows sign bits, one per random hyperplane, and each band's bits are
+ * packed into one long. Two vectors at angle t agree on a bit with probability 1 - t/pi, so
+ * similar pairs very likely share at least one whole band while dissimilar ones rarely do. Only
+ * pairs sharing a band are scored exactly.
+ *
+ * More rows per band make buckets sparser (fewer candidates, lower recall); more bands give a
+ * pair more chances to collide (higher recall, more candidates). Rows are L2-normalized on insert
+ * as in {@link LocalKnnIndex}, and scores are on the same Elasticsearch cosine scale.
+ */
+public class SimHashLsh {
+    private final int dimensions;
+    private final int bands;
+    private final int rows;
+    private final boolean vectorized;
+    // One unit-free Gaussian hyperplane normal per signature bit, row-major
+    private final float[] hyperplanes;
+    private float[] matrix;
+    private long[] signatures;
+    private int size;
+
+    /**
+     * @param rows         bits per band, at most 64
+     * @param useVectorApi compute dot products with the incubating Vector API when the JVM was
+     *                     started with --add-modules jdk.incubator.vector; ignored otherwise
+     */
+    public SimHashLsh(int dimensions, int bands, int rows, long seed, int expectedSize, boolean useVectorApi) {
+        if (bands < 1) throw new IllegalArgumentException("bands must be positive, got " + bands);
+        if (rows < 1 || rows > 64) throw new IllegalArgumentException("rows must be in 1..64, got " + rows);
+        this.dimensions = dimensions;
+        this.bands = bands;
+        this.rows = rows;
+        this.vectorized = useVectorApi && DotProduct.VECTOR_API_AVAILABLE;
+        this.hyperplanes = new float[bands * rows * dimensions];
+        Random random = new Random(seed);
+        for (int i = 0; i < hyperplanes.length; i++) {
+            hyperplanes[i] = (float) random.nextGaussian();
+        }
+        int capacity = Math.max(1, expectedSize);
+        this.matrix = new float[capacity * dimensions];
+        this.signatures = new long[capacity * bands];
+    }
+
+    /**
+     * Copy the embedding in as a unit vector, sign it and return its row, which is always the
+     * previous size()
+     *
+     * @throws IllegalArgumentException if the embedding does not have this index's dimensions
+     */
+    public int add(Embedding embedding) {
+        if (embedding.dimensions() != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + embedding.dimensions());
+        }
+        if ((size + 1) * dimensions > matrix.length) {
+            int capacity = Math.max(size * 2, size + 1);
+            matrix = Arrays.copyOf(matrix, capacity * dimensions);
+            signatures = Arrays.copyOf(signatures, capacity * bands);
+        }
+        int offset = size * dimensions;
+        DotProduct.normalizeInto(embedding.values(), matrix, offset);
+        for (int band = 0; band < bands; band++) {
+            long key = 0;
+            for (int bit = 0; bit < rows; bit++) {
+                int plane = (band * rows + bit) * dimensions;
+                if (DotProduct.dot(hyperplanes, plane, matrix, offset, dimensions, vectorized) >= 0f) {
+                    key |= 1L << bit;
+                }
+            }
+            signatures[size * bands + band] = key;
+        }
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * Similarity of two rows on the Elasticsearch cosine scale, (1 + cosine) / 2
+     */
+    public double score(int rowA, int rowB) {
+        return (1.0 + DotProduct.dot(matrix, rowA * dimensions, matrix, rowB * dimensions, dimensions, vectorized)) / 2.0;
+    }
+
+    public boolean shareBand(int rowA, int rowB) {
+        for (int band = 0; band < bands; band++) {
+            if (signatures[rowA * bands + band] == signatures[rowB * bands + band]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Callbacks of {@link #join}, invoked from pool threads.
+     */
+    public interface Pairs {
+        /**
+         * @return true if the rows are already known to be linked, so scoring them can be skipped
+         */
+        boolean linked(int rowA, int rowB);
+
+        void link(int rowA, int rowB, double score);
+    }
+
+    /**
+     * Score every pair of rows that shares a band and link those at or above the threshold.
+     * Bands are processed in parallel; each one is bucketed by sorting (hash, row) pairs packed
+     * into longs, so buckets come out as runs.
+     *
+     * @param threshold similarity on the Elasticsearch cosine scale
+     * @param cancelled polled between buckets; once true the join stops and the result is partial
+     * @param progress  called with a share of size() rows as each band finishes, from pool threads;
+     *                  the shares add up to size()
+     */
+    public JoinStats join(double threshold, ForkJoinPool pool, Pairs pairs,
+                          BooleanSupplier cancelled, IntConsumer progress) {
+        LongAdder candidates = new LongAdder();
+        LongAdder scored = new LongAdder();
+        LongAdder similar = new LongAdder();
+        AtomicInteger largestBucket = new AtomicInteger();
+
+        pool.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, bands).parallel().forEach(band -> {
+            long[] entries = new long[size];
+            for (int row = 0; row < size; row++) {
+                entries[row] = ((long) bucketHash(signatures[row * bands + band], band) << 32) | row;
+            }
+            Arrays.sort(entries);
+
+            int start = 0;
+            while (start < size && !cancelled.getAsBoolean()) {
+                int end = start + 1;
+                while (end < size && (entries[end] >>> 32) == (entries[start] >>> 32)) end++;
+                largestBucket.accumulateAndGet(end - start, Math::max);
+
+                for (int i = start; i < end; i++) {
+                    int rowA = (int) entries[i];
+                    for (int j = i + 1; j < end; j++) {
+                        int rowB = (int) entries[j];
+                        // Different keys whose hashes collide share a run but not the band
+                        if (signatures[rowA * bands + band] != signatures[rowB * bands + band]) continue;
+                        candidates.increment();
+                        if (pairs.linked(rowA, rowB)) continue;
+                        scored.increment();
+                        double score = score(rowA, rowB);
+                        if (score >= threshold) {
+                            similar.increment();
+                            pairs.link(rowA, rowB, score);
+                        }
+                    }
+                }
+                start = end;
+            }
+            progress.accept((int) ((long) size * (band + 1) / bands - (long) size * band / bands));
+        })));
+
+        return new JoinStats(size, candidates.sum(), scored.sum(), similar.sum(), largestBucket.get());
+    }
+
+    /**
+     * Estimate pair recall: score sampled rows against every row exactly and count how many of
+     * the pairs at or above the threshold share a band, i.e. would be found by {@link #join}.
+     */
+    public Recall estimateRecall(double threshold, int samples, long seed, ForkJoinPool pool) {
+        if (size < 2 || samples < 1) return new Recall(0, 0, 0);
+        int[] sampled = new Random(seed).ints(0, size).distinct().limit(Math.min(samples, size)).toArray();
+        LongAdder truePairs = new LongAdder();
+        LongAdder found = new LongAdder();
+        pool.invoke(ForkJoinTask.adapt(() -> Arrays.stream(sampled).parallel().forEach(query -> {
+            for (int row = 0; row < size; row++) {
+                if (row != query && score(query, row) >= threshold) {
+                    truePairs.increment();
+                    if (shareBand(query, row)) found.increment();
+                }
+            }
+        })));
+        return new Recall(sampled.length, truePairs.sum(), found.sum());
+    }
+
+    // Mix the band in so equal keys of different bands do not line up; 32 bits of it are kept
+    private static int bucketHash(long key, int band) {
+        long h = key * 0x9E3779B97F4A7C15L + band;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Work done by a join, against the rows * (rows - 1) / 2 pairs an exact all-pairs join scores.
+     * A pair sharing several bands counts as a candidate once per band.
+     *
+     * @param scored candidates actually scored, i.e. not already linked
+     */
+    public record JoinStats(int rows, long candidates, long scored, long similar, int largestBucket) {
+        public long allPairs() {
+            return (long) rows * (rows - 1) / 2;
+        }
+
+        /**
+         * Fraction of all pairs that did not need scoring
+         */
+        public double reduction() {
+            return allPairs() == 0 ? 0 : 1.0 - (double) scored / allPairs();
+        }
+    }
+
+    /**
+     * Sampled recall of similar pairs; recall() is 1 when the sample holds no similar pair.
+     */
+    public record Recall(int sampledRows, long similarPairs, long foundPairs) {
+        public double recall() {
+            return similarPairs == 0 ? 1.0 : (double) foundPairs / similarPairs;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+// SimilarityQueryCache.java
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of similarity-search results for near-identical query embeddings. The key is
+ * a short SimHash of the query (one sign bit per random hyperplane, as in {@link SimHashLsh}) plus
+ * k. Re-embedding the same text always lands on the same entry. Near-identical text can still flip
+ * a bit, so a lookup also probes every signature one bit away. Two queries at cosine 0.995 are
+ * split by about 3% of hyperplanes, so with 16 bits roughly nine in ten of them land within that
+ * radius, where an exact 64-bit key would match only one in eight. Each extra bit halves how many
+ * unrelated queries share a bucket but lowers that rate.
+ * A hit must also be within minSimilarity cosine of the query the entry was computed for, which
+ * rules out the queries a short signature lumps together.
+ * <p>
+ * Entries expire after a TTL, and {@link #invalidate()} drops everything; a result computed
+ * while an invalidation happened is not stored.
+ */
+public class SimilarityQueryCache<V> {
+    private final int bits;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double minSimilarity;
+    private final long seed;
+    private final Map<Key, Entry<V>> entries;
+    // Hyperplanes for the query dimensions, created on first use
+    private float[] hyperplanes;
+    private int dimensions = -1;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong collisions = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    /**
+     * @param maxEntries    0 disables caching
+     * @param minSimilarity cosine a query must have with the cached one to reuse its result
+     * @param bits          signature length, 1 to 63; 16 to 24 suits a minSimilarity around 0.99
+     */
+    public SimilarityQueryCache(int maxEntries, long ttlMillis, double minSimilarity, int bits, long seed) {
+        if (bits < 1 || bits > 63) {
+            throw new IllegalArgumentException("Signature bits must be between 1 and 63, got " + bits);
+        }
+        this.bits = bits;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.minSimilarity = minSimilarity;
+        this.seed = seed;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The cached result for the query and k, or the loader's, which is cached unless it is null
+     * or rejected by cacheable. The loader runs outside the cache lock.
+     */
+    public V get(Embedding query, int k, Supplier<V> loader, Predicate<V> cacheable) {
+        if (maxEntries <= 0 || query == null || query.isEmpty()) {
+            return loader.get();
+        }
+        Lookup<V> lookup = lookup(query, k);
+        if (lookup.hit() != null) {
+            return lookup.hit();
+        }
+        long start = System.nanoTime();
+        V value = loader.get();
+        store(lookup, value, start, cacheable);
+        return value;
+    }
+
+    /**
+     * {@link #get} for a loader that completes asynchronously; a hit completes immediately
+     */
+    public CompletableFuture<V> getAsync(Embedding query, int k, Supplier<CompletableFuture<V>> loader,
+                                         Predicate<V> cacheable) {
+        if (maxEntries <= 0 || query == null || query.isEmpty()) {
+            return loader.get();
+        }
+        Lookup<V> lookup = lookup(query, k);
+        if (lookup.hit() != null) {
+            return CompletableFuture.completedFuture(lookup.hit());
+        }
+        long start = System.nanoTime();
+        return loader.get().thenApply(value -> {
+            store(lookup, value, start, cacheable);
+            return value;
+        });
+    }
+
+    private Lookup<V> lookup(Embedding query, int k) {
+        float[] unit = new float[query.dimensions()];
+        DotProduct.normalizeInto(query.values(), unit, 0);
+        synchronized (this) {
+            long signature = signature(unit);
+            Key key = new Key(signature, k);
+            // The query's own bucket first, then every bucket one flipped bit away
+            V hit = probe(key, unit);
+            for (int bit = 0; hit == null && bit < bits; bit++) {
+                hit = probe(new Key(signature ^ (1L << bit), k), unit);
+            }
+            if (hit != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+            return new Lookup<>(key, unit, generation, hit);
+        }
+    }
+
+    // Must hold the lock
+    private V probe(Key key, float[] unit) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.createdAt > ttlMillis) {
+            entries.remove(key);
+            expired.incrementAndGet();
+            return null;
+        }
+        if (DotProduct.dot(unit, 0, entry.query, 0, unit.length, false) >= minSimilarity) {
+            return entry.value;
+        }
+        collisions.incrementAndGet();
+        return null;
+    }
+
+    private void store(Lookup<V> lookup, V value, long loadStart, Predicate<V> cacheable) {
+        missNanos.addAndGet(System.nanoTime() - loadStart);
+        if (value != null && cacheable.test(value)) {
+            synchronized (this) {
+                if (generation == lookup.generation()) {
+                    entries.put(lookup.key(), new Entry<>(lookup.unit(), value, System.currentTimeMillis()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every entry, and any result being computed right now
+     */
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+        invalidations.incrementAndGet();
+    }
+
+    public synchronized Stats stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        double averageMissMs = missCount == 0 ? 0 : missNanos.get() / 1e6 / missCount;
+        return new Stats(entries.size(), maxEntries, hitCount, missCount,
+                hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount),
+                collisions.get(), expired.get(), invalidations.get(), averageMissMs, (long) (hitCount * averageMissMs));
+    }
+
+    // Must hold the lock
+    private long signature(float[] unit) {
+        if (unit.length != dimensions) {
+            // A model with other dimensions makes every cached entry unreachable anyway
+            dimensions = unit.length;
+            hyperplanes = new float[bits * dimensions];
+            Random random = new Random(seed);
+            for (int i = 0; i < hyperplanes.length; i++) {
+                hyperplanes[i] = (float) random.nextGaussian();
+            }
+            entries.clear();
+        }
+        long signature = 0;
+        for (int bit = 0; bit < bits; bit++) {
+            if (DotProduct.dot(hyperplanes, bit * dimensions, unit, 0, dimensions, false) >= 0f) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    private record Key(long signature, int k) {}
+
+    private record Entry<V>(float[] query, V value, long createdAt) {}
+
+    // hit is null on a miss; generation is the one a miss's result must still be in to be stored
+    private record Lookup<V>(Key key, float[] unit, long generation, V hit) {}
+
+    /**
+     * Cache counters since startup. collisions counts probed entries that were not similar enough.
+     * savedMs estimates the latency hits avoided as hits times the average miss latency.
+     */
+    public record Stats(int entries, int maxEntries, long hits, long misses, double hitRatio, long collisions,
+                        long expired, long invalidations, double averageMissMs, long savedMs) {
+        @Override
+        public String toString() {
+            return String.format(
+                    "SimilarityQueryCache{entries=%d/%d, hits=%d, misses=%d, hitRatio=%.3f, collisions=%d, expired=%d, invalidations=%d, avgMiss=%.1fms, saved=%dms}",
+                    entries, maxEntries, hits, misses, hitRatio, collisions, expired, invalidations, averageMissMs, savedMs);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+// VectorDotProduct.java
+package com.support.analyzer.spring_server.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD dot product on the incubating Vector API, behind {@link DotProduct}. Only compiled by the
+ * vector-api Maven profile and only usable when the JVM runs with --add-modules jdk.incubator.vector;
+ * callers must check that before touching this class, since loading it without the module fails.
+ */
+final class VectorDotProduct {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorDotProduct() {
+    }
+
+    /**
+     * Dot product of a[aOffset .. aOffset+length) and b[bOffset .. bOffset+length)
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector y = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            sum = x.fma(y, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+}
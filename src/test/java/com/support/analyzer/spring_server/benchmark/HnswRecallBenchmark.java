@@ -0,0 +1,127 @@
+package com.support.analyzer.spring_server.benchmark;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.util.HnswIndex;
+import com.support.analyzer.spring_server.util.LocalKnnIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency and recall@k of {@link HnswIndex} for several efSearch values, against exact
+ * brute-force search. Elasticsearch kNN is an HNSW search as well (num_candidates playing the
+ * role of efSearch), so exact search is the reference for both; recall is printed once per
+ * trial. Data is clustered like ticket embeddings: random centres plus noise. Not run by
+ * surefire; after mvn test-compile run it with:
+ *
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *       org.openjdk.jmh.Main HnswRecallBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class HnswRecallBenchmark {
+    private static final int K = 5;
+    private static final int RECALL_QUERIES = 1000;
+
+    @Param({"10000"})
+    private int tickets;
+
+    @Param({"1024"})
+    private int dimensions;
+
+    @Param({"20", "50", "100"})
+    private int efSearch;
+
+    private Embedding[] embeddings;
+    private float[][] normalized;
+    private HnswIndex hnsw;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int centres = Math.max(1, tickets / 5);
+        float[][] centre = new float[centres][dimensions];
+        for (float[] c : centre) {
+            for (int d = 0; d < dimensions; d++) c[d] = (float) random.nextGaussian();
+        }
+        embeddings = new Embedding[tickets];
+        normalized = new float[tickets][];
+        for (int i = 0; i < tickets; i++) {
+            float[] c = centre[random.nextInt(centres)];
+            float[] values = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) values[d] = c[d] + (float) (random.nextGaussian() * 2.0);
+            embeddings[i] = Embedding.of(values);
+            normalized[i] = unit(values);
+        }
+
+        long start = System.currentTimeMillis();
+        hnsw = new HnswIndex(dimensions, 16, 200, true);
+        for (int i = 0; i < tickets; i++) {
+            hnsw.add(Integer.toString(i), embeddings[i]);
+        }
+        long buildMs = System.currentTimeMillis() - start;
+
+        LocalKnnIndex exact = new LocalKnnIndex(dimensions, tickets, true);
+        for (Embedding embedding : embeddings) exact.add(embedding);
+        LocalKnnIndex.Neighbors truth = exact.nearestNeighbors(K, 64, ForkJoinPool.commonPool(), () -> false, done -> {});
+
+        int hits = 0;
+        for (int q = 0; q < RECALL_QUERIES; q++) {
+            Set<String> found = new HashSet<>();
+            for (HnswIndex.Result result : hnsw.search(embeddings[q], K + 1, efSearch)) {
+                if (!result.id().equals(Integer.toString(q))) found.add(result.id());
+            }
+            for (int rank = 0; rank < K; rank++) {
+                if (found.contains(Integer.toString(truth.neighbor(q, rank)))) hits++;
+            }
+        }
+        System.out.printf("%nHNSW M=16 efConstruction=200 built over %d vectors in %d ms; efSearch=%d recall@%d=%.4f%n",
+                tickets, buildMs, efSearch, K, hits / (double) (RECALL_QUERIES * K));
+    }
+
+    @Benchmark
+    public void hnswSearch(Blackhole blackhole) {
+        blackhole.consume(hnsw.search(embeddings[next++ % tickets], K + 1, efSearch));
+    }
+
+    // efSearch does not apply; repeated per efSearch only for side-by-side numbers
+    @Benchmark
+    public void exactSearch(Blackhole blackhole) {
+        float[] query = normalized[next++ % tickets];
+        float[] best = new float[K];
+        int[] bestIds = new int[K];
+        Arrays.fill(best, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < tickets; i++) {
+            float[] row = normalized[i];
+            float dot = 0f;
+            for (int d = 0; d < dimensions; d++) dot += query[d] * row[d];
+            if (dot > best[K - 1]) {
+                int slot = K - 1;
+                while (slot > 0 && best[slot - 1] < dot) {
+                    best[slot] = best[slot - 1];
+                    bestIds[slot] = bestIds[slot - 1];
+                    slot--;
+                }
+                best[slot] = dot;
+                bestIds[slot] = i;
+            }
+        }
+        blackhole.consume(bestIds);
+    }
+
+    private static float[] unit(float[] values) {
+        double norm = 0;
+        for (float value : values) norm += value * value;
+        float[] unit = new float[values.length];
+        for (int i = 0; i < values.length; i++) unit[i] = (float) (values[i] / Math.sqrt(norm));
+        return unit;
+    }
+}
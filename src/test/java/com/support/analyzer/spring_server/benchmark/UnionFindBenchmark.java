@@ -0,0 +1,171 @@
+package com.support.analyzer.spring_server.benchmark;
+
+import com.support.analyzer.spring_server.util.ConcurrentUnionFind;
+import com.support.analyzer.spring_server.util.IntUnionFind;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Clustering cost of the old HashMap-based DSU against {@link IntUnionFind} and, with unions
+ * spread over the common pool, {@link ConcurrentUnionFind}; all start from String ticket ids and
+ * kNN edges as DsuService sees them. Not run by surefire; after
+ * mvn test-compile run it with:
+ *
+ *   java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *       org.openjdk.jmh.Main UnionFindBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class UnionFindBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int tickets;
+
+    // Neighbours per ticket that pass the similarity threshold
+    @Param({"2"})
+    private int unionsPerTicket;
+
+    private List<String> ticketIds;
+    private String[] edgeFrom;
+    private String[] edgeTo;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ticketIds = new ArrayList<>(tickets);
+        for (int i = 0; i < tickets; i++) {
+            ticketIds.add(Long.toHexString(random.nextLong()) + "-" + i);
+        }
+        int edges = tickets * unionsPerTicket;
+        edgeFrom = new String[edges];
+        edgeTo = new String[edges];
+        for (int e = 0; e < edges; e++) {
+            int from = e / unionsPerTicket;
+            // Mostly local neighbours, so clusters form instead of one giant component
+            int to = Math.floorMod(from + random.nextInt(64) - 32, tickets);
+            edgeFrom[e] = ticketIds.get(from);
+            edgeTo[e] = ticketIds.get(to);
+        }
+    }
+
+    @Benchmark
+    public void hashMapDsu(Blackhole blackhole) {
+        HashMapDsu dsu = new HashMapDsu(ticketIds);
+        for (int e = 0; e < edgeFrom.length; e++) {
+            dsu.union(edgeFrom[e], edgeTo[e]);
+        }
+        blackhole.consume(dsu.getClusters());
+    }
+
+    @Benchmark
+    public void intUnionFind(Blackhole blackhole) {
+        Map<String, Integer> ids = new HashMap<>(tickets * 2);
+        IntUnionFind unionFind = new IntUnionFind(tickets);
+        for (String ticketId : ticketIds) {
+            ids.put(ticketId, unionFind.add());
+        }
+        for (int e = 0; e < edgeFrom.length; e++) {
+            unionFind.union(ids.get(edgeFrom[e]), ids.get(edgeTo[e]));
+        }
+        // Map back to ticket ids, as DsuService does
+        IntUnionFind.Clusters clusters = unionFind.clusters();
+        Map<String, List<String>> byRoot = new HashMap<>(clusters.count() * 2);
+        for (int c = 0; c < clusters.count(); c++) {
+            List<String> members = new ArrayList<>(clusters.size(c));
+            for (int i = 0; i < clusters.size(c); i++) {
+                members.add(ticketIds.get(clusters.member(c, i)));
+            }
+            byRoot.put(ticketIds.get(clusters.root(c)), members);
+        }
+        blackhole.consume(byRoot);
+    }
+
+    @Benchmark
+    public void concurrentUnionFind(Blackhole blackhole) {
+        Map<String, Integer> ids = new ConcurrentHashMap<>(tickets * 2);
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(tickets);
+        for (int i = 0; i < tickets; i++) {
+            ids.put(ticketIds.get(i), i);
+        }
+        IntStream.range(0, edgeFrom.length).parallel()
+                .forEach(e -> unionFind.union(ids.get(edgeFrom[e]), ids.get(edgeTo[e])));
+        IntUnionFind.Clusters clusters = unionFind.clusters(tickets);
+        Map<String, List<String>> byRoot = new HashMap<>(clusters.count() * 2);
+        for (int c = 0; c < clusters.count(); c++) {
+            List<String> members = new ArrayList<>(clusters.size(c));
+            for (int i = 0; i < clusters.size(c); i++) {
+                members.add(ticketIds.get(clusters.member(c, i)));
+            }
+            byRoot.put(ticketIds.get(clusters.root(c)), members);
+        }
+        blackhole.consume(byRoot);
+    }
+
+    /**
+     * The DsuService.DSU implementation this benchmark replaced, kept verbatim as the baseline
+     */
+    private static class HashMapDsu {
+        private final Map<String, String> parent = new HashMap<>();
+        private final Map<String, Integer> size = new HashMap<>();
+
+        HashMapDsu(List<String> tickets) {
+            for (String ticket : tickets) {
+                makeSet(ticket);
+            }
+        }
+
+        private void makeSet(String ticket) {
+            if (!parent.containsKey(ticket)) {
+                parent.put(ticket, ticket);
+                size.put(ticket, 1);
+            }
+        }
+
+        String find(String x) {
+            makeSet(x);
+            if (!parent.get(x).equals(x)) {
+                parent.put(x, find(parent.get(x)));
+            }
+            return parent.get(x);
+        }
+
+        boolean union(String x, String y) {
+            makeSet(x);
+            makeSet(y);
+            String rootX = find(x);
+            String rootY = find(y);
+            if (rootX.equals(rootY)) {
+                return false;
+            }
+            int sizeX = size.get(rootX);
+            int sizeY = size.get(rootY);
+            if (sizeX < sizeY) {
+                parent.put(rootX, rootY);
+                size.put(rootY, sizeX + sizeY);
+                size.remove(rootX);
+            } else {
+                parent.put(rootY, rootX);
+                size.put(rootX, sizeX + sizeY);
+                size.remove(rootY);
+            }
+            return true;
+        }
+
+        Map<String, List<String>> getClusters() {
+            Map<String, List<String>> clusters = new HashMap<>();
+            for (String ticket : parent.keySet()) {
+                clusters.computeIfAbsent(find(ticket), k -> new ArrayList<>()).add(ticket);
+            }
+            return clusters;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.util.RunStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DsuServiceTest {
+
+    @Test
+    void failingSearchFailsTheRunWithoutReplacingClusters() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        TicketClusterService ticketClusterService = mock(TicketClusterService.class);
+        RepresentativeSelector representativeSelector = mock(RepresentativeSelector.class);
+        MongoService mongoService = mock(MongoService.class);
+        when(vectorStore.findKNearestNeighborsBatch(anyMap(), anyInt()))
+                .thenThrow(new IllegalStateException("kNN search failed for ticket t1: shard unavailable"));
+
+        DsuService dsuService = new DsuService(vectorStore, new IngestExecutorFactory(), ticketClusterService,
+                representativeSelector, mongoService);
+        ReflectionTestUtils.setField(dsuService, "SIMILARITY_THRESHOLD", 0.9);
+        ReflectionTestUtils.setField(dsuService, "knnChunkSize", 2);
+        ReflectionTestUtils.setField(dsuService, "maxInFlightChunks", 2);
+        ReflectionTestUtils.setField(dsuService, "neighborStrategy", "elasticsearch");
+
+        RunStore<Embedding> embeddingStore = RunStore.embeddings(10);
+        List<String> tickets = List.of("t1", "t2", "t3", "t4");
+        for (int i = 0; i < tickets.size(); i++) {
+            embeddingStore.put(tickets.get(i), Embedding.of(new float[]{1f, i}));
+        }
+
+        assertThrows(IllegalStateException.class, () -> dsuService.buildClustersAndGetRepresentatives(
+                tickets, 5, new IngestJob("job", "full"), embeddingStore, false));
+        verify(ticketClusterService, never()).replaceAll(any());
+        verifyNoInteractions(representativeSelector);
+    }
+}
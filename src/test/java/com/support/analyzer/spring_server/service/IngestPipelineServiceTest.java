@@ -0,0 +1,133 @@
+package com.support.analyzer.spring_server.service;
+
+import com.support.analyzer.spring_server.config.IngestExecutorFactory;
+import com.support.analyzer.spring_server.dto.EmbedBatchRequest;
+import com.support.analyzer.spring_server.dto.Embedding;
+import com.support.analyzer.spring_server.dto.FlaskEmbeddingResponseItem;
+import com.support.analyzer.spring_server.dto.FlaskMaskedResponseItem;
+import com.support.analyzer.spring_server.dto.MaskBatchRequest;
+import com.support.analyzer.spring_server.dto.SummarizationRequest;
+import com.support.analyzer.spring_server.dto.SummarizationResponse;
+import com.support.analyzer.spring_server.entity.IngestRun;
+import com.support.analyzer.spring_server.entity.Message;
+import com.support.analyzer.spring_server.entity.SummarizedTicket;
+import com.support.analyzer.spring_server.entity.SupportTicket;
+import com.support.analyzer.spring_server.util.AdaptiveBatchSizer;
+import com.support.analyzer.spring_server.util.PipelineStage;
+import com.support.analyzer.spring_server.util.RunStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IngestPipelineServiceTest {
+
+    @Test
+    void throwingStageReleasesDuplicatesOfItsCanonicals() {
+        MongoService mongoService = mock(MongoService.class);
+        MaskingService maskingService = mock(MaskingService.class);
+        OpenAIService openAIService = mock(OpenAIService.class);
+        EmbeddingService embeddingService = mock(EmbeddingService.class);
+        VectorStore vectorStore = mock(VectorStore.class);
+        BatchSizeController batchSizeController = mock(BatchSizeController.class);
+        when(batchSizeController.sizer(anyString()))
+                .thenReturn(new AdaptiveBatchSizer("test", false, 10, 1, 10, 1000, 0.5));
+
+        // The first masking call (the canonical t1) throws; later ones succeed
+        when(maskingService.getMaskedMessagesBatch(anyList()))
+                .thenThrow(new IllegalStateException("masking service down"))
+                .thenAnswer(invocation -> invocation.<List<MaskBatchRequest.MaskItem>>getArgument(0).stream()
+                        .map(item -> new FlaskMaskedResponseItem(item.getTicketId(), List.of("masked")))
+                        .collect(Collectors.toList()));
+        when(openAIService.summarizeMessagesBatch(anyList()))
+                .thenAnswer(invocation -> invocation.<List<SummarizationRequest>>getArgument(0).stream()
+                        .map(request -> SummarizationResponse.success(request.getTicketId(), "summary"))
+                        .collect(Collectors.toList()));
+        when(mongoService.upsertSummarizedTickets(anyList()))
+                .thenAnswer(invocation -> invocation.<List<SummarizedTicket>>getArgument(0).stream()
+                        .map(SummarizedTicket::getTicketId)
+                        .collect(Collectors.toSet()));
+        when(embeddingService.getEmbeddingsBatch(anyList()))
+                .thenAnswer(invocation -> invocation.<List<EmbedBatchRequest.EmbedItem>>getArgument(0).stream()
+                        .map(item -> new FlaskEmbeddingResponseItem(item.getTicketId(), Embedding.of(new float[]{1f, 0f})))
+                        .collect(Collectors.toList()));
+        when(vectorStore.indexEmbedding(anyString(), any())).thenReturn(CompletableFuture.completedFuture(true));
+
+        IngestPipelineService pipeline = new IngestPipelineService(mongoService, maskingService, openAIService,
+                embeddingService, vectorStore, mock(IngestCheckpointService.class), new IngestExecutorFactory(),
+                batchSizeController);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10);
+        ReflectionTestUtils.setField(pipeline, "maxLingerMs", 0L);
+        ReflectionTestUtils.setField(pipeline, "maskingConcurrency", 1);
+        ReflectionTestUtils.setField(pipeline, "summarizationConcurrency", 1);
+        ReflectionTestUtils.setField(pipeline, "embeddingConcurrency", 1);
+        ReflectionTestUtils.setField(pipeline, "indexingConcurrency", 1);
+        ReflectionTestUtils.setField(pipeline, "indexingBatchSize", 10);
+        ReflectionTestUtils.setField(pipeline, "dedupEnabled", true);
+        ReflectionTestUtils.setField(pipeline, "dedupResultCacheSize", 10);
+
+        IngestRun run = new IngestRun();
+        run.setRunId("run");
+        IngestJob job = new IngestJob("job", "full");
+        // t2 attaches to t1 and is dropped with it; t3 comes in only after masking has failed on t1
+        Iterator<SupportTicket> tickets = new Iterator<>() {
+            private final List<SupportTicket> source = List.of(ticket("t1"), ticket("t2"), ticket("t3"));
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == 2) {
+                    awaitFailedMaskingBatch(job);
+                }
+                return next < source.size();
+            }
+
+            @Override
+            public SupportTicket next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return source.get(next++);
+            }
+        };
+
+        IngestPipelineService.Result result = pipeline.run(tickets, run, job, RunStore.summaries(10), RunStore.embeddings(10));
+
+        // Without the release, t3 would wait forever on t1, which no stage holds any more
+        assertEquals(List.of("t3"), result.indexedTicketIds());
+        // t1 and t2 were read and dropped, so the watermark stays just before them
+        assertTrue(result.watermark().isBefore(ticket("t1").getUpdatedAt()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void awaitFailedMaskingBatch(IngestJob job) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            List<PipelineStage<?, ?>> stages = (List<PipelineStage<?, ?>>) ReflectionTestUtils.getField(job, "stages");
+            if (stages != null && !stages.isEmpty() && stages.get(0).getFailedBatches() > 0) {
+                return;
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        fail("Masking never failed a batch");
+    }
+
+    private static SupportTicket ticket(String ticketId) {
+        Message.Source source = new Message.Source();
+        source.setMessage("Printer is on fire");
+        return new SupportTicket(ticketId, LocalDateTime.of(2024, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 1, 1, 0, 0), List.of(new Message(source)));
+    }
+}
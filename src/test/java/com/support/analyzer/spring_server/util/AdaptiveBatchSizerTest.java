@@ -0,0 +1,73 @@
+package com.support.analyzer.spring_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchSizerTest {
+
+    @Test
+    void growsTowardTargetLatencyByBoundedSteps() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer("test", true, 20, 1, 100, 1000, 0.5);
+        // 10 ms per item would allow 100 items per batch, but each step is capped at 25%
+        sizer.record(20, 200, 0, 0);
+        assertEquals(25, sizer.getBatchSize());
+        for (int i = 0; i < 20; i++) {
+            sizer.record(sizer.getBatchSize(), sizer.getBatchSize() * 10L, 0, 0);
+        }
+        assertEquals(100, sizer.getBatchSize());
+
+        // Slower items bring it back down
+        for (int i = 0; i < 20; i++) {
+            sizer.record(sizer.getBatchSize(), sizer.getBatchSize() * 100L, 0, 0);
+        }
+        assertEquals(10, sizer.getBatchSize());
+    }
+
+    @Test
+    void shortBatchDoesNotGrowTheSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer("test", true, 20, 1, 100, 1000, 0.5);
+        sizer.record(5, 5, 0, 0);
+        assertEquals(20, sizer.getBatchSize());
+    }
+
+    @Test
+    void newRateLimitResponsesHalveAndHold() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer("test", true, 40, 1, 100, 1000, 0.5);
+        sizer.record(40, 400, 0, 3);
+        assertEquals(20, sizer.getBatchSize());
+
+        // The running total did not move, so these are ordinary fast batches, held for three
+        for (int i = 0; i < 3; i++) {
+            sizer.record(20, 20, 0, 3);
+            assertEquals(20, sizer.getBatchSize());
+        }
+        sizer.record(20, 20, 0, 3);
+        assertEquals(25, sizer.getBatchSize());
+
+        sizer.record(25, 25, 0, 4);
+        assertEquals(12, sizer.getBatchSize());
+    }
+
+    @Test
+    void failedItemsAboveThresholdHalveTheSize() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer("test", true, 40, 8, 100, 1000, 0.5);
+        // Half failed is at the threshold, not above it; 25 ms per item keeps the size where it is
+        sizer.record(40, 1000, 20, 0);
+        assertEquals(40, sizer.getBatchSize());
+        sizer.record(40, 1000, 21, 0);
+        assertEquals(20, sizer.getBatchSize());
+        sizer.record(20, 200, 20, 0);
+        sizer.record(10, 100, 10, 0);
+        // Never below the minimum
+        assertEquals(8, sizer.getBatchSize());
+    }
+
+    @Test
+    void disabledSizerIgnoresObservations() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer("test", false, 500, 1, 100, 1000, 0.5);
+        sizer.record(500, 1, 500, 10);
+        assertEquals(500, sizer.getBatchSize());
+        assertEquals(0L, sizer.toMap().get("observedBatches"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.support.analyzer.spring_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitTest {
+
+    @Test
+    void timedOutWaiterReturnsPermit() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit("test", 1, 1);
+        CompletableFuture<String> held = new CompletableFuture<>();
+        CompletableFuture<String> holder = limit.executeAsync(() -> held, "dropped");
+
+        assertEquals("sync-fallback", limit.execute(() -> "sync", "sync-fallback"));
+        assertEquals("async-fallback", limit.executeAsync(
+                () -> CompletableFuture.completedFuture("async"), "async-fallback").get(5, TimeUnit.SECONDS));
+        assertEquals(0, limit.getWaiting());
+
+        held.complete("done");
+        assertEquals("done", holder.join());
+        // Neither timed-out waiter kept the permit that was just released
+        assertEquals(0, limit.getInFlight());
+        assertEquals("sync", limit.execute(() -> "sync", "sync-fallback"));
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void executeOrThrowFailsInsteadOfFallingBack() {
+        ConcurrencyLimit limit = new ConcurrencyLimit("test", 1, 1);
+        CompletableFuture<String> held = new CompletableFuture<>();
+        limit.executeAsync(() -> held, null);
+
+        assertThrows(IllegalStateException.class, () -> limit.executeOrThrow(() -> "sync"));
+        held.complete("done");
+        assertEquals("sync", limit.executeOrThrow(() -> "sync"));
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void syncAndAsyncWaitersAreServedInArrivalOrder() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit("test", 1, 10);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> held = new CompletableFuture<>();
+        limit.executeAsync(() -> held, null);
+
+        Thread syncCaller = new Thread(() -> limit.execute(() -> order.add("sync"), false));
+        syncCaller.start();
+        while (limit.getWaiting() < 1) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<Boolean> async = limit.executeAsync(
+                () -> CompletableFuture.completedFuture(order.add("async")), false);
+        assertEquals(2, limit.getWaiting());
+
+        held.complete("done");
+        syncCaller.join(5_000);
+        assertTrue(async.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("sync", "async"), order);
+        assertEquals(0, limit.getInFlight());
+    }
+}
@@ -0,0 +1,83 @@
+package com.support.analyzer.spring_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentUnionFindTest {
+    private static final int SIZE = 20_000;
+    private static final int UNIONS = 15_000;
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentUnionsMatchSequentialUnionFind() throws Exception {
+        Random random = new Random(7);
+        int[][] pairs = new int[UNIONS][2];
+        for (int[] pair : pairs) {
+            pair[0] = random.nextInt(SIZE);
+            pair[1] = random.nextInt(SIZE);
+        }
+
+        IntUnionFind sequential = new IntUnionFind(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            sequential.add();
+        }
+        int sequentialJoins = 0;
+        for (int[] pair : pairs) {
+            if (sequential.union(pair[0], pair[1])) sequentialJoins++;
+        }
+
+        ConcurrentUnionFind concurrent = new ConcurrentUnionFind(SIZE);
+        AtomicInteger concurrentJoins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            // Every thread replays all pairs from a different offset, so the same sets are raced for
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * (UNIONS / THREADS);
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < UNIONS; i++) {
+                        int[] pair = pairs[(offset + i) % UNIONS];
+                        if (concurrent.union(pair[0], pair[1])) concurrentJoins.incrementAndGet();
+                        concurrent.find(pair[0]);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Each merge of two sets is reported by exactly one union call
+        assertEquals(sequentialJoins, concurrentJoins.get());
+        for (int i = 0; i < SIZE; i++) {
+            for (int j : new int[]{pairs[i % UNIONS][0], pairs[i % UNIONS][1], (i * 31) % SIZE}) {
+                assertEquals(sequential.find(i) == sequential.find(j), concurrent.find(i) == concurrent.find(j),
+                        "connectivity of " + i + " and " + j);
+            }
+        }
+        assertEquals(sequential.clusters().count(), concurrent.clusters(SIZE).count());
+    }
+
+    @Test
+    void unionOfConnectedIdsReportsNoJoin() {
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(4);
+        assertTrue(unionFind.union(0, 1));
+        assertTrue(unionFind.union(1, 2));
+        assertFalse(unionFind.union(0, 2));
+        assertEquals(unionFind.find(0), unionFind.find(2));
+        assertNotEquals(unionFind.find(0), unionFind.find(3));
+    }
+}
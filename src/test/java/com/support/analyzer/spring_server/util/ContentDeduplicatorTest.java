@@ -0,0 +1,49 @@
+package com.support.analyzer.spring_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDeduplicatorTest {
+
+    @Test
+    void failReleasesAttachedDuplicates() {
+        ContentDeduplicator<String, String> dedup = new ContentDeduplicator<>(10);
+
+        assertEquals(ContentDeduplicator.Outcome.CANONICAL, dedup.admit("fp", "t1").outcome());
+        assertEquals(ContentDeduplicator.Outcome.ATTACHED, dedup.admit("fp", "t2").outcome());
+        assertEquals(ContentDeduplicator.Outcome.ATTACHED, dedup.admit("fp", "t3").outcome());
+
+        assertEquals(List.of("t2", "t3"), dedup.fail("fp"));
+        assertEquals(2, dedup.getDropped());
+        // Nothing is left waiting, and nothing was cached for the fingerprint
+        assertEquals(List.of(), dedup.fail("fp"));
+        assertEquals(List.of(), dedup.complete("fp", "summary"));
+    }
+
+    @Test
+    void duplicateAfterFailureBecomesNewCanonical() {
+        ContentDeduplicator<String, String> dedup = new ContentDeduplicator<>(10);
+        dedup.admit("fp", "t1");
+        dedup.admit("fp", "t2");
+        dedup.fail("fp");
+
+        assertEquals(ContentDeduplicator.Outcome.CANONICAL, dedup.admit("fp", "t3").outcome());
+        assertEquals(ContentDeduplicator.Outcome.ATTACHED, dedup.admit("fp", "t4").outcome());
+        assertEquals(List.of("t4"), dedup.complete("fp", "summary"));
+
+        ContentDeduplicator.Admission<String> late = dedup.admit("fp", "t5");
+        assertEquals(ContentDeduplicator.Outcome.RESOLVED, late.outcome());
+        assertEquals("summary", late.result());
+    }
+
+    @Test
+    void fingerprintIgnoresCaseAndWhitespaceButKeepsMessageBoundaries() {
+        assertEquals(ContentDeduplicator.fingerprint(List.of("Disk  full ", "retry")),
+                ContentDeduplicator.fingerprint(List.of("disk full", " RETRY")));
+        assertNotEquals(ContentDeduplicator.fingerprint(List.of("ab")),
+                ContentDeduplicator.fingerprint(List.of("a", "b")));
+    }
+}
@@ -0,0 +1,134 @@
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    @Test
+    void removedAndReplacedEntriesLeaveResults() {
+        HnswIndex index = new HnswIndex(3, 8, 50, false);
+        index.add("a", Embedding.of(new float[]{1f, 0f, 0f}));
+        index.add("b", Embedding.of(new float[]{0.9f, 0.1f, 0f}));
+        index.add("c", Embedding.of(new float[]{0f, 0f, 1f}));
+
+        assertTrue(index.remove("b"));
+        assertFalse(index.remove("b"));
+        assertEquals(2, index.size());
+        assertFalse(index.contains("b"));
+        assertNull(index.get("b"));
+        assertEquals(List.of("a", "c"), ids(index.search(Embedding.of(new float[]{1f, 0.1f, 0f}), 3, 10)));
+
+        // Re-adding with a new vector moves the entry rather than adding a second one
+        index.add("a", Embedding.of(new float[]{0f, 0.1f, 1f}));
+        assertEquals(2, index.size());
+        assertEquals(List.of("a", "c"), ids(index.search(Embedding.of(new float[]{0f, 0.2f, 1f}), 3, 10)));
+        assertThrows(IllegalArgumentException.class, () -> index.add("d", Embedding.of(new float[]{1f, 0f})));
+    }
+
+    @Test
+    void compactionKeepsLiveEntries() {
+        Random random = new Random(3);
+        HnswIndex index = new HnswIndex(8, 8, 50, false);
+        List<Embedding> vectors = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            vectors.add(randomEmbedding(random, 8));
+            index.add("t" + i, vectors.get(i));
+        }
+        for (int i = 0; i < 400; i++) {
+            index.remove("t" + i);
+        }
+
+        assertTrue((Integer) index.stats().get("compactions") >= 1);
+        assertEquals(800, index.size());
+        for (int i = 400; i < 1200; i++) {
+            assertTrue(index.contains("t" + i));
+            assertEquals("t" + i, index.search(vectors.get(i), 1, 50).get(0).id());
+        }
+        for (int i = 0; i < 400; i++) {
+            assertFalse(index.contains("t" + i));
+        }
+    }
+
+    @Test
+    void snapshotRoundTripAnswersTheSame() throws Exception {
+        Random random = new Random(5);
+        HnswIndex index = new HnswIndex(16, 8, 50, false);
+        for (int i = 0; i < 300; i++) {
+            index.add("t" + i, randomEmbedding(random, 16));
+        }
+        index.remove("t7");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.save(out);
+        }
+        HnswIndex loaded;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            loaded = HnswIndex.load(in, false);
+        }
+
+        assertEquals(index.size(), loaded.size());
+        assertFalse(loaded.contains("t7"));
+        for (int i = 0; i < 20; i++) {
+            Embedding query = randomEmbedding(random, 16);
+            assertEquals(index.search(query, 10, 50), loaded.search(query, 10, 50));
+        }
+    }
+
+    @Test
+    void topKMatchesBruteForce() {
+        Random random = new Random(11);
+        int dimensions = 16;
+        HnswIndex index = new HnswIndex(dimensions, 16, 200, false);
+        List<Embedding> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vectors.add(randomEmbedding(random, dimensions));
+            index.add("t" + i, vectors.get(i));
+        }
+
+        for (int q = 0; q < 20; q++) {
+            Embedding query = randomEmbedding(random, dimensions);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < vectors.size(); i++) expected.add(i);
+            expected.sort(Comparator.comparingDouble((Integer i) -> cosine(query, vectors.get(i))).reversed());
+
+            List<HnswIndex.Result> results = index.search(query, 10, 200);
+            assertEquals(expected.subList(0, 10).stream().map(i -> "t" + i).toList(), ids(results));
+            assertEquals((1 + cosine(query, vectors.get(expected.get(0)))) / 2, results.get(0).score(), 1e-5);
+        }
+    }
+
+    private static List<String> ids(List<HnswIndex.Result> results) {
+        return results.stream().map(HnswIndex.Result::id).toList();
+    }
+
+    private static Embedding randomEmbedding(Random random, int dimensions) {
+        float[] values = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return Embedding.of(values);
+    }
+
+    private static double cosine(Embedding a, Embedding b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.dimensions(); i++) {
+            dot += a.values()[i] * b.values()[i];
+            normA += a.values()[i] * a.values()[i];
+            normB += b.values()[i] * b.values()[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,54 @@
+package com.support.analyzer.spring_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntUnionFindTest {
+
+    @Test
+    void unionsMergeSetsAndCountComponents() {
+        IntUnionFind sets = new IntUnionFind(4);
+        // Past the initial capacity, so the arrays have to grow
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, sets.add());
+        }
+        assertEquals(40, sets.components());
+
+        for (int i = 0; i < 39; i += 2) {
+            assertTrue(sets.union(i, i + 1));
+        }
+        assertTrue(sets.union(0, 2));
+        assertTrue(sets.union(3, 5));
+        assertFalse(sets.union(1, 4));
+
+        assertEquals(40, sets.size());
+        assertEquals(40 - 20 - 2, sets.components());
+        assertEquals(sets.find(0), sets.find(5));
+        assertNotEquals(sets.find(0), sets.find(6));
+    }
+
+    @Test
+    void clustersGroupEveryElementUnderItsRoot() {
+        IntUnionFind sets = new IntUnionFind(16);
+        for (int i = 0; i < 10; i++) sets.add();
+        sets.union(0, 9);
+        sets.union(9, 4);
+        sets.union(2, 3);
+
+        IntUnionFind.Clusters clusters = sets.clusters();
+        assertEquals(sets.components(), clusters.count());
+        Set<Integer> seen = new HashSet<>();
+        for (int c = 0; c < clusters.count(); c++) {
+            for (int i = 0; i < clusters.size(c); i++) {
+                int member = clusters.member(c, i);
+                assertEquals(clusters.root(c), sets.find(member));
+                assertTrue(seen.add(member));
+            }
+        }
+        assertEquals(10, seen.size());
+    }
+}
@@ -0,0 +1,81 @@
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalKnnIndexTest {
+
+    @Test
+    void blockedSearchMatchesBruteForceForAnyBlockSize() {
+        Random random = new Random(13);
+        int rows = 101;
+        int dimensions = 12;
+        LocalKnnIndex index = new LocalKnnIndex(dimensions, 8, false);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            float[] values = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) values[d] = (float) random.nextGaussian();
+            vectors.add(values);
+            assertEquals(i, index.add(Embedding.of(values)));
+        }
+
+        int k = 5;
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int blockSize : new int[]{1, 7, 32, 500}) {
+                AtomicInteger finished = new AtomicInteger();
+                LocalKnnIndex.Neighbors neighbors = index.nearestNeighbors(k, blockSize, pool, () -> false, finished::addAndGet);
+                assertEquals(rows, finished.get());
+                for (int row = 0; row < rows; row++) {
+                    int query = row;
+                    List<Integer> expected = new ArrayList<>();
+                    for (int other = 0; other < rows; other++) {
+                        if (other != query) expected.add(other);
+                    }
+                    expected.sort(Comparator.comparingDouble((Integer other) -> cosine(vectors.get(query), vectors.get(other))).reversed());
+                    for (int rank = 0; rank < k; rank++) {
+                        assertEquals((int) expected.get(rank), neighbors.neighbor(row, rank), "block " + blockSize + ", row " + row);
+                        assertEquals((1 + cosine(vectors.get(row), vectors.get(expected.get(rank)))) / 2,
+                                neighbors.score(row, rank), 1e-5);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void missingNeighboursAreMarked() {
+        LocalKnnIndex index = new LocalKnnIndex(2, 2, false);
+        index.add(Embedding.of(new float[]{1f, 0f}));
+        index.add(Embedding.of(new float[]{0f, 1f}));
+        index.add(Embedding.of(new float[]{1f, 1f}));
+
+        LocalKnnIndex.Neighbors neighbors = index.nearestNeighbors(4, 2, ForkJoinPool.commonPool(), () -> false, rows -> {});
+        assertEquals(2, neighbors.neighbor(0, 0));
+        assertEquals(1, neighbors.neighbor(0, 1));
+        assertEquals(-1, neighbors.neighbor(0, 2));
+        assertEquals(-1, neighbors.neighbor(0, 3));
+        assertThrows(IllegalArgumentException.class, () -> index.add(Embedding.of(new float[]{1f, 0f, 0f})));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
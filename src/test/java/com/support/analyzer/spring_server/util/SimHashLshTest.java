@@ -0,0 +1,79 @@
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimHashLshTest {
+
+    @Test
+    void joinLinksNearDuplicatesOnly() {
+        Random random = new Random(17);
+        int dimensions = 64;
+        int pairs = 100;
+        SimHashLsh lsh = new SimHashLsh(dimensions, 8, 12, 42L, 16, false);
+        for (int pair = 0; pair < pairs; pair++) {
+            float[] base = new float[dimensions];
+            float[] nearby = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                base[i] = (float) random.nextGaussian();
+                nearby[i] = base[i] + 0.05f * (float) random.nextGaussian();
+            }
+            assertEquals(2 * pair, lsh.add(Embedding.of(base)));
+            lsh.add(Embedding.of(nearby));
+        }
+
+        Set<Long> linked = ConcurrentHashMap.newKeySet();
+        AtomicInteger progress = new AtomicInteger();
+        SimHashLsh.JoinStats stats = lsh.join(0.99, ForkJoinPool.commonPool(), new SimHashLsh.Pairs() {
+            @Override
+            public boolean linked(int rowA, int rowB) {
+                return linked.contains(key(rowA, rowB));
+            }
+
+            @Override
+            public void link(int rowA, int rowB, double score) {
+                assertTrue(score >= 0.99);
+                assertEquals(score, lsh.score(rowA, rowB), 1e-9);
+                linked.add(key(rowA, rowB));
+            }
+        }, () -> false, progress::addAndGet);
+
+        assertEquals(lsh.size(), progress.get());
+        // Random vectors are nowhere near 0.99 of each other, so every link is one of the planted pairs
+        for (long key : linked) {
+            assertEquals((int) (key >>> 32) / 2, (int) key / 2);
+        }
+        assertTrue(linked.size() >= pairs * 9 / 10, "linked: " + linked.size());
+        assertTrue(stats.reduction() > 0.9, "reduction: " + stats.reduction());
+        assertTrue(stats.scored() <= stats.candidates());
+
+        SimHashLsh.Recall recall = lsh.estimateRecall(0.99, lsh.size(), 1L, ForkJoinPool.commonPool());
+        assertEquals(2L * linked.size(), recall.foundPairs());
+    }
+
+    @Test
+    void identicalVectorsShareEveryBand() {
+        SimHashLsh lsh = new SimHashLsh(4, 4, 16, 7L, 2, false);
+        int a = lsh.add(Embedding.of(new float[]{1f, 2f, 3f, 4f}));
+        int b = lsh.add(Embedding.of(new float[]{2f, 4f, 6f, 8f}));
+        int c = lsh.add(Embedding.of(new float[]{-1f, -2f, -3f, -4f}));
+
+        assertTrue(lsh.shareBand(a, b));
+        assertFalse(lsh.shareBand(a, c));
+        assertEquals(1.0, lsh.score(a, b), 1e-6);
+        assertEquals(0.0, lsh.score(a, c), 1e-6);
+        assertThrows(IllegalArgumentException.class, () -> new SimHashLsh(4, 1, 65, 7L, 2, false));
+    }
+
+    private static long key(int rowA, int rowB) {
+        return ((long) Math.min(rowA, rowB) << 32) | Math.max(rowA, rowB);
+    }
+}
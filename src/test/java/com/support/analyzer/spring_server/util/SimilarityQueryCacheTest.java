@@ -0,0 +1,69 @@
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityQueryCacheTest {
+
+    @Test
+    void invalidationDuringLoadPreventsStore() {
+        SimilarityQueryCache<String> cache = new SimilarityQueryCache<>(10, 60_000, 0.995, 16, 42L);
+        Embedding query = Embedding.of(new float[]{1f, 2f, 3f, 4f});
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        CompletableFuture<String> first = cache.getAsync(query, 5, () -> {
+            loads.incrementAndGet();
+            return pending;
+        }, value -> true);
+        cache.invalidate();
+        pending.complete("stale");
+        assertEquals("stale", first.join());
+
+        // The stale result was not stored, so the next lookup loads again and that result is kept
+        assertEquals("fresh", cache.get(query, 5, () -> {
+            loads.incrementAndGet();
+            return "fresh";
+        }, value -> true));
+        assertEquals("fresh", cache.get(query, 5, () -> "unused", value -> true));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.stats().hits());
+    }
+
+    @Test
+    void nearIdenticalQueriesMostlyHit() {
+        Random random = new Random(7);
+        int pairs = 200;
+        SimilarityQueryCache<Integer> cache = new SimilarityQueryCache<>(pairs, 60_000, 0.995, 16, 42L);
+        for (int pair = 0; pair < pairs; pair++) {
+            float[] base = new float[64];
+            float[] nearby = new float[64];
+            for (int i = 0; i < base.length; i++) {
+                base[i] = (float) random.nextGaussian();
+                nearby[i] = base[i] + 0.04f * (float) random.nextGaussian();
+            }
+            int id = pair;
+            cache.get(Embedding.of(base), pair, () -> id, value -> true);
+            cache.get(Embedding.of(nearby), pair, () -> -1, value -> true);
+        }
+        // Cosine is about 0.999, which an exact 64-bit key would match well under half the time
+        assertTrue(cache.stats().hits() >= pairs * 9 / 10, "hits: " + cache.stats().hits());
+    }
+
+    @Test
+    void dissimilarQueryInSameBucketMisses() {
+        // One bit puts every query in one of two buckets, both probed
+        SimilarityQueryCache<String> cache = new SimilarityQueryCache<>(10, 60_000, 0.995, 1, 42L);
+        cache.get(Embedding.of(new float[]{1f, 0f, 0f}), 5, () -> "x", value -> true);
+
+        assertEquals("y", cache.get(Embedding.of(new float[]{0f, 1f, 0f}), 5, () -> "y", value -> true));
+        assertEquals(0, cache.stats().hits());
+        assertTrue(cache.stats().collisions() >= 1);
+    }
+}
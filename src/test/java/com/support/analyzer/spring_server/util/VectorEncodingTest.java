@@ -0,0 +1,70 @@
+package com.support.analyzer.spring_server.util;
+
+import com.support.analyzer.spring_server.dto.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorEncodingTest {
+
+    @Test
+    void quantizedComponentsStayWithinByteRange() {
+        int[] quantized = VectorEncoding.quantize(new float[]{0.5f, -2f, 1f, 0f});
+        // The largest component maps to the end of the range and the rest scale with it
+        assertEquals(-127, quantized[1]);
+        assertEquals(32, quantized[0]);
+        assertEquals(64, quantized[2]);
+        assertEquals(0, quantized[3]);
+
+        int[] zero = VectorEncoding.quantize(new float[]{0f, 0f});
+        assertEquals(0, zero[0]);
+        assertEquals(0, zero[1]);
+
+        int[] tiny = VectorEncoding.quantize(new float[]{1e-30f, -1e-30f, 5e-31f});
+        for (int value : tiny) {
+            assertTrue(value >= -127 && value <= 127, "component " + value);
+        }
+        assertEquals(127, tiny[0]);
+    }
+
+    @Test
+    void dequantizedVectorKeepsCosine() {
+        Random random = new Random(19);
+        float[] values = new float[1024];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        // The query vector of a byte field is the quantized components read back as floats
+        List<Float> query = VectorEncoding.BYTE.queryVector(Embedding.of(values));
+        assertEquals(values.length, query.size());
+        float[] dequantized = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            dequantized[i] = query.get(i);
+            assertTrue(Math.abs(dequantized[i]) <= 127f);
+        }
+        assertTrue(1 - cosine(values, dequantized) < 0.001, "cosine " + cosine(values, dequantized));
+        assertEquals(VectorEncoding.BYTE, VectorEncoding.of(" byte "));
+        assertEquals("cosine", VectorEncoding.BYTE.similarity());
+    }
+
+    @Test
+    void floatEncodingIsUnitLength() {
+        Embedding encoded = (Embedding) VectorEncoding.FLOAT.encode(Embedding.of(new float[]{3f, 4f}));
+        assertEquals(0.6, encoded.values()[0], 1e-6);
+        assertEquals(0.8, encoded.values()[1], 1e-6);
+        assertEquals("dot_product", VectorEncoding.of("float").similarity());
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}